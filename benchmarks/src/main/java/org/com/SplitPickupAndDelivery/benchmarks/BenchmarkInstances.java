@@ -0,0 +1,161 @@
+package org.com.SplitPickupAndDelivery.benchmarks;
+
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+import org.com.SplitPickupAndDelivery.models.*;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Random;
+
+/**
+ * Random instances for the benchmarks: num_hubs hubs in a 10 km square, num_hubs / 4 trucks
+ * (at least 2) and 2 * num_hubs requests between distinct pairs of hubs, all with the same day long
+ * time window. The same size and seed give the same instance.
+ */
+public class BenchmarkInstances {
+
+    public static InputData generate(int num_hubs, long seed) {
+        Random rnd = new Random(seed);
+        InputData data = new InputData();
+
+        data.hubs = new ArrayList<>();
+        double[][] location = new double[num_hubs][2];
+        for (int i=0; i<num_hubs; i++) {
+            location[i][0] = 21.0 + 0.1 * rnd.nextDouble();
+            location[i][1] = 105.7 + 0.1 * rnd.nextDouble();
+
+            Hub hub = new Hub();
+            hub.setHubID(String.format("H%05d", i));
+            hub.setHubName("Hub " + i);
+            hub.setHub_lat(String.valueOf(location[i][0]));
+            hub.setHub_long(String.valueOf(location[i][1]));
+            data.hubs.add(hub);
+        }
+
+        // about 30 km/h, 0.01 degree is about 1.1 km
+        data.travel_time = new TravelTimeMatrix(num_hubs, false, 0);
+        for (int i=0; i<num_hubs; i++) {
+            for (int j=0; j<num_hubs; j++) {
+                if (i != j) {
+                    double degrees = Math.hypot(location[i][0] - location[j][0], location[i][1] - location[j][1]);
+                    data.travel_time.set(i, j, 60 + Math.round(degrees * 110 * 120));
+                }
+            }
+        }
+
+        data.trucks = new ArrayList<>();
+        for (int k=0; k<Math.max(2, num_hubs / 4); k++) {
+            Truck truck = new Truck();
+            truck.setTruckID(String.format("T%04d", k));
+            truck.setLocation(data.hubs.get(rnd.nextInt(num_hubs)).getHubID());
+            truck.setStartWorkingTime("2022-12-01 05:00:00");
+            truck.setCapacity(5000);
+            data.trucks.add(truck);
+        }
+
+        data.requests = new ArrayList<>();
+        HashSet<Long> pairs = new HashSet<>();
+        int num_requests = (int) Math.min(2L * num_hubs, (long) num_hubs * (num_hubs - 1));
+        while (data.requests.size() < num_requests) {
+            int from = rnd.nextInt(num_hubs);
+            int to = rnd.nextInt(num_hubs);
+            if (from == to || !pairs.add((long) from * num_hubs + to)) {
+                continue;
+            }
+
+            Request req = new Request();
+            req.setRequestID(String.format("R%06d", data.requests.size()));
+            req.setPickupPoint(data.hubs.get(from).getHubID());
+            req.setPickupDateTime("2022-12-01 06:00:00");
+            req.setDeliveryPoint(data.hubs.get(to).getHubID());
+            req.setDeliveryDateTime("2022-12-01 22:00:00");
+            req.setDemand(50 + 10 * rnd.nextInt(46));
+            data.requests.add(req);
+        }
+
+        return data;
+    }
+
+    /**
+     * Writes the instance as an input workbook: requests, hubs, distances and trucks sheets.
+     */
+    public static void writeWorkbook(InputData data, String path) throws IOException {
+        try (SXSSFWorkbook workbook = new SXSSFWorkbook(100)) {
+            Sheet sheet = workbook.createSheet("Requests");
+            header(sheet, "RequestID", "Pickup", "PickupTime", "Delivery", "DeliveryTime", "Demand");
+            int r = 1;
+            for (Request req: data.requests) {
+                Row row = sheet.createRow(r++);
+                row.createCell(0).setCellValue(req.getRequestID());
+                row.createCell(1).setCellValue(req.getPickupPoint());
+                row.createCell(2).setCellValue(req.getPickupDateTime());
+                row.createCell(3).setCellValue(req.getDeliveryPoint());
+                row.createCell(4).setCellValue(req.getDeliveryDateTime());
+                row.createCell(5).setCellValue(req.getDemand());
+            }
+
+            sheet = workbook.createSheet("Hubs");
+            header(sheet, "HubID", "Name", "Lat", "Long");
+            r = 1;
+            for (Hub hub: data.hubs) {
+                Row row = sheet.createRow(r++);
+                row.createCell(0).setCellValue(hub.getHubID());
+                row.createCell(1).setCellValue(hub.getHubName());
+                row.createCell(2).setCellValue(Double.parseDouble(hub.getHub_lat()));
+                row.createCell(3).setCellValue(Double.parseDouble(hub.getHub_long()));
+            }
+
+            sheet = workbook.createSheet("Distances");
+            header(sheet, "From", "To", "Time");
+            r = 1;
+            for (int i=0; i<data.hubs.size(); i++) {
+                for (int j=0; j<data.hubs.size(); j++) {
+                    if (i != j && data.travel_time.exists(i, j)) {
+                        Row row = sheet.createRow(r++);
+                        row.createCell(0).setCellValue(data.hubs.get(i).getHubID());
+                        row.createCell(1).setCellValue(data.hubs.get(j).getHubID());
+                        row.createCell(2).setCellValue(data.travel_time.get(i, j));
+                    }
+                }
+            }
+
+            sheet = workbook.createSheet("Trucks");
+            header(sheet, "TruckID", "Location", "StartTime", "Capacity", "ForbiddenPoints");
+            r = 1;
+            for (Truck truck: data.trucks) {
+                Row row = sheet.createRow(r++);
+                row.createCell(0).setCellValue(truck.getTruckID());
+                row.createCell(1).setCellValue(truck.getLocation());
+                row.createCell(2).setCellValue(truck.getStartWorkingTime());
+                row.createCell(3).setCellValue(truck.getCapacity());
+            }
+
+            try (FileOutputStream out = new FileOutputStream(path)) {
+                workbook.write(out);
+            }
+            workbook.dispose();
+        }
+    }
+
+    private static void header(Sheet sheet, String... names) {
+        Row row = sheet.createRow(0);
+        for (int c=0; c<names.length; c++) {
+            row.createCell(c).setCellValue(names[c]);
+        }
+    }
+
+    /**
+     * The solvers print their progress, which would flood the benchmark output.
+     */
+    public static PrintStream silenceOutput() {
+        PrintStream out = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        return out;
+    }
+}
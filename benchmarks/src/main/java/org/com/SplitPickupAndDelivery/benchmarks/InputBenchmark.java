@@ -0,0 +1,50 @@
+package org.com.SplitPickupAndDelivery.benchmarks;
+
+import org.com.SplitPickupAndDelivery.models.InputData;
+import org.com.SplitPickupAndDelivery.solver.MappedData;
+import org.com.SplitPickupAndDelivery.utils.IOExcelHandling;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reading the input workbook and mapping it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class InputBenchmark {
+
+    @Param({"10", "100", "500"})
+    public int hubs;
+
+    private File workbook;
+    private InputData data;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        data = BenchmarkInstances.generate(hubs, 1);
+        workbook = File.createTempFile("input-" + hubs + "-", ".xlsx");
+        BenchmarkInstances.writeWorkbook(data, workbook.getPath());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        workbook.delete();
+    }
+
+    @Benchmark
+    public InputData readInputData() {
+        return IOExcelHandling.readInputData(workbook.getPath());
+    }
+
+    @Benchmark
+    public MappedData parseInput() {
+        return MappedData.parseInput(data);
+    }
+}
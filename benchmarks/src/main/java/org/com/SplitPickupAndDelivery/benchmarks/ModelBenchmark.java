@@ -0,0 +1,113 @@
+package org.com.SplitPickupAndDelivery.benchmarks;
+
+import org.com.SplitPickupAndDelivery.solver.*;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Building the two MILP models, and reading a solution back from a solved model.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ModelBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Instance {
+        @Param({"10", "20", "40"})
+        public int hubs;
+
+        public MappedData data;
+        private PrintStream out;
+
+        @Setup(Level.Trial)
+        public void setup() {
+            out = BenchmarkInstances.silenceOutput();
+            data = MappedData.parseInput(BenchmarkInstances.generate(hubs, 1));
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            System.setOut(out);
+        }
+    }
+
+    /**
+     * The timed model solved once, SCIP keeps the solution for extractSolution().
+     */
+    @State(Scope.Benchmark)
+    public static class SolvedTimed {
+        @Param({"10", "20"})
+        public int timed_hubs;
+
+        public MILPPickupAndDeliveryWithTimeConstraints solver;
+        private PrintStream out;
+
+        @Setup(Level.Trial)
+        public void setup() {
+            out = BenchmarkInstances.silenceOutput();
+            solver = new MILPPickupAndDeliveryWithTimeConstraints(MappedData.parseInput(BenchmarkInstances.generate(timed_hubs, 1)));
+            solver.setTimeLimit(10000);
+            if (solver.solve(false) == null) {
+                throw new IllegalStateException("No solution found for " + timed_hubs + " hubs");
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            System.setOut(out);
+        }
+    }
+
+    /**
+     * The untimed model has no warm start and SCIP rarely finds a solution beyond a handful of hubs
+     * in the setup time, hence the small sizes.
+     */
+    @State(Scope.Benchmark)
+    public static class SolvedUntimed {
+        @Param({"4", "6"})
+        public int untimed_hubs;
+
+        public MILPPickupAndDelivery solver;
+        private PrintStream out;
+
+        @Setup(Level.Trial)
+        public void setup() {
+            out = BenchmarkInstances.silenceOutput();
+            solver = new MILPPickupAndDelivery(MappedData.parseInput(BenchmarkInstances.generate(untimed_hubs, 1)));
+            solver.setTimeLimit(30000);
+            if (solver.solve(false) == null) {
+                throw new IllegalStateException("No solution found for " + untimed_hubs + " hubs");
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            System.setOut(out);
+        }
+    }
+
+    @Benchmark
+    public boolean buildTimedModel(Instance instance) {
+        return new MILPPickupAndDeliveryWithTimeConstraints(instance.data).createModel();
+    }
+
+    @Benchmark
+    public boolean buildUntimedModel(Instance instance) {
+        return new MILPPickupAndDelivery(instance.data).createModel();
+    }
+
+    @Benchmark
+    public MappedSolution extractTimedSolution(SolvedTimed solved) {
+        return solved.solver.extractSolution();
+    }
+
+    @Benchmark
+    public MappedSolution extractUntimedSolution(SolvedUntimed solved) {
+        return solved.solver.extractSolution();
+    }
+}
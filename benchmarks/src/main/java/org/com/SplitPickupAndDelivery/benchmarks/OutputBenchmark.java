@@ -0,0 +1,60 @@
+package org.com.SplitPickupAndDelivery.benchmarks;
+
+import org.com.SplitPickupAndDelivery.models.Solution;
+import org.com.SplitPickupAndDelivery.solver.InsertionHeuristic;
+import org.com.SplitPickupAndDelivery.solver.MappedData;
+import org.com.SplitPickupAndDelivery.solver.MappedSolution;
+import org.com.SplitPickupAndDelivery.utils.IOExcelHandling;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Turning a solution back into hubs and requests, and writing it to a workbook. The solution comes
+ * from the insertion heuristic, which is fast on every size.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class OutputBenchmark {
+
+    @Param({"10", "100", "500"})
+    public int hubs;
+
+    private MappedData data;
+    private MappedSolution raw_solution;
+    private Solution solution;
+    private File output;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        PrintStream out = BenchmarkInstances.silenceOutput();
+        data = MappedData.parseInput(BenchmarkInstances.generate(hubs, 1));
+        raw_solution = new InsertionHeuristic(data).solve(false);
+        System.setOut(out);
+
+        solution = data.resolveOutput(raw_solution);
+        output = File.createTempFile("output-" + hubs + "-", ".xlsx");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        output.delete();
+    }
+
+    @Benchmark
+    public Solution resolveOutput() {
+        return data.resolveOutput(raw_solution);
+    }
+
+    @Benchmark
+    public void exportSolution() {
+        IOExcelHandling.exportSolution(output.getPath(), solution);
+    }
+}
@@ -0,0 +1,240 @@
+package org.com.SplitPickupAndDelivery.benchmarks;
+
+import org.com.SplitPickupAndDelivery.models.InputData;
+import org.com.SplitPickupAndDelivery.solver.*;
+import org.com.SplitPickupAndDelivery.utils.IOExcelHandling;
+import org.com.SplitPickupAndDelivery.utils.TextInstanceHandling;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Solution quality against time: runs every solver on every instance of a corpus at several time limits,
+ * appends one JSON line per run to the history file and compares the runs with a baseline file of the same
+ * format. The corpus is the workbooks and text instances of the data directory, except the outputs, plus
+ * generated instances.
+ *
+ * Run it from the project root after building the benchmarks:
+ *      java -cp benchmarks/target/benchmarks.jar org.com.SplitPickupAndDelivery.benchmarks.QualityBenchmark
+ *          [--data=data] [--generated=10,25,50] [--limits=5,20] [--solvers=insertion,alns,milp,cpsat,routing,portfolio]
+ *          [--history=benchmarks/history.jsonl] [--baseline=benchmarks/baseline.jsonl] [--save-baseline]
+ *
+ * A run records the objective (moves + penalty for unserved boxes), the gap to the best bound when the
+ * solver computes one, the time of the first solution and the time of the best one, as published to
+ * an IncumbentHolder while the solver runs.
+ */
+public class QualityBenchmark {
+
+    private static final Map<String, Function<MappedData, PickupAndDeliverySolver>> SOLVERS = new LinkedHashMap<>();
+    static {
+        SOLVERS.put("insertion", InsertionHeuristic::new);
+        SOLVERS.put("alns", data -> new ALNSPickupAndDelivery(data, 1));
+        SOLVERS.put("milp", MILPPickupAndDeliveryWithTimeConstraints::new);
+        SOLVERS.put("cpsat", CPSATPickupAndDeliveryWithTimeConstraints::new);
+        SOLVERS.put("routing", RoutingPickupAndDelivery::new);
+        SOLVERS.put("portfolio", PortfolioSolver::new);
+    }
+
+    // relative change of the objective above which a run is reported as better or worse than the baseline
+    private static final double TOLERANCE = 1e-6;
+
+    public static void main(String[] args) throws IOException {
+        Map<String, String> options = new HashMap<>();
+        for (String arg: args) {
+            String[] kv = arg.replaceFirst("^--", "").split("=", 2);
+            options.put(kv[0], kv.length > 1 ? kv[1] : "true");
+        }
+
+        String data_dir = options.getOrDefault("data", "data");
+        long[] limits = Arrays.stream(options.getOrDefault("limits", "5,20").split(",")).mapToLong(Long::parseLong).toArray();
+        int[] generated = Arrays.stream(options.getOrDefault("generated", "10,25,50").split(",")).mapToInt(Integer::parseInt).toArray();
+        List<String> solvers = Arrays.asList(options.getOrDefault("solvers", String.join(",", SOLVERS.keySet())).split(","));
+        File history = new File(options.getOrDefault("history", "benchmarks/history.jsonl"));
+        File baseline = new File(options.getOrDefault("baseline", "benchmarks/baseline.jsonl"));
+
+        Map<String, InputData> corpus = corpus(data_dir, generated);
+        Map<String, Map<String, String>> baseline_runs = baseline.isFile() ? readRuns(baseline) : new HashMap<>();
+        String run_id = Instant.now().toString();
+
+        List<Map<String, String>> runs = new ArrayList<>();
+        int better = 0;
+        int worse = 0;
+        for (String instance: corpus.keySet()) {
+            for (String solver_name: solvers) {
+                if (!SOLVERS.containsKey(solver_name)) {
+                    throw new IllegalArgumentException("Unknown solver " + solver_name + ", known: " + SOLVERS.keySet());
+                }
+                for (long limit: limits) {
+                    Map<String, String> run = new LinkedHashMap<>();
+                    run.put("run", quote(run_id));
+                    run.put("instance", quote(instance));
+                    run.putAll(solve(corpus.get(instance), SOLVERS.get(solver_name), solver_name, limit));
+                    runs.add(run);
+
+                    String comparison = "";
+                    Map<String, String> base = baseline_runs.get(key(run));
+                    if (base != null) {
+                        double now = number(run.get("objective"));
+                        double before = number(base.get("objective"));
+                        if (now > before + TOLERANCE * Math.max(1, Math.abs(before))) {
+                            comparison = "WORSE than baseline " + base.get("objective");
+                            worse++;
+                        } else if (now < before - TOLERANCE * Math.max(1, Math.abs(before))) {
+                            comparison = "better than baseline " + base.get("objective");
+                            better++;
+                        } else {
+                            comparison = "same as baseline, best found after " + run.get("best_ms") + " ms instead of " + base.get("best_ms");
+                        }
+                    }
+                    System.out.println(String.format(Locale.ROOT, "%-24s %-10s %4d s: objective %-10s gap %-8s first %-7s best %-7s ms  %s",
+                            instance, solver_name, limit, run.get("objective"), run.get("gap"), run.get("first_feasible_ms"), run.get("best_ms"), comparison));
+                }
+            }
+        }
+
+        writeRuns(history, runs, true);
+        System.out.println(runs.size() + " runs appended to " + history + ".");
+        if (!baseline_runs.isEmpty()) {
+            System.out.println("Against " + baseline + ": " + better + " better, " + worse + " worse.");
+        }
+        if (options.containsKey("save-baseline")) {
+            writeRuns(baseline, runs, false);
+            System.out.println("Baseline saved to " + baseline + ".");
+        }
+    }
+
+    private static Map<String, InputData> corpus(String data_dir, int[] generated) {
+        Map<String, InputData> corpus = new LinkedHashMap<>();
+        File[] files = new File(data_dir).listFiles((dir, name) -> (name.endsWith(".xlsx") || name.endsWith(".txt")) && !name.startsWith("output"));
+        if (files != null) {
+            Arrays.sort(files);
+            for (File f: files) {
+                InputData data = f.getName().endsWith(".txt") ? TextInstanceHandling.readInputData(f.getPath()) : IOExcelHandling.readInputData(f.getPath());
+                if (data != null) {
+                    corpus.put(f.getName(), data);
+                }
+            }
+        }
+        for (int hubs: generated) {
+            corpus.put("generated-" + hubs, BenchmarkInstances.generate(hubs, 1));
+        }
+        return corpus;
+    }
+
+    private static Map<String, String> solve(InputData input, Function<MappedData, PickupAndDeliverySolver> factory, String solver_name, long limit) {
+        PrintStream out = BenchmarkInstances.silenceOutput();
+        MappedSolution solution = null;
+        PickupAndDeliverySolver solver = null;
+        IncumbentHolder holder = new IncumbentHolder();
+        long start = System.currentTimeMillis();
+        try {
+            solver = factory.apply(MappedData.parseInput(input));
+            solver.setTimeLimit(1000 * limit);
+            solver.setIncumbentHolder(holder);
+            solution = solver.solve(false);
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+        } finally {
+            System.setOut(out);
+        }
+        long total_ms = System.currentTimeMillis() - start;
+
+        // the portfolio keeps its own holder, the other solvers may not publish their final solution
+        if (solver instanceof PortfolioSolver) {
+            holder = ((PortfolioSolver) solver).getIncumbentHolder();
+        }
+        holder.offer(solution, solver_name);
+
+        Map<String, String> run = new LinkedHashMap<>();
+        run.put("solver", quote(solver_name));
+        run.put("time_limit_s", String.valueOf(limit));
+        List<IncumbentHolder.Incumbent> improvements = holder.history();
+        if (improvements.isEmpty()) {
+            run.put("objective", "null");
+            run.put("moves", "null");
+            run.put("unserved", "null");
+            run.put("gap", "null");
+            run.put("first_feasible_ms", "null");
+            run.put("best_ms", "null");
+        } else {
+            IncumbentHolder.Incumbent best = holder.get();
+            double bound = solver.bestBound();
+            double gap = Double.isNaN(bound) ? Double.NaN : (best.objective - bound) / Math.max(1, Math.abs(best.objective));
+            run.put("objective", json(best.objective));
+            run.put("moves", String.valueOf(best.solution.moves()));
+            run.put("unserved", json(best.solution.unservedQuantity()));
+            run.put("gap", json(gap));
+            run.put("first_feasible_ms", String.valueOf(improvements.get(0).time_ms));
+            run.put("best_ms", String.valueOf(best.time_ms));
+        }
+        run.put("optimal", String.valueOf(solver != null && solver.isOptimal()));
+        run.put("total_ms", String.valueOf(total_ms));
+        return run;
+    }
+
+    private static String key(Map<String, String> run) {
+        return run.get("instance") + "|" + run.get("solver") + "|" + run.get("time_limit_s");
+    }
+
+    private static void writeRuns(File file, List<Map<String, String>> runs, boolean append) throws IOException {
+        if (file.getAbsoluteFile().getParentFile() != null) {
+            file.getAbsoluteFile().getParentFile().mkdirs();
+        }
+        try (PrintWriter writer = new PrintWriter(new FileWriter(file, append))) {
+            for (Map<String, String> run: runs) {
+                StringBuilder line = new StringBuilder("{");
+                for (Map.Entry<String, String> e: run.entrySet()) {
+                    line.append(line.length() > 1 ? "," : "").append(quote(e.getKey())).append(":").append(e.getValue());
+                }
+                writer.println(line.append("}"));
+            }
+        }
+    }
+
+    /**
+     * Reads the flat JSON lines written by writeRuns(), the values are kept as they are written.
+     * When an instance, solver and time limit appear several times, the last line wins.
+     */
+    private static Map<String, Map<String, String>> readRuns(File file) throws IOException {
+        Pattern field = Pattern.compile("\"(\\w+)\":(\"[^\"]*\"|[^,}]*)");
+        Map<String, Map<String, String>> runs = new HashMap<>();
+        for (String line: Files.readAllLines(file.toPath())) {
+            Map<String, String> run = new LinkedHashMap<>();
+            Matcher m = field.matcher(line);
+            while (m.find()) {
+                run.put(m.group(1), m.group(2));
+            }
+            if (run.containsKey("instance")) {
+                runs.put(key(run), run);
+            }
+        }
+        return runs;
+    }
+
+    private static String quote(String s) {
+        return "\"" + s.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+    }
+
+    private static String json(double value) {
+        return Double.isNaN(value) || Double.isInfinite(value) ? "null" : String.format(Locale.ROOT, "%.6g", value);
+    }
+
+    private static double number(String value) {
+        return value == null || value.equals("null") ? Double.POSITIVE_INFINITY : Double.parseDouble(value);
+    }
+}
@@ -0,0 +1,254 @@
+package org.com.SplitPickupAndDelivery;
+
+import org.com.SplitPickupAndDelivery.models.Solution;
+import org.com.SplitPickupAndDelivery.solver.InstanceSnapshot;
+import org.com.SplitPickupAndDelivery.solver.MappedData;
+import org.com.SplitPickupAndDelivery.solver.MappedSolution;
+import org.com.SplitPickupAndDelivery.solver.Parameters;
+import org.com.SplitPickupAndDelivery.solver.SolveMetrics;
+import org.com.SplitPickupAndDelivery.utils.IOExcelHandling;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Runs read -> solve -> export for many workbooks in one JVM, so the native libraries are loaded once.
+ * Reading and writing the workbooks run on a small I/O pool, solving runs on a pool of
+ * Parameters.BATCH_THREADS threads. At most two jobs per solving thread are in flight at a time,
+ * so parsed instances do not pile up in memory while they wait for a solver.
+ * Each workbook is parsed once, the next runs load the InstanceSnapshot written next to it.
+ *
+ * The input is either a directory, whose *.xlsx and *.txt instances are all solved, or a manifest listing one
+ * workbook per line, optionally followed by its own time limit in seconds. Lines starting with # are ignored
+ * and relative paths are resolved against the directory of the manifest.
+ */
+public class BatchRunner {
+
+    public static class Job {
+        public final File input;
+        public final File output;
+        public final long time_limit_s;
+
+        public String status = "PENDING";
+        public String error;
+        public long read_ms;
+        public long solve_ms;
+        public long write_ms;
+        public int moves;
+        public int unserved_requests;
+        public final SolveMetrics metrics;
+
+        Job(File input, File output, long time_limit_s) {
+            this.input = input;
+            this.output = output;
+            this.time_limit_s = time_limit_s;
+            this.metrics = new SolveMetrics(input.getName());
+        }
+    }
+
+    private final String output_dir;
+    private final long time_limit_s;
+
+    /**
+     * @param output_dir   where the solutions are written, the "output" folder next to the inputs if null
+     * @param time_limit_s time limit of the jobs that do not have their own in the manifest
+     */
+    public BatchRunner(String output_dir, long time_limit_s) {
+        this.output_dir = output_dir;
+        this.time_limit_s = time_limit_s;
+    }
+
+    public List<Job> run(String input) {
+        List<Job> jobs = listJobs(new File(input));
+        System.out.println("Batch of " + jobs.size() + " workbooks, " + Parameters.BATCH_THREADS + " solving threads.");
+
+        ExecutorService io_pool = Executors.newFixedThreadPool(Parameters.BATCH_IO_THREADS);
+        ExecutorService cpu_pool = Executors.newFixedThreadPool(Parameters.BATCH_THREADS);
+        Semaphore in_flight = new Semaphore(2 * Parameters.BATCH_THREADS);
+        long start = System.currentTimeMillis();
+
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        try {
+            for (Job job: jobs) {
+                in_flight.acquireUninterruptibly();
+                CompletableFuture<Void> f = CompletableFuture
+                        .supplyAsync(() -> read(job), io_pool)
+                        .thenApplyAsync(data -> solve(job, data), cpu_pool)
+                        .thenAcceptAsync(solution -> write(job, solution), io_pool)
+                        .whenComplete((v, e) -> {
+                            if (e != null) {
+                                job.status = "FAILED";
+                                job.error = String.valueOf(e.getCause() != null ? e.getCause() : e);
+                            }
+                            in_flight.release();
+                            System.out.println(job.input.getName() + ": " + job.status);
+                        });
+                futures.add(f);
+            }
+            for (CompletableFuture<Void> f: futures) {
+                try {
+                    f.join();
+                } catch (RuntimeException e) {
+                    // already recorded on the job
+                }
+            }
+        } finally {
+            io_pool.shutdown();
+            cpu_pool.shutdown();
+        }
+
+        report(jobs, System.currentTimeMillis() - start);
+        return jobs;
+    }
+
+    private List<Job> listJobs(File input) {
+        List<Job> jobs = new ArrayList<>();
+        if (input.isDirectory()) {
+            File[] files = input.listFiles((dir, name) -> (name.endsWith(".xlsx") || name.endsWith(".txt")) && !name.startsWith("~$"));
+            if (files == null) {
+                throw new RuntimeException("Cannot list " + input);
+            }
+            Arrays.sort(files);
+            File out = outputDirectory(input);
+            for (File f: files) {
+                jobs.add(new Job(f, outputFile(out, f), time_limit_s));
+            }
+            return jobs;
+        }
+
+        List<String> lines;
+        try {
+            lines = Files.readAllLines(input.toPath());
+        } catch (IOException e) {
+            e.printStackTrace();
+            throw new RuntimeException(e);
+        }
+        File base = input.getAbsoluteFile().getParentFile();
+        File out = outputDirectory(base);
+        for (String line: lines) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String[] tokens = line.split("\\s+");
+            File f = new File(tokens[0]);
+            if (!f.isAbsolute()) {
+                f = new File(base, tokens[0]);
+            }
+            long limit = tokens.length > 1 ? Long.parseLong(tokens[1]) : time_limit_s;
+            jobs.add(new Job(f, outputFile(out, f), limit));
+        }
+        return jobs;
+    }
+
+    private File outputDirectory(File input_dir) {
+        File out = output_dir != null ? new File(output_dir) : new File(input_dir, "output");
+        if (!out.isDirectory() && !out.mkdirs()) {
+            throw new RuntimeException("Cannot create the output directory " + out);
+        }
+        return out;
+    }
+
+    private static File outputFile(File out, File input) {
+        String name = input.getName();
+        if (name.lastIndexOf('.') > 0) {
+            name = name.substring(0, name.lastIndexOf('.'));
+        }
+        return new File(out, name + "-output.xlsx");
+    }
+
+    private static MappedData read(Job job) {
+        job.status = "READING";
+        long t = System.currentTimeMillis();
+        MappedData data = InstanceSnapshot.loadOrParse(job.input.getPath(), job.metrics);
+        job.read_ms = System.currentTimeMillis() - t;
+        if (data == null) {
+            throw new RuntimeException("Cannot read " + job.input);
+        }
+        if (Parameters.USE_SHORTEST_PATH_CLOSURE) {
+            t = System.currentTimeMillis();
+            data = data.withShortestPaths();
+            job.metrics.addPhase("map", System.currentTimeMillis() - t);
+        }
+        return data;
+    }
+
+    private static Solution solve(Job job, MappedData mapped_data) {
+        job.status = "SOLVING";
+        long t = System.currentTimeMillis();
+        MappedSolution raw_solution = Main.solve(mapped_data, 1000 * job.time_limit_s, false, job.metrics);
+        job.solve_ms = System.currentTimeMillis() - t;
+        if (raw_solution == null) {
+            throw new RuntimeException("No solution found in " + job.time_limit_s + " s");
+        }
+        job.moves = raw_solution.moves();
+        t = System.currentTimeMillis();
+        Solution solution = mapped_data.resolveOutput(raw_solution);
+        job.metrics.addPhase("resolve", System.currentTimeMillis() - t);
+        job.unserved_requests = solution.unservedRequests.size();
+        return solution;
+    }
+
+    private static void write(Job job, Solution solution) {
+        job.status = "WRITING";
+        long t = System.currentTimeMillis();
+        IOExcelHandling.exportSolution(job.output.getPath(), solution);
+        job.write_ms = System.currentTimeMillis() - t;
+        job.metrics.addPhase("export", job.write_ms);
+        job.status = "OK";
+    }
+
+    /**
+     * Prints one line per job and writes the same table as summary.tsv next to the solutions, along with
+     * the metrics of the jobs as metrics.jsonl, one line per job, and as metrics.prom in the Prometheus text format.
+     */
+    private void report(List<Job> jobs, long total_ms) {
+        String header = "input\tstatus\tread_ms\tsolve_ms\twrite_ms\tmoves\tunserved\terror";
+        List<String> rows = new ArrayList<>();
+        int ok = 0;
+        for (Job job: jobs) {
+            if (job.status.equals("OK")) {
+                ok++;
+            }
+            rows.add(job.input.getName() + "\t" + job.status + "\t" + job.read_ms + "\t" + job.solve_ms + "\t" + job.write_ms
+                    + "\t" + job.moves + "\t" + job.unserved_requests + "\t" + (job.error == null ? "" : job.error));
+        }
+
+        System.out.println();
+        System.out.println(header);
+        for (String row: rows) {
+            System.out.println(row);
+        }
+        System.out.println(ok + "/" + jobs.size() + " workbooks solved in " + total_ms + " ms.");
+
+        if (jobs.isEmpty()) {
+            return;
+        }
+        File dir = jobs.get(0).output.getParentFile();
+        List<SolveMetrics> metrics = new ArrayList<>();
+        try (PrintWriter summary = new PrintWriter(new File(dir, "summary.tsv"));
+             PrintWriter metrics_json = new PrintWriter(new File(dir, "metrics.jsonl"));
+             PrintWriter metrics_prom = new PrintWriter(new File(dir, "metrics.prom"))) {
+            summary.println(header);
+            for (String row: rows) {
+                summary.println(row);
+            }
+            for (Job job: jobs) {
+                metrics_json.println(job.metrics.toJson());
+                metrics.add(job.metrics);
+            }
+            metrics_prom.print(SolveMetrics.toPrometheus(metrics));
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -4,19 +4,146 @@ import org.com.SplitPickupAndDelivery.models.InputData;
 import org.com.SplitPickupAndDelivery.models.Solution;
 import org.com.SplitPickupAndDelivery.solver.*;
 import org.com.SplitPickupAndDelivery.utils.IOExcelHandling;
+import org.com.SplitPickupAndDelivery.utils.TextInstanceHandling;
+
+import java.util.List;
 
 public class Main {
 
     public static void main(String[] args) {
+        if (args.length > 0 && args[0].equals("generate")) {
+            // Main generate <file> <hubs> <trucks> <requests> [seed]: writes an instance in the text format
+            long seed = args.length > 5 ? Long.parseLong(args[5]) : 0;
+            TextInstanceHandling.generateInstance(args[1], Integer.parseInt(args[2]), Integer.parseInt(args[3]), Integer.parseInt(args[4]), seed);
+            return;
+        }
+
+        if (args.length > 0) {
+            // batch mode: Main <input directory | manifest> [output directory] [time limit in s]
+            String output_dir = args.length > 1 ? args[1] : null;
+            long time_limit_s = args.length > 2 ? Long.parseLong(args[2]) : Parameters.TIME_LIMIT_S;
+            BatchRunner runner = new BatchRunner(output_dir, time_limit_s);
+            runner.run(args[0]);
+            return;
+        }
+
+        SolveMetrics metrics = new SolveMetrics("input-2.xlsx");
+        long start = System.currentTimeMillis();
         InputData data = IOExcelHandling.readInputData("data/input-2.xlsx");
-        MappedData.parseInput(data);
-        MappedData.display();
+        metrics.addPhase("read", System.currentTimeMillis() - start);
+
+        start = System.currentTimeMillis();
+        MappedData mapped_data = MappedData.parseInput(data);
+        if (Parameters.USE_SHORTEST_PATH_CLOSURE) {
+            mapped_data = mapped_data.withShortestPaths();
+        }
+        metrics.addPhase("map", System.currentTimeMillis() - start);
+        mapped_data.display();
 
         Parameters.TIME_LIMIT_S = 60;
-        MILPPickupAndDeliveryWithTimeConstraints solver = new MILPPickupAndDeliveryWithTimeConstraints();
-        MappedSolution raw_solution = solver.solve(true);
+        MappedSolution raw_solution = solve(mapped_data, 1000 * Parameters.TIME_LIMIT_S, true, metrics);
+        if (raw_solution == null) {
+            System.out.println("No solution found within " + Parameters.TIME_LIMIT_S + " s.");
+            return;
+        }
 
-        Solution solution = MappedData.resolveOutput(raw_solution);
+        start = System.currentTimeMillis();
+        Solution solution = mapped_data.resolveOutput(raw_solution);
+        metrics.addPhase("resolve", System.currentTimeMillis() - start);
+
+        start = System.currentTimeMillis();
         IOExcelHandling.exportSolution("data/output.xlsx", solution);
+        metrics.addPhase("export", System.currentTimeMillis() - start);
+
+        System.out.println(metrics.toJson());
+    }
+
+    /**
+     * Solves one instance with the MILP and falls back to the routing library if SCIP finds no solution,
+     * both within the given time limit. The fallback only gets what the MILP left of it, null is returned if
+     * nothing is left.
+     */
+    public static MappedSolution solve(MappedData mapped_data, long time_limit_ms, boolean verbose) {
+        return solve(mapped_data, time_limit_ms, verbose, new SolveMetrics());
+    }
+
+    /**
+     * Same as solve(mapped_data, time_limit_ms, verbose), the solvers record their phases and statistics in metrics.
+     * With Parameters.USE_SOLUTION_CACHE, an instance solved to optimality before is answered from the SolutionCache,
+     * otherwise its cached solution, or that of an instance with the same network and trucks, seeds the warm start
+     * of the MILP, and the new solution is added to the cache with the status of the solver. With Parameters.USE_PRESOLVE, the MILP is built on the instance
+     * reduced by Presolve and its solution is mapped back.
+     * With Parameters.DECOMPOSITION_REGIONS above 1, the GeographicDecomposition solves the instance instead of the MILP.
+     */
+    public static MappedSolution solve(MappedData mapped_data, long time_limit_ms, boolean verbose, SolveMetrics metrics) {
+        long start = System.currentTimeMillis();
+        SolutionCache cache = null;
+        List<List<String>> seed_routes = null;
+        if (Parameters.USE_SOLUTION_CACHE) {
+            cache = new SolutionCache(Parameters.SOLUTION_CACHE_DIR, Parameters.SOLUTION_CACHE_MB << 20);
+            MappedSolution cached = cache.get(mapped_data);
+            metrics.addPhase("cache", System.currentTimeMillis() - start);
+            if (cached != null) {
+                System.out.println("Solution found in the cache: " + cached.moves() + " moves, " + cached.unservedQuantity() + " boxes unserved.");
+                metrics.startSolver("cache");
+                metrics.status = "CACHED";
+                metrics.objective = cached.objective();
+                return cached;
+            }
+            seed_routes = cache.seedRoutes(mapped_data);
+        }
+
+        MappedSolution raw_solution;
+        if (Parameters.DECOMPOSITION_REGIONS > 1) {
+            GeographicDecomposition decomposition = new GeographicDecomposition(mapped_data, Parameters.DECOMPOSITION_REGIONS);
+            decomposition.setTimeLimit(Math.max(0, time_limit_ms - (System.currentTimeMillis() - start)));
+            decomposition.setMetrics(metrics);
+            raw_solution = decomposition.solve(verbose);
+        } else {
+            raw_solution = solve_milp(mapped_data, time_limit_ms, start, seed_routes, verbose, metrics);
+        }
+
+        if (cache != null && raw_solution != null) {
+            long cache_start = System.currentTimeMillis();
+            cache.put(mapped_data, raw_solution, metrics.status, time_limit_ms);
+            metrics.addPhase("cache", System.currentTimeMillis() - cache_start);
+        }
+        return raw_solution;
+    }
+
+    /**
+     * Runs the MILP, on the instance reduced by Presolve with Parameters.USE_PRESOLVE, and the routing fallback
+     * on what is left of the time limit counted from start.
+     */
+    private static MappedSolution solve_milp(MappedData mapped_data, long time_limit_ms, long start, List<List<String>> seed_routes,
+                                             boolean verbose, SolveMetrics metrics) {
+        MILPPickupAndDeliveryWithTimeConstraints solver;
+        Presolve presolve = null;
+        if (Parameters.USE_PRESOLVE) {
+            long presolve_start = System.currentTimeMillis();
+            presolve = new Presolve(mapped_data);
+            solver = new MILPPickupAndDeliveryWithTimeConstraints(presolve);
+            metrics.addPhase("presolve", System.currentTimeMillis() - presolve_start);
+        } else {
+            solver = new MILPPickupAndDeliveryWithTimeConstraints(mapped_data);
+        }
+        solver.setTimeLimit(time_limit_ms);
+        solver.setMetrics(metrics);
+        solver.setSeedRoutes(seed_routes);
+        MappedSolution raw_solution = solver.solve(verbose);
+        if (presolve != null) {
+            raw_solution = presolve.restore(raw_solution);
+        }
+        long remaining_ms = Math.max(0, time_limit_ms - (System.currentTimeMillis() - start));
+        if (raw_solution == null && remaining_ms > 0) {
+            // SCIP found no solution in time, fall back to the routing library on what is left of the budget
+            RoutingPickupAndDelivery fallback = new RoutingPickupAndDelivery(mapped_data);
+            fallback.setTimeLimit(remaining_ms);
+            fallback.setMetrics(metrics);
+            raw_solution = fallback.solve(false);
+        } else if (raw_solution == null) {
+            System.out.println("No time left for the routing fallback.");
+        }
+        return raw_solution;
     }
 }
@@ -1,14 +1,11 @@
 package org.com.SplitPickupAndDelivery.models;
 
-import org.apache.commons.math3.util.Pair;
-
 import java.util.ArrayList;
-import java.util.HashMap;
 
 public class InputData {
 
     public ArrayList<Hub> hubs;
-    public HashMap<Pair<String, String>, Long> travel_time;
+    public TravelTimeMatrix travel_time;        // indexed like hubs
     public ArrayList<Truck> trucks;
     public ArrayList<Request> requests;
 
@@ -0,0 +1,99 @@
+package org.com.SplitPickupAndDelivery.models;
+
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.util.Arrays;
+
+/**
+ * Square matrix of travel times between hubs numbered 0..size-1, stored row by row in one flat block,
+ * either a double[] on the heap or a direct buffer outside of it. A missing arc holds MISSING.
+ */
+public class TravelTimeMatrix {
+
+    public static final double MISSING = -1;
+
+    private final int size;
+    private final double[] values;          // on-heap storage, null when off-heap
+    private final DoubleBuffer buffer;      // off-heap storage, null when on-heap
+
+    /**
+     * Creates a matrix where every arc is missing.
+     */
+    public TravelTimeMatrix(int size, boolean off_heap) {
+        this(size, off_heap, MISSING);
+    }
+
+    /**
+     * Creates a matrix where every entry is initial_value.
+     */
+    public TravelTimeMatrix(int size, boolean off_heap, double initial_value) {
+        this.size = size;
+        if (off_heap) {
+            values = null;
+            buffer = ByteBuffer.allocateDirect(Math.multiplyExact(Math.multiplyExact(size, size), Double.BYTES)).asDoubleBuffer();
+            if (initial_value != 0) {
+                for (int p=0; p<size*size; p++) {
+                    buffer.put(p, initial_value);
+                }
+            }
+        } else {
+            values = new double[Math.multiplyExact(size, size)];
+            if (initial_value != 0) {
+                Arrays.fill(values, initial_value);
+            }
+            buffer = null;
+        }
+    }
+
+    /**
+     * Wraps size x size doubles stored row by row, e.g. a memory-mapped file. Nothing is copied,
+     * so the matrix reads straight from the buffer.
+     */
+    public TravelTimeMatrix(int size, DoubleBuffer buffer) {
+        if (buffer.remaining() < (long) size * size) {
+            throw new IllegalArgumentException("The buffer holds " + buffer.remaining() + " values, " + size + " x " + size + " are needed");
+        }
+        this.size = size;
+        this.values = null;
+        this.buffer = buffer.slice();
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public double get(int i, int j) {
+        return values != null ? values[i * size + j] : buffer.get(i * size + j);
+    }
+
+    public boolean exists(int i, int j) {
+        return get(i, j) != MISSING;
+    }
+
+    public void set(int i, int j, double time) {
+        if (values != null) {
+            values[i * size + j] = time;
+        } else {
+            buffer.put(i * size + j, time);
+        }
+    }
+
+    public boolean isOffHeap() {
+        return values == null;
+    }
+
+    /**
+     * Returns a copy that can be changed without touching this matrix, off-heap if this one is.
+     */
+    public TravelTimeMatrix copy() {
+        TravelTimeMatrix copy = new TravelTimeMatrix(size, isOffHeap(), 0);
+        if (values != null) {
+            System.arraycopy(values, 0, copy.values, 0, values.length);
+        } else {
+            for (int p=0; p<size*size; p++) {
+                copy.buffer.put(p, buffer.get(p));
+            }
+        }
+        return copy;
+    }
+}
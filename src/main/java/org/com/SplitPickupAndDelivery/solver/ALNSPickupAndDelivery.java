@@ -0,0 +1,460 @@
+package org.com.SplitPickupAndDelivery.solver;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * The ALNSPickupAndDelivery class implements an adaptive large neighbourhood search for the
+ * split pickup and delivery problem with time constraints. Starting from the insertion
+ * heuristic, every iteration removes parts of requests from the routes with a destroy operator,
+ * reinserts them with a repair operator and accepts the result by simulated annealing. Operators
+ * are picked by roulette wheel with weights adapted to their past success. The search stops
+ * after Parameters.TIME_LIMIT_S seconds, or when interrupted, and returns the best plan found.
+ */
+public class ALNSPickupAndDelivery implements PickupAndDeliverySolver {
+
+    private static final double[] SCORES = {33, 9, 13};     // scores of a new best, an improving and an accepted solution
+    private static final double REACTION = 0.1;
+    private static final int SEGMENT = 100;                 // number of iterations between two weight updates
+    private static final int MIN_REMOVED = 5;               // bounds of the number of parts removed per iteration
+    private static final int MAX_REMOVED = 40;
+
+    private static final String[] DESTROY_NAMES = {"random", "related", "route", "split"};
+    private static final String[] REPAIR_NAMES = {"greedy", "regret"};
+
+    private RouteProblem problem;
+    private Random random;
+    private long time_limit_ms;
+    private IncumbentHolder holder;
+    private List<List<String>> seed_routes;     // routes of a similar instance, see setSeedRoutes()
+    private SolveMetrics metrics = new SolveMetrics();
+    private volatile boolean interrupted;
+
+    public ALNSPickupAndDelivery(MappedData data) {
+        this(data, 0);
+    }
+
+    public ALNSPickupAndDelivery(MappedData data, long seed) {
+        problem = new RouteProblem(data);
+        random = new Random(seed);
+        time_limit_ms = 1000 * Parameters.TIME_LIMIT_S;
+    }
+
+    public void setTimeLimit(long time_limit_ms) {
+        this.time_limit_ms = time_limit_ms;
+    }
+
+    public void setIncumbentHolder(IncumbentHolder holder) {
+        this.holder = holder;
+    }
+
+    public void setSeedRoutes(List<List<String>> seed_routes) {
+        this.seed_routes = seed_routes;
+    }
+
+    public void setMetrics(SolveMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    public void interrupt() {
+        interrupted = true;
+    }
+
+    public MappedSolution solve(boolean verbose) {
+        metrics.startSolver("ALNS");
+        long solve_start = System.currentTimeMillis();
+        MappedSolution solution = search(verbose).toMappedSolution();
+        metrics.addPhase("solve", System.currentTimeMillis() - solve_start);
+        metrics.status = interrupted ? "INTERRUPTED" : "TIME_LIMIT";
+        metrics.objective = solution.objective();
+        return solution;
+    }
+
+    /**
+     * Runs the search and returns the best plan found.
+     */
+    RoutePlan search(boolean verbose) {
+        long start = System.currentTimeMillis();
+
+        RoutePlan current = InsertionHeuristic.construct(problem, seed_routes);
+        RoutePlan best = current;
+        double current_obj = objective(current);
+        double best_obj = current_obj;
+        System.out.println("ALNS initial solution: " + current.moves() + " moves, " + current.unservedQuantity() + " boxes unserved.");
+        if (holder != null) {
+            holder.offer(best.toMappedSolution(), "ALNS");
+        }
+
+        double[] destroy_weight = new double[DESTROY_NAMES.length];
+        double[] repair_weight = new double[REPAIR_NAMES.length];
+        double[] destroy_score = new double[DESTROY_NAMES.length];
+        double[] repair_score = new double[REPAIR_NAMES.length];
+        int[] destroy_used = new int[DESTROY_NAMES.length];
+        int[] repair_used = new int[REPAIR_NAMES.length];
+        Arrays.fill(destroy_weight, 1);
+        Arrays.fill(repair_weight, 1);
+
+        // a solution 5% worse than the initial one is accepted with probability 0.5 at the start
+        double initial_temperature = 0.05 * Math.max(1, current.cost()) / Math.log(2);
+
+        long iteration = 0;
+        while (!interrupted && System.currentTimeMillis() - start < time_limit_ms) {
+            iteration++;
+
+            int d = roulette(destroy_weight);
+            int h = roulette(repair_weight);
+
+            RoutePlan candidate = current.copy();
+            ArrayList<Integer> removed = destroy(candidate, d);
+            repair(candidate, h, removed);
+            double candidate_obj = objective(candidate);
+
+            double elapsed = (System.currentTimeMillis() - start) / (double) Math.max(1, time_limit_ms);
+            double temperature = initial_temperature * Math.pow(0.01, elapsed);
+
+            double score = 0;
+            if (candidate_obj < best_obj - 1e-9) {
+                best = candidate;
+                best_obj = candidate_obj;
+                score = SCORES[0];
+                if (holder != null) {
+                    holder.offer(best.toMappedSolution(), "ALNS");
+                }
+                if (verbose) {
+                    System.out.println("\tIteration " + iteration + ": " + candidate.moves() + " moves, " + candidate.unservedQuantity() + " boxes unserved.");
+                }
+            } else if (candidate_obj < current_obj - 1e-9) {
+                score = SCORES[1];
+            } else if (random.nextDouble() < Math.exp((current_obj - candidate_obj) / temperature)) {
+                score = SCORES[2];
+            }
+
+            if (score > 0) {
+                current = candidate;
+                current_obj = candidate_obj;
+            }
+
+            destroy_score[d] += score;
+            repair_score[h] += score;
+            destroy_used[d]++;
+            repair_used[h]++;
+
+            if (iteration % SEGMENT == 0) {
+                update_weights(destroy_weight, destroy_score, destroy_used);
+                update_weights(repair_weight, repair_score, repair_used);
+            }
+        }
+
+        metrics.iterations = iteration;
+        System.out.println("ALNS finished after " + iteration + " iterations: " + best.moves() + " moves, "
+                + best.unservedQuantity() + " boxes unserved.");
+        if (verbose) {
+            for (int i=0; i<DESTROY_NAMES.length; i++) {
+                System.out.println("\tWeight of " + DESTROY_NAMES[i] + " removal: " + destroy_weight[i]);
+            }
+            for (int i=0; i<REPAIR_NAMES.length; i++) {
+                System.out.println("\tWeight of " + REPAIR_NAMES[i] + " insertion: " + repair_weight[i]);
+            }
+            best.display();
+        }
+
+        return best;
+    }
+
+    private double objective(RoutePlan plan) {
+        return plan.cost() + MappedSolution.UNSERVED_PENALTY * plan.unservedQuantity();
+    }
+
+    private int roulette(double[] weight) {
+        double total = 0;
+        for (double w: weight) {
+            total += w;
+        }
+
+        double v = random.nextDouble() * total;
+        for (int i=0; i<weight.length; i++) {
+            v -= weight[i];
+            if (v <= 0) {
+                return i;
+            }
+        }
+        return weight.length - 1;
+    }
+
+    private void update_weights(double[] weight, double[] score, int[] used) {
+        for (int i=0; i<weight.length; i++) {
+            if (used[i] > 0) {
+                weight[i] = (1 - REACTION) * weight[i] + REACTION * score[i] / used[i];
+            }
+            weight[i] = Math.max(weight[i], 0.05);
+            score[i] = 0;
+            used[i] = 0;
+        }
+    }
+
+    /******************************************************************************
+     *                          DESTROY OPERATORS                                 *
+     * ****************************************************************************/
+    /**
+     * Removes parts of requests from the plan and returns the requests that were touched.
+     */
+    private ArrayList<Integer> destroy(RoutePlan plan, int operator) {
+        // the served parts of requests, as pairs (truck, request)
+        ArrayList<int[]> parts = new ArrayList<>();
+        for (int k=0; k<problem.num_trucks; k++) {
+            for (int r=0; r<problem.num_requests; r++) {
+                if (plan.served[k][r] > RoutePlan.EPS) {
+                    parts.add(new int[]{k, r});
+                }
+            }
+        }
+        if (parts.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        int low = Math.max(1, Math.min(MIN_REMOVED, parts.size() / 10));
+        int high = Math.max(low, Math.min(MAX_REMOVED, (int) (0.4 * parts.size())));
+        int count = low + random.nextInt(high - low + 1);
+
+        double[] before = plan.unserved.clone();
+        switch (operator) {
+            case 1:
+                related_removal(plan, parts, count);
+                break;
+            case 2:
+                route_removal(plan, parts);
+                break;
+            case 3:
+                split_removal(plan, parts, count);
+                break;
+            default:
+                random_removal(plan, parts, count);
+        }
+
+        ArrayList<Integer> removed = new ArrayList<>();
+        for (int r=0; r<problem.num_requests; r++) {
+            if (plan.unserved[r] > before[r] + RoutePlan.EPS) {
+                removed.add(r);
+            }
+        }
+        return removed;
+    }
+
+    private void random_removal(RoutePlan plan, ArrayList<int[]> parts, int count) {
+        for (int n=0; n<count && !parts.isEmpty(); n++) {
+            int[] part = parts.remove(random.nextInt(parts.size()));
+            plan.remove(part[0], part[1]);
+        }
+    }
+
+    /**
+     * Removes the parts of requests that are close to a random seed request, in terms of travel
+     * time between their pickup hubs, between their delivery hubs and of their deadlines.
+     */
+    private void related_removal(RoutePlan plan, ArrayList<int[]> parts, int count) {
+        int seed = parts.get(random.nextInt(parts.size()))[1];
+        double[] relatedness = new double[problem.num_requests];
+        for (int r=0; r<problem.num_requests; r++) {
+            relatedness[r] = distance(problem.from[seed], problem.from[r]) + distance(problem.to[seed], problem.to[r])
+                    + Math.abs(problem.pickup_deadline[seed] - problem.pickup_deadline[r]);
+        }
+
+        parts.sort(Comparator.comparingDouble(part -> relatedness[part[1]]));
+        for (int n=0; n<count && !parts.isEmpty(); n++) {
+            // randomized choice biased towards the most related parts
+            int idx = (int) (Math.pow(random.nextDouble(), 6) * parts.size());
+            int[] part = parts.remove(idx);
+            plan.remove(part[0], part[1]);
+        }
+    }
+
+    private double distance(int i, int j) {
+        if (i == j) {
+            return 0;
+        }
+        double d1 = problem.travel_time[i][j];
+        double d2 = problem.travel_time[j][i];
+        if (d1 < 0 && d2 < 0) {
+            return 1e9;
+        }
+        return d1 < 0 ? d2 : (d2 < 0 ? d1 : Math.min(d1, d2));
+    }
+
+    /**
+     * Empties the route of a random truck.
+     */
+    private void route_removal(RoutePlan plan, ArrayList<int[]> parts) {
+        int k = parts.get(random.nextInt(parts.size()))[0];
+        for (int[] part: parts) {
+            if (part[0] == k) {
+                plan.remove(part[0], part[1]);
+            }
+        }
+    }
+
+    /**
+     * Removes all the parts of requests that are split over several trucks, so that they can
+     * be reinserted in fewer pieces. Falls back to random removal if no request is split.
+     */
+    private void split_removal(RoutePlan plan, ArrayList<int[]> parts, int count) {
+        int[] pieces = new int[problem.num_requests];
+        for (int[] part: parts) {
+            pieces[part[1]]++;
+        }
+
+        ArrayList<Integer> split = new ArrayList<>();
+        for (int r=0; r<problem.num_requests; r++) {
+            if (pieces[r] > 1) {
+                split.add(r);
+            }
+        }
+        if (split.isEmpty()) {
+            random_removal(plan, parts, count);
+            return;
+        }
+
+        boolean[] chosen = new boolean[problem.num_requests];
+        for (int n=0; n<count && !split.isEmpty(); n++) {
+            chosen[split.remove(random.nextInt(split.size()))] = true;
+        }
+        for (int[] part: parts) {
+            if (chosen[part[1]]) {
+                plan.remove(part[0], part[1]);
+            }
+        }
+    }
+
+    /******************************************************************************
+     *                          REPAIR OPERATORS                                  *
+     * ****************************************************************************/
+    /**
+     * Reinserts the removed requests, together with as many randomly chosen requests that were
+     * already unserved, so that one iteration does not retry every unserved request.
+     */
+    private void repair(RoutePlan plan, int operator, ArrayList<Integer> removed) {
+        boolean[] is_removed = new boolean[problem.num_requests];
+        ArrayList<Integer> pending = new ArrayList<>();
+        for (int r: removed) {
+            is_removed[r] = true;
+            pending.add(r);
+        }
+
+        ArrayList<Integer> others = new ArrayList<>();
+        for (int r=0; r<problem.num_requests; r++) {
+            if (!is_removed[r] && plan.unserved[r] > RoutePlan.EPS) {
+                others.add(r);
+            }
+        }
+        for (int n=0; n<removed.size() + 1 && !others.isEmpty(); n++) {
+            pending.add(others.remove(random.nextInt(others.size())));
+        }
+
+        if (operator == 1) {
+            regret_insertion(plan, pending);
+        } else {
+            greedy_insertion(plan, pending);
+        }
+    }
+
+    /**
+     * Inserts the pending requests one by one in random order, each at its cheapest position.
+     */
+    private void greedy_insertion(RoutePlan plan, ArrayList<Integer> pending) {
+        for (int n=pending.size()-1; n>0; n--) {
+            int m = random.nextInt(n + 1);
+            int tmp = pending.get(n);
+            pending.set(n, pending.get(m));
+            pending.set(m, tmp);
+        }
+
+        for (int r: pending) {
+            plan.insert(r);
+        }
+    }
+
+    /**
+     * Regret-2 insertion: the request whose best insertion is the most ahead of its best
+     * insertion into another truck goes first. Insertions are cached per (request, truck) and
+     * only the truck changed by the last insertion is re-evaluated.
+     */
+    private void regret_insertion(RoutePlan plan, ArrayList<Integer> pending) {
+        int K = problem.num_trucks;
+        RoutePlan.Insertion[][] cache = new RoutePlan.Insertion[pending.size()][K];
+        for (int n=0; n<pending.size(); n++) {
+            int r = pending.get(n);
+            for (int k=0; k<K; k++) {
+                cache[n][k] = plan.findInsertion(k, r, plan.unserved[r]);
+            }
+        }
+
+        boolean[] done = new boolean[pending.size()];
+        while (true) {
+            int chosen = -1;
+            double chosen_regret = Double.NEGATIVE_INFINITY;
+            RoutePlan.Insertion chosen_ins = null;
+
+            for (int n=0; n<pending.size(); n++) {
+                if (done[n]) {
+                    continue;
+                }
+
+                RoutePlan.Insertion first = null;
+                double second = Double.POSITIVE_INFINITY;
+                for (int k=0; k<K; k++) {
+                    RoutePlan.Insertion ins = cache[n][k];
+                    if (ins == null) {
+                        continue;
+                    }
+                    if (ins.betterThan(first)) {
+                        if (first != null) {
+                            second = Math.min(second, first.cost);
+                        }
+                        first = ins;
+                    } else {
+                        second = Math.min(second, ins.cost);
+                    }
+                }
+
+                if (first == null) {
+                    done[n] = true;
+                    continue;
+                }
+
+                double regret = second == Double.POSITIVE_INFINITY ? 1e9 : second - first.cost;
+                if (regret > chosen_regret) {
+                    chosen = n;
+                    chosen_regret = regret;
+                    chosen_ins = first;
+                }
+            }
+
+            if (chosen < 0) {
+                break;
+            }
+
+            plan.apply(chosen_ins);
+            int k = chosen_ins.truck;
+            for (int n=0; n<pending.size(); n++) {
+                int r = pending.get(n);
+                if (done[n]) {
+                    continue;
+                }
+                if (plan.unserved[r] <= RoutePlan.EPS) {
+                    done[n] = true;
+                    continue;
+                }
+
+                cache[n][k] = plan.findInsertion(k, r, plan.unserved[r]);
+                if (n == chosen) {
+                    // the remaining quantity changed, so every truck has to be re-evaluated
+                    for (int k2=0; k2<K; k2++) {
+                        cache[n][k2] = plan.findInsertion(k2, r, plan.unserved[r]);
+                    }
+                }
+            }
+        }
+    }
+}
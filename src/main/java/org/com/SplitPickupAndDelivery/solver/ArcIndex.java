@@ -0,0 +1,88 @@
+package org.com.SplitPickupAndDelivery.solver;
+
+import java.util.ArrayList;
+
+/**
+ * The ArcIndex class stores, for every truck, only the arcs of the node graph that the
+ * truck can actually use. Arcs of truck k are numbered 0, 1, ... and every node keeps the
+ * lists of its outgoing and incoming arc ids, so that the model builders can loop over
+ * the adjacency of a node instead of over all node pairs.
+ */
+class ArcIndex {
+
+    private final int num_nodes;
+    private final ArrayList<ArrayList<Integer>> tail;                   // tail.get(k).get(a) is the start node of arc a of truck k
+    private final ArrayList<ArrayList<Integer>> head;                   // head.get(k).get(a) is the end node of arc a of truck k
+    private final ArrayList<ArrayList<ArrayList<Integer>>> out_arcs;    // out_arcs.get(k).get(i) is the list of arcs of truck k leaving node i
+    private final ArrayList<ArrayList<ArrayList<Integer>>> in_arcs;     // in_arcs.get(k).get(j) is the list of arcs of truck k entering node j
+
+    public ArcIndex(int num_trucks, int num_nodes) {
+        this.num_nodes = num_nodes;
+
+        tail = new ArrayList<>();
+        head = new ArrayList<>();
+        out_arcs = new ArrayList<>();
+        in_arcs = new ArrayList<>();
+        for (int k=0; k<num_trucks; k++) {
+            tail.add(new ArrayList<>());
+            head.add(new ArrayList<>());
+
+            ArrayList<ArrayList<Integer>> out_k = new ArrayList<>();
+            ArrayList<ArrayList<Integer>> in_k = new ArrayList<>();
+            for (int i=0; i<num_nodes; i++) {
+                out_k.add(new ArrayList<>());
+                in_k.add(new ArrayList<>());
+            }
+            out_arcs.add(out_k);
+            in_arcs.add(in_k);
+        }
+    }
+
+    /**
+     * Registers the arc i -> j for truck k and returns its id.
+     */
+    public int add(int k, int i, int j) {
+        int a = tail.get(k).size();
+        tail.get(k).add(i);
+        head.get(k).add(j);
+        out_arcs.get(k).get(i).add(a);
+        in_arcs.get(k).get(j).add(a);
+        return a;
+    }
+
+    /**
+     * Returns the id of the arc i -> j of truck k, or -1 if truck k cannot use it.
+     */
+    public int find(int k, int i, int j) {
+        for (int a: out_arcs.get(k).get(i)) {
+            if (head.get(k).get(a) == j) {
+                return a;
+            }
+        }
+        return -1;
+    }
+
+    public int numNodes() {
+        return num_nodes;
+    }
+
+    public int numArcs(int k) {
+        return tail.get(k).size();
+    }
+
+    public int tail(int k, int a) {
+        return tail.get(k).get(a);
+    }
+
+    public int head(int k, int a) {
+        return head.get(k).get(a);
+    }
+
+    public ArrayList<Integer> outArcs(int k, int i) {
+        return out_arcs.get(k).get(i);
+    }
+
+    public ArrayList<Integer> inArcs(int k, int j) {
+        return in_arcs.get(k).get(j);
+    }
+}
@@ -0,0 +1,600 @@
+package org.com.SplitPickupAndDelivery.solver;
+
+import com.google.ortools.Loader;
+import com.google.ortools.sat.BoolVar;
+import com.google.ortools.sat.CircuitConstraint;
+import com.google.ortools.sat.CpModel;
+import com.google.ortools.sat.CpSolver;
+import com.google.ortools.sat.CpSolverSolutionCallback;
+import com.google.ortools.sat.CpSolverStatus;
+import com.google.ortools.sat.IntVar;
+import com.google.ortools.sat.LinearExpr;
+import com.google.ortools.sat.LinearExprBuilder;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.function.ToLongFunction;
+
+/**
+ * The CPSATPickupAndDeliveryWithTimeConstraints class implements a constraint programming model
+ * of the split pickup and delivery problem with time constraints, solved by the CP-SAT solver
+ * of OR-Tools. It has the same requests, deadlines and forbidden points as the MILP with time
+ * constraints, but the route of every truck is a circuit constraint over a depot node and the
+ * hubs, where a hub that is not visited takes its self-loop. Quantities are scaled to integers
+ * and times are in seconds relative to the earliest start working time of the trucks.
+ */
+public class CPSATPickupAndDeliveryWithTimeConstraints implements PickupAndDeliverySolver {
+
+    private final MappedData data;
+    private int N;                      // number of (logical) hubs, node N is the depot of every truck
+    private int K;                      // number of trucks
+    private List<MappedRequest> requests;
+    private ArrayList<ArrayList<Integer>> pickups_at;   // pickups_at[i] is the list of requests picked up at hub i
+    private ArrayList<ArrayList<Integer>> drops_at;     // drops_at[i] is the list of requests delivered at hub i
+    private boolean[][] forbidden;
+    private long[][] travel_time;       // in seconds, rounded up
+    private long[] start_working_time;  // in seconds, rounded up
+    private double base_time;           // in milliseconds
+    private long[] capacity;            // scaled capacities
+    private long[] quantity;            // scaled quantities
+    private long scale;                 // quantities are multiplied by scale before rounding
+    private long horizon;
+    private ArcIndex arcs;              // arcs that each truck can actually use, including the arcs from and to the depot
+
+    private CpModel model;
+    private volatile CpSolver running;  // solver while solve() is running, used by interrupt()
+    private BoolVar[][] x;              // x[k][a] is true if truck k moves along its arc a
+    private BoolVar[][] skip;           // skip[k][i] is true if truck k does not visit hub i, null if it must visit i
+    private IntVar[][] arrival_time;    // arrival_time[k][i] is the time point that truck k arrives at hub i
+    private IntVar[][] order;           // order[k][i] is the position of hub i in the route of truck k
+    private IntVar[][] load;            // load[k][i] is the load of truck k when leaving hub i
+    private IntVar[][] p;               // p[k][r] is the scaled amount of request r served by truck k
+    private BoolVar[][] y;              // y[k][r] is true if truck k serves (a part of) request r
+
+    private long time_limit_ms;
+    private IncumbentHolder holder;
+    private List<List<String>> seed_routes;     // routes of a similar instance, see setSeedRoutes()
+    private SolveMetrics metrics = new SolveMetrics();
+    private volatile boolean interrupted;
+    private boolean optimal;
+    private double best_bound = Double.NaN;
+
+    public CPSATPickupAndDeliveryWithTimeConstraints(MappedData data) {
+        this.data = data;
+        time_limit_ms = 1000 * Parameters.TIME_LIMIT_S;
+
+        N = data.N;
+        K = data.K;
+        requests = data.requests;
+
+        pickups_at = new ArrayList<>();
+        drops_at = new ArrayList<>();
+        for (int i=0; i<N; i++) {
+            pickups_at.add(new ArrayList<>());
+            drops_at.add(new ArrayList<>());
+        }
+        for (int r=0; r<requests.size(); r++) {
+            pickups_at.get(requests.get(r).from_hub).add(r);
+            drops_at.get(requests.get(r).to_hub).add(r);
+        }
+
+        forbidden = new boolean[K][N];
+        for (int k=0; k<K; k++) {
+            if (data.forbiddenPoints.get(k) != null) {
+                for (Integer i: data.forbiddenPoints.get(k)) {
+                    if (i != null) {
+                        forbidden[k][i] = true;
+                    }
+                }
+            }
+        }
+
+        // quantities are kept integral when they all are, otherwise they get two decimals
+        scale = 1;
+        for (MappedRequest req: requests) {
+            if (req.quantity != Math.rint(req.quantity)) {
+                scale = 100;
+            }
+        }
+        for (double cap: data.capacity) {
+            if (cap != Math.rint(cap)) {
+                scale = 100;
+            }
+        }
+
+        quantity = new long[requests.size()];
+        for (int r=0; r<requests.size(); r++) {
+            quantity[r] = Math.round(scale * requests.get(r).quantity);
+        }
+        capacity = new long[K];
+        for (int k=0; k<K; k++) {
+            capacity[k] = (long) Math.floor(scale * data.capacity.get(k) + 1e-9);
+        }
+
+        // rounding the travel times up and the deadlines down keeps every solution feasible
+        long max_travel_time = 0;
+        travel_time = new long[N][N];
+        for (int i=0; i<N; i++) {
+            for (int j=0; j<N; j++) {
+                double time = data.travelTime(i, j);
+                travel_time[i][j] = i == j ? 0 : (time < 0 ? -1 : (long) Math.ceil(time - 1e-9));
+                max_travel_time = Math.max(travel_time[i][j], max_travel_time);
+            }
+        }
+
+        base_time = data.startWorkingTime.get(0);
+        for (double t: data.startWorkingTime) {
+            base_time = Math.min(t, base_time);
+        }
+        horizon = 0;
+        start_working_time = new long[K];
+        for (int k=0; k<K; k++) {
+            start_working_time[k] = (long) Math.ceil((data.startWorkingTime.get(k) - base_time) / 1e3 - 1e-9);
+            horizon = Math.max(start_working_time[k], horizon);
+        }
+        for (MappedRequest req: requests) {
+            horizon = Math.max(seconds(req.deliveryTime), horizon);
+        }
+        horizon += (N + 1) * max_travel_time;
+
+        build_arc_index();
+    }
+
+    private long seconds(double time) {
+        return (long) Math.floor((time - base_time) / 1e3 + 1e-9);
+    }
+
+    /**
+     * Collects the arcs that truck k can use, as in the MILP with time constraints: the depot
+     * only leads to the truck location, every hub can lead back to the depot, and a hub-to-hub
+     * arc exists if there is a direct path between the two hubs and none of them is forbidden.
+     */
+    private void build_arc_index() {
+        arcs = new ArcIndex(K, N + 1);
+
+        for (int k=0; k<K; k++) {
+            arcs.add(k, N, data.truck_location.get(k));
+
+            for (int i=0; i<N; i++) {
+                if (forbidden[k][i]) {
+                    continue;
+                }
+
+                for (int j=0; j<N; j++) {
+                    if (i != j && !forbidden[k][j] && travel_time[i][j] >= 0) {
+                        arcs.add(k, i, j);
+                    }
+                }
+
+                arcs.add(k, i, N);
+            }
+        }
+    }
+
+    public void setTimeLimit(long time_limit_ms) {
+        this.time_limit_ms = time_limit_ms;
+    }
+
+    public void setIncumbentHolder(IncumbentHolder holder) {
+        this.holder = holder;
+    }
+
+    public void setSeedRoutes(List<List<String>> seed_routes) {
+        this.seed_routes = seed_routes;
+    }
+
+    public void setMetrics(SolveMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    public void interrupt() {
+        interrupted = true;
+        CpSolver current = running;
+        if (current != null) {
+            current.stopSearch();
+        }
+    }
+
+    public boolean isOptimal() {
+        return optimal;
+    }
+
+    public double bestBound() {
+        return best_bound;
+    }
+
+    public MappedSolution solve(boolean verbose) {
+
+        optimal = false;
+        best_bound = Double.NaN;
+        metrics.startSolver("CP-SAT");
+        long build_start = System.currentTimeMillis();
+        Loader.loadNativeLibraries();
+        model = new CpModel();
+
+        build_model();
+        create_obj();
+
+        if (Parameters.USE_WARM_START) {
+            RoutePlan plan = InsertionHeuristic.construct(new RouteProblem(data), seed_routes);
+            set_hint(plan);
+            System.out.println("Warm start: " + plan.moves() + " moves, " + plan.unservedQuantity() + " boxes unserved.");
+        }
+        metrics.addPhase("build", System.currentTimeMillis() - build_start);
+        metrics.setModelSize(model.model());
+
+        CpSolver solver = new CpSolver();
+        solver.getParameters().setMaxTimeInSeconds(time_limit_ms / 1e3);
+        solver.getParameters().setNumSearchWorkers(Parameters.CP_SAT_WORKERS);
+        solver.getParameters().setLogSearchProgress(verbose);
+        if (!verbose) {
+            System.out.println("CP-SAT solver is running...");
+        }
+
+        // every improving solution is published while the search goes on
+        CpSolverSolutionCallback callback = new CpSolverSolutionCallback() {
+            @Override
+            public void onSolutionCallback() {
+                if (holder != null) {
+                    holder.offer(extract(this::value, false), "CP-SAT");
+                }
+            }
+        };
+
+        running = solver;
+        if (interrupted) {
+            running = null;
+            return null;
+        }
+        long solve_start = System.currentTimeMillis();
+        CpSolverStatus status = solver.solve(model, callback);
+        running = null;
+        best_bound = solver.bestObjectiveBound();
+        metrics.addPhase("solve", System.currentTimeMillis() - solve_start);
+        metrics.status = status.toString();
+        metrics.iterations = solver.response().getNumLpIterations();
+        metrics.nodes = solver.numBranches();
+        metrics.best_bound = best_bound;
+
+        if (status == CpSolverStatus.OPTIMAL || status == CpSolverStatus.FEASIBLE) {
+
+            if (status == CpSolverStatus.OPTIMAL) {
+                optimal = true;
+                System.out.println("Optimal solution found!");
+            } else {
+                System.out.println("A good solution found!");
+            }
+
+            long extract_start = System.currentTimeMillis();
+            MappedSolution solution = extract(solver::value, true);
+            metrics.addPhase("extract", System.currentTimeMillis() - extract_start);
+            metrics.objective = solution.objective();
+            return solution;
+        } else {
+            System.out.println("No feasible solution found");
+        }
+
+        return null;
+    }
+
+    private void build_model() {
+        int R = requests.size();
+
+        // create decision variables, one for each arc that truck k can use
+        x = new BoolVar[K][];
+        for (int k=0; k<K; k++) {
+            x[k] = new BoolVar[arcs.numArcs(k)];
+            for (int a=0; a<arcs.numArcs(k); a++) {
+                x[k][a] = model.newBoolVar("x[" + k + "," + arcs.tail(k, a) + "," + arcs.head(k, a) + "]");
+            }
+        }
+
+        p = new IntVar[K][R];
+        y = new BoolVar[K][R];
+        for (int k=0; k<K; k++) {
+            for (int r=0; r<R; r++) {
+                MappedRequest req = requests.get(r);
+                boolean allowed = !forbidden[k][req.from_hub] && !forbidden[k][req.to_hub];
+                p[k][r] = model.newIntVar(0, allowed ? Math.min(quantity[r], capacity[k]) : 0, "p[" + k + "," + r + "]");
+                y[k][r] = model.newBoolVar("y[" + k + "," + r + "]");
+                if (!allowed) {
+                    model.addEquality(y[k][r], 0);
+                }
+            }
+        }
+
+        /******************************************************************************
+         *                      START ROUTE CONSTRAINTS                               *
+         * ****************************************************************************/
+        // the route of truck k is a circuit through the depot, the arc from the depot to the
+        // truck location is always used and a hub that is not visited takes its self-loop
+        skip = new BoolVar[K][N];
+        for (int k=0; k<K; k++) {
+            int location = data.truck_location.get(k);
+            CircuitConstraint circuit = model.addCircuit();
+
+            for (int a=0; a<arcs.numArcs(k); a++) {
+                circuit.addArc(arcs.tail(k, a), arcs.head(k, a), x[k][a]);
+            }
+            model.addEquality(x[k][arcs.find(k, N, location)], 1);
+
+            for (int i=0; i<N; i++) {
+                if (i == location) {
+                    continue;
+                }
+
+                skip[k][i] = model.newBoolVar("skip[" + k + "," + i + "]");
+                circuit.addArc(i, i, skip[k][i]);
+                if (forbidden[k][i]) {
+                    model.addEquality(skip[k][i], 1);
+                }
+            }
+        }
+
+        // the order of the hubs follows the route, it only matters for pickups and deliveries
+        // at hubs connected by arcs of zero travel time
+        order = new IntVar[K][N];
+        arrival_time = new IntVar[K][N];
+        for (int k=0; k<K; k++) {
+            for (int i=0; i<N; i++) {
+                order[k][i] = model.newIntVar(0, N, "t[" + k + "," + i + "]");
+                arrival_time[k][i] = model.newIntVar(start_working_time[k], horizon, "arrival_time[" + k + "," + i + "]");
+            }
+        }
+
+        for (int k=0; k<K; k++) {
+            for (int a=0; a<arcs.numArcs(k); a++) {
+                int i = arcs.tail(k, a);
+                int j = arcs.head(k, a);
+                if (i == N || j == N) {
+                    continue;
+                }
+
+                model.addLessOrEqual(LinearExpr.affine(order[k][i], 1, 1), order[k][j]).onlyEnforceIf(x[k][a]);
+                model.addLessOrEqual(LinearExpr.affine(arrival_time[k][i], 1, travel_time[i][j]), arrival_time[k][j]).onlyEnforceIf(x[k][a]);
+            }
+        }
+
+        // if truck k serves request r, it must arrive in time at both ends of r
+        for (int r=0; r<R; r++) {
+            MappedRequest req = requests.get(r);
+            for (int k=0; k<K; k++) {
+                model.addLessOrEqual(arrival_time[k][req.from_hub], seconds(req.pickupTime)).onlyEnforceIf(y[k][r]);
+                model.addLessOrEqual(arrival_time[k][req.to_hub], seconds(req.deliveryTime)).onlyEnforceIf(y[k][r]);
+            }
+        }
+        /******************************************************************************
+         *                      END ROUTE CONSTRAINTS                                 *
+         *              START PICKUP AND DELIVERY CONSTRAINTS                         *
+         * ****************************************************************************/
+        // all the requests must be served
+        for (int r=0; r<R; r++) {
+            IntVar[] parts = new IntVar[K];
+            for (int k=0; k<K; k++) {
+                parts[k] = p[k][r];
+            }
+            model.addEquality(LinearExpr.sum(parts), quantity[r]);
+        }
+
+        // truck k must visit hub i before hub j to serve a request R(i -> j, q)
+        for (int k=0; k<K; k++) {
+            for (int r=0; r<R; r++) {
+                MappedRequest req = requests.get(r);
+
+                model.addLessOrEqual(LinearExpr.term(p[k][r], 1), LinearExpr.term(y[k][r], quantity[r]));
+                model.addLessOrEqual(LinearExpr.affine(order[k][req.from_hub], 1, 1), order[k][req.to_hub]).onlyEnforceIf(y[k][r]);
+                if (skip[k][req.from_hub] != null) {
+                    model.addImplication(y[k][r], skip[k][req.from_hub].not());
+                }
+                if (skip[k][req.to_hub] != null) {
+                    model.addImplication(y[k][r], skip[k][req.to_hub].not());
+                }
+            }
+        }
+
+        // if truck k moves from hub i to hub j, then
+        // loading when leaving j = loading when leaving i + net picking up at j
+        load = new IntVar[K][N];
+        for (int k=0; k<K; k++) {
+            for (int i=0; i<N; i++) {
+                load[k][i] = model.newIntVar(0, capacity[k], "z[" + k + "," + i + "]");
+            }
+
+            for (int a=0; a<arcs.numArcs(k); a++) {
+                int i = arcs.tail(k, a);
+                int j = arcs.head(k, a);
+                if (j == N) {
+                    continue;
+                }
+
+                LinearExprBuilder expr = LinearExpr.newBuilder();
+                if (i != N) {
+                    expr.add(load[k][i]);
+                }
+                for (int r: pickups_at.get(j)) {
+                    expr.add(p[k][r]);
+                }
+                for (int r: drops_at.get(j)) {
+                    expr.addTerm(p[k][r], -1);
+                }
+                model.addEquality(load[k][j], expr).onlyEnforceIf(x[k][a]);
+            }
+        }
+        /******************************************************************************
+         *                      END PICKUP AND DELIVERY CONSTRAINTS                   *
+         * ****************************************************************************/
+
+        System.out.println("CP-SAT model built successfully.");
+    }
+
+    /**
+     * Minimizes the number of inter-hub movements, moving from a hub to its own logical
+     * delivery copy is free.
+     */
+    private void create_obj() {
+        LinearExprBuilder obj = LinearExpr.newBuilder();
+        for (int k=0; k<K; k++) {
+            for (int a=0; a<arcs.numArcs(k); a++) {
+                int i = arcs.tail(k, a);
+                int j = arcs.head(k, a);
+                if (i == N || j == N) {
+                    continue;
+                }
+
+                Integer logical = data._mapPickup2Delivery.get(i);
+                if (logical == null || logical != j) {
+                    obj.add(x[k][a]);
+                }
+            }
+        }
+        model.minimize(obj);
+    }
+
+    /**
+     * Passes a plan of the heuristic solvers to CP-SAT as a solution hint.
+     */
+    private void set_hint(RoutePlan plan) {
+        for (int k=0; k<K; k++) {
+            int[] route = plan.route[k];
+            int len = plan.length[k];
+
+            boolean[] visited = new boolean[N];
+            boolean[] used = new boolean[arcs.numArcs(k)];
+            int pre = N;
+            for (int pos=0; pos<=len; pos++) {
+                int next = pos < len ? route[pos] : N;
+                int a = arcs.find(k, pre, next);
+                if (a >= 0) {
+                    used[a] = true;
+                }
+                if (next != N) {
+                    visited[next] = true;
+                }
+                pre = next;
+            }
+
+            for (int a=0; a<arcs.numArcs(k); a++) {
+                model.addHint(x[k][a], used[a] ? 1 : 0);
+            }
+            for (int i=0; i<N; i++) {
+                if (skip[k][i] != null) {
+                    model.addHint(skip[k][i], visited[i] ? 0 : 1);
+                }
+            }
+
+            for (int r=0; r<requests.size(); r++) {
+                double served = plan.served[k][r];
+                model.addHint(p[k][r], Math.round(scale * served));
+                model.addHint(y[k][r], served > RoutePlan.EPS ? 1 : 0);
+            }
+        }
+    }
+
+    /**
+     * Builds the solution from the values of the variables, as the MILP with time constraints
+     * does: consecutive nodes of the same hub (a hub and its logical copy) are merged.
+     */
+    private MappedSolution extract(ToLongFunction<IntVar> value, boolean print) {
+        ArrayList<ArrayList<Integer>> routes = new ArrayList<>();
+        ArrayList<ArrayList<ArrayList<MappedRequest>>> route_pickup = new ArrayList<>();
+        ArrayList<ArrayList<ArrayList<MappedRequest>>> route_delivery = new ArrayList<>();
+        for (int k=0; k<K; k++) {
+            // extract the route of truck k
+            ArrayList<Integer> route_k = new ArrayList<>();
+            int pre = N;
+            do {
+                int next = N;
+                for (int a: arcs.outArcs(k, pre)) {
+                    if (value.applyAsLong(x[k][a]) == 1) {
+                        next = arcs.head(k, a);
+                        break;
+                    }
+                }
+                pre = next;
+                if (pre != N) {
+                    route_k.add(pre);
+                }
+            } while (pre != N);
+
+            ArrayList<ArrayList<MappedRequest>> pickup = new ArrayList<>();
+            ArrayList<ArrayList<MappedRequest>> delivery = new ArrayList<>();
+
+            if (route_k.size() > 1) {
+                if (print) {
+                    System.out.print("Truck " + (k + 1) + ": ");
+                    for (int hub: route_k) {
+                        double percent = ((int) (10000.0 * value.applyAsLong(load[k][hub]) / capacity[k])) / 100.0;
+                        System.out.print(" -> HUB " + hub + ", load=" + percent + "%, time=");
+                        System.out.print(new Date(Math.round(1e3 * value.applyAsLong(arrival_time[k][hub]) + base_time)) + " ");
+                    }
+                    System.out.println();
+                }
+
+                ArrayList<Integer> _route_k = new ArrayList<>();
+                String pre_hub = "";
+                for (int i: route_k) {
+                    ArrayList<MappedRequest> pickup_operations = new ArrayList<>();
+                    ArrayList<MappedRequest> drop_operations = new ArrayList<>();
+                    String hub_ID = data._hubIndex2hubID.get(i);
+
+                    if (print && !hub_ID.equals(pre_hub)) {
+                        System.out.println("\tOperations at HUB " + hub_ID + ":");
+                    }
+
+                    for (int r: pickups_at.get(i)) {
+                        int j = requests.get(r).to_hub;
+                        long amount = value.applyAsLong(p[k][r]);
+                        if (amount > 0) {
+                            if (print) {
+                                System.out.println("\t\tPick " + amount / (double) scale + " boxes to delivery to HUB " + data._hubIndex2hubID.get(j) + "");
+                            }
+                            pickup_operations.add(new MappedRequest(requests.get(r).id, i, j, amount / (double) scale));
+                        }
+                    }
+
+                    for (int r: drops_at.get(i)) {
+                        int j = requests.get(r).from_hub;
+                        long amount = value.applyAsLong(p[k][r]);
+                        if (amount > 0) {
+                            if (print) {
+                                System.out.println("\t\tDrop " + amount / (double) scale + " boxes picked from HUB " + data._hubIndex2hubID.get(j) + "");
+                            }
+                            drop_operations.add(new MappedRequest(requests.get(r).id, j, i, amount / (double) scale));
+                        }
+                    }
+
+                    if (!hub_ID.equals(pre_hub)) {
+                        _route_k.add(i);
+
+                        pickup.add(pickup_operations);
+                        delivery.add(drop_operations);
+                    } else {
+                        pickup.get(pickup.size() - 1).addAll(pickup_operations);
+                        delivery.get(delivery.size() - 1).addAll(drop_operations);
+                    }
+
+                    pre_hub = hub_ID;
+                }
+                route_k = _route_k;
+
+            } else {
+                if (print) {
+                    System.out.println("Truck " + (k + 1) + ": NOT USED.");
+                }
+                route_k.clear();
+            }
+
+            routes.add(route_k);
+            route_pickup.add(pickup);
+            route_delivery.add(delivery);
+        }
+
+        MappedSolution output = new MappedSolution();
+        output.routes = routes;
+        output.pickup = route_pickup;
+        output.delivery = route_delivery;
+
+        return output;
+    }
+}
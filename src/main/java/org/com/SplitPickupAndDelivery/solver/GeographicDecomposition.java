@@ -0,0 +1,387 @@
+package org.com.SplitPickupAndDelivery.solver;
+
+import org.com.SplitPickupAndDelivery.models.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * The GeographicDecomposition class solves large instances region by region. Hubs are grouped
+ * by k-means on their coordinates, every truck belongs to the region of its location and every
+ * request whose both ends are in one region belongs to it. The regions are solved in parallel
+ * by the ALNS, each on its own MappedData, their routes are put together in one plan of the whole instance, and the
+ * requests between regions, or left unserved, are then inserted into this plan within what is left of the time
+ * limit. Main.solve() uses it instead of the MILP when Parameters.DECOMPOSITION_REGIONS is above 1.
+ */
+public class GeographicDecomposition implements PickupAndDeliverySolver {
+
+    private static final double REGION_SHARE = 0.8;     // share of the time limit given to the regions, the rest is for the final repair
+    private static final int MAX_ITERATIONS = 100;      // of the k-means
+
+    private MappedData full;
+    private InputData data;
+    private int num_regions;
+    private long time_limit_ms;
+    private long seed;
+    private SolveMetrics metrics = new SolveMetrics();
+
+    public GeographicDecomposition(MappedData full, int num_regions) {
+        this.full = full;
+        data = full.input;
+        this.num_regions = Math.max(1, num_regions);
+        time_limit_ms = 1000 * Parameters.TIME_LIMIT_S;
+        seed = 0;
+    }
+
+    @Override
+    public void setTimeLimit(long time_limit_ms) {
+        this.time_limit_ms = time_limit_ms;
+    }
+
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    @Override
+    public void setMetrics(SolveMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Returns a solution of the whole instance, where the requests that could not be inserted in time are
+     * unserved.
+     */
+    @Override
+    public MappedSolution solve(boolean verbose) {
+        long start = System.currentTimeMillis();
+        long region_deadline = start + (long) (REGION_SHARE * time_limit_ms);
+        long deadline = start + time_limit_ms;
+        metrics.startSolver("Decomposition");
+
+        int[] region = cluster();
+        int num_used = 0;
+        for (int c: region) {
+            num_used = Math.max(c + 1, num_used);
+        }
+
+        // build the sub-instance of every region that has both trucks and requests
+        ArrayList<InputData> sub_instances = new ArrayList<>();
+        HashMap<String, Integer> region_of = new HashMap<>();
+        for (int i=0; i<data.hubs.size(); i++) {
+            region_of.put(data.hubs.get(i).getHubID(), region[i]);
+        }
+        for (int c=0; c<num_used; c++) {
+            InputData sub = new InputData();
+            sub.hubs = new ArrayList<>();
+            sub.trucks = new ArrayList<>();
+            sub.requests = new ArrayList<>();
+            sub_instances.add(sub);
+        }
+        // local[i] is the index of hub i in the hubs of its region
+        int[] local = new int[data.hubs.size()];
+        for (int i=0; i<data.hubs.size(); i++) {
+            ArrayList<Hub> hubs = sub_instances.get(region[i]).hubs;
+            local[i] = hubs.size();
+            hubs.add(data.hubs.get(i));
+        }
+        for (InputData sub: sub_instances) {
+            sub.travel_time = new TravelTimeMatrix(sub.hubs.size(), Parameters.OFF_HEAP_TRAVEL_TIME);
+        }
+        for (int i=0; i<data.hubs.size(); i++) {
+            for (int j=0; j<data.hubs.size(); j++) {
+                if (region[i] == region[j]) {
+                    sub_instances.get(region[i]).travel_time.set(local[i], local[j], data.travel_time.get(i, j));
+                }
+            }
+        }
+        for (Truck truck: data.trucks) {
+            sub_instances.get(region_of.get(truck.getLocation())).trucks.add(truck);
+        }
+        int num_crossing = 0;
+        for (Request req: data.requests) {
+            int c = region_of.get(req.getPickupPoint());
+            if (c == region_of.get(req.getDeliveryPoint())) {
+                sub_instances.get(c).requests.add(req);
+            } else {
+                num_crossing++;
+            }
+        }
+
+        System.out.println("Decomposition into " + num_used + " regions, " + num_crossing + " requests between regions.");
+        if (verbose) {
+            for (int c=0; c<num_used; c++) {
+                InputData sub = sub_instances.get(c);
+                System.out.println("\tRegion " + c + ": " + sub.hubs.size() + " hubs, " + sub.trucks.size() + " trucks, " + sub.requests.size() + " requests.");
+            }
+        }
+
+        // solve the regions in parallel
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, Math.min(Parameters.DECOMPOSITION_THREADS, num_used)));
+        ArrayList<Future<RoutePlan>> futures = new ArrayList<>();
+        for (int c=0; c<num_used; c++) {
+            InputData sub = sub_instances.get(c);
+            if (sub.trucks.isEmpty() || sub.requests.isEmpty()) {
+                futures.add(null);
+                continue;
+            }
+
+            long region_seed = seed + c;
+            futures.add(pool.submit(() -> {
+                ALNSPickupAndDelivery solver = new ALNSPickupAndDelivery(MappedData.parseInput(sub), region_seed);
+                solver.setTimeLimit(Math.max(0, region_deadline - System.currentTimeMillis()));
+                return solver.search(false);
+            }));
+        }
+        pool.shutdown();
+
+        ArrayList<RoutePlan> region_plans = new ArrayList<>();
+        try {
+            for (Future<RoutePlan> future: futures) {
+                region_plans.add(future == null ? null : future.get());
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+            throw new RuntimeException(e);
+        }
+
+        // put the regions together and repair
+        RoutePlan plan = new RoutePlan(new RouteProblem(full));
+        for (int c=0; c<num_used; c++) {
+            if (region_plans.get(c) != null) {
+                merge(full, plan, region_plans.get(c), sub_instances.get(c));
+            }
+        }
+
+        double before = plan.unservedQuantity();
+        repair(plan, deadline);
+        System.out.println("Decomposition finished after " + (System.currentTimeMillis() - start) + " ms: " + plan.moves() + " moves, "
+                + plan.unservedQuantity() + " boxes unserved (" + before + " before the repair).");
+        if (verbose) {
+            plan.display();
+        }
+
+        MappedSolution solution = plan.toMappedSolution();
+        metrics.addPhase("solve", System.currentTimeMillis() - start);
+        metrics.status = "FEASIBLE";
+        metrics.objective = solution.objective();
+        return solution;
+    }
+
+    /**
+     * Groups the hubs into regions by k-means on their coordinates and returns the region of
+     * every hub. A hub without coordinates joins the region of the closest hub that has some,
+     * and all the hubs are in region 0 if there are not enough coordinates.
+     */
+    private int[] cluster() {
+        int n = data.hubs.size();
+        double[] lat = new double[n];
+        double[] lon = new double[n];
+        ArrayList<Integer> located = new ArrayList<>();
+        for (int i=0; i<n; i++) {
+            lat[i] = coordinate(data.hubs.get(i).getHub_lat());
+            lon[i] = coordinate(data.hubs.get(i).getHub_long());
+            if (!Double.isNaN(lat[i]) && !Double.isNaN(lon[i])) {
+                located.add(i);
+            }
+        }
+
+        int[] region = new int[n];
+        int k = Math.min(num_regions, located.size());
+        if (k <= 1) {
+            return region;
+        }
+
+        // planar coordinates, a degree of longitude is shorter away from the equator
+        double mean_lat = 0;
+        for (int i: located) {
+            mean_lat += lat[i] / located.size();
+        }
+        double[][] point = new double[n][];
+        for (int i: located) {
+            point[i] = new double[]{lon[i] * Math.cos(Math.toRadians(mean_lat)), lat[i]};
+        }
+
+        // k-means++ seeding
+        Random random = new Random(seed);
+        double[][] center = new double[k][];
+        center[0] = point[located.get(random.nextInt(located.size()))].clone();
+        double[] dist = new double[n];
+        for (int c=1; c<k; c++) {
+            double total = 0;
+            for (int i: located) {
+                dist[i] = Double.MAX_VALUE;
+                for (int d=0; d<c; d++) {
+                    dist[i] = Math.min(squared_distance(point[i], center[d]), dist[i]);
+                }
+                total += dist[i];
+            }
+
+            double v = random.nextDouble() * total;
+            int chosen = located.get(located.size() - 1);
+            for (int i: located) {
+                v -= dist[i];
+                if (v <= 0) {
+                    chosen = i;
+                    break;
+                }
+            }
+            center[c] = point[chosen].clone();
+        }
+
+        // Lloyd iterations
+        Arrays.fill(region, -1);
+        for (int it=0; it<MAX_ITERATIONS; it++) {
+            boolean changed = false;
+            for (int i: located) {
+                int best = 0;
+                for (int c=1; c<k; c++) {
+                    if (squared_distance(point[i], center[c]) < squared_distance(point[i], center[best])) {
+                        best = c;
+                    }
+                }
+                if (region[i] != best) {
+                    region[i] = best;
+                    changed = true;
+                }
+            }
+            if (!changed) {
+                break;
+            }
+
+            double[][] sum = new double[k][2];
+            int[] size = new int[k];
+            for (int i: located) {
+                sum[region[i]][0] += point[i][0];
+                sum[region[i]][1] += point[i][1];
+                size[region[i]]++;
+            }
+            for (int c=0; c<k; c++) {
+                if (size[c] > 0) {
+                    center[c] = new double[]{sum[c][0] / size[c], sum[c][1] / size[c]};
+                }
+            }
+        }
+
+        // hubs without coordinates join the region of the closest located hub
+        for (int i=0; i<n; i++) {
+            if (region[i] >= 0) {
+                continue;
+            }
+
+            region[i] = 0;
+            long closest = Long.MAX_VALUE;
+            for (int j: located) {
+                for (double time: new double[]{data.travel_time.get(i, j), data.travel_time.get(j, i)}) {
+                    if (time >= 0 && time < closest) {
+                        closest = (long) time;
+                        region[i] = region[j];
+                    }
+                }
+            }
+        }
+
+        // number the regions that have hubs 0, 1, ...
+        int[] renumber = new int[k];
+        Arrays.fill(renumber, -1);
+        int used = 0;
+        for (int i=0; i<n; i++) {
+            if (renumber[region[i]] < 0) {
+                renumber[region[i]] = used++;
+            }
+            region[i] = renumber[region[i]];
+        }
+
+        return region;
+    }
+
+    private static double coordinate(String value) {
+        if (value == null || value.trim().isEmpty()) {
+            return Double.NaN;
+        }
+        try {
+            return Double.parseDouble(value.trim());
+        } catch (NumberFormatException e) {
+            return Double.NaN;
+        }
+    }
+
+    private static double squared_distance(double[] a, double[] b) {
+        return (a[0] - b[0]) * (a[0] - b[0]) + (a[1] - b[1]) * (a[1] - b[1]);
+    }
+
+    /**
+     * Copies the routes of a region into the plan of the whole instance. Hubs, trucks and requests
+     * are matched by ID, as several requests may share their pickup and delivery hubs. A hub that is a pickup
+     * point in the whole instance but not in its region receives its deliveries at its logical
+     * copy.
+     */
+    private void merge(MappedData full, RoutePlan plan, RoutePlan region_plan, InputData sub) {
+        RouteProblem problem = plan.problem;
+        RouteProblem region_problem = region_plan.problem;
+
+        for (int k=0; k<region_problem.num_trucks; k++) {
+            int truck = full._truckID2TruckIndex.get(sub.trucks.get(k).getTruckID());
+            int len = region_plan.length[k];
+
+            boolean[] drops = new boolean[region_problem.num_hubs];
+            for (int r=0; r<region_problem.num_requests; r++) {
+                if (region_plan.served[k][r] > RoutePlan.EPS) {
+                    drops[region_problem.to[r]] = true;
+                }
+            }
+
+            int[] hubs = new int[len];
+            for (int pos=0; pos<len; pos++) {
+                int v = region_plan.route[k][pos];
+                int hub = full._hubID2HubIndex.get(region_problem.hub_id[v]);
+                boolean logical = v >= sub.hubs.size() || (drops[v] && pos > 0);
+                hubs[pos] = logical && problem.logical_of[hub] >= 0 ? problem.logical_of[hub] : hub;
+            }
+            plan.setRoute(truck, hubs);
+
+            for (int r=0; r<region_problem.num_requests; r++) {
+                double amount = region_plan.served[k][r];
+                if (amount <= RoutePlan.EPS) {
+                    continue;
+                }
+
+                Integer full_r = full._requestID2RequestIndex.get(region_problem.request_id[r]);
+                if (full_r != null && plan.indexOf(truck, problem.from[full_r]) >= 0 && plan.indexOf(truck, problem.to[full_r]) >= 0) {
+                    plan.serve(truck, full_r, amount);
+                }
+            }
+        }
+    }
+
+    /**
+     * Inserts the requests between regions, and the parts that the regions left unserved, by
+     * increasing pickup deadline. The requests not reached by the deadline, in ms since the epoch,
+     * stay unserved.
+     */
+    private void repair(RoutePlan plan, long deadline) {
+        RouteProblem problem = plan.problem;
+
+        ArrayList<Integer> order = new ArrayList<>();
+        for (int r=0; r<problem.num_requests; r++) {
+            if (plan.unserved[r] > RoutePlan.EPS) {
+                order.add(r);
+            }
+        }
+        order.sort(Comparator.<Integer>comparingDouble(r -> problem.pickup_deadline[r])
+                .thenComparingDouble(r -> -problem.quantity[r]));
+
+        for (int r: order) {
+            if (System.currentTimeMillis() >= deadline) {
+                System.out.println("Time limit reached, " + plan.unservedQuantity() + " boxes left unserved by the repair.");
+                break;
+            }
+            plan.insert(r);
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package org.com.SplitPickupAndDelivery.solver;
+
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * The IncumbentHolder class keeps the best solution found by solvers running concurrently on
+ * the same instance. Offers are compared by MappedSolution.objective() and the holder is
+ * updated with compare-and-set, so solvers never block each other. Every improvement is also
+ * recorded with the time it was found.
+ */
+public class IncumbentHolder {
+
+    public static class Incumbent {
+        public final MappedSolution solution;
+        public final double objective;
+        public final String source;         // name of the solver that found the solution
+        public final long time_ms;          // time since the creation of the holder
+
+        Incumbent(MappedSolution solution, double objective, String source, long time_ms) {
+            this.solution = solution;
+            this.objective = objective;
+            this.source = source;
+            this.time_ms = time_ms;
+        }
+    }
+
+    private final long start = System.currentTimeMillis();
+    private final AtomicReference<Incumbent> best = new AtomicReference<>();
+    private final ConcurrentLinkedQueue<Incumbent> history = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean optimal = new AtomicBoolean(false);
+
+    /**
+     * Replaces the incumbent by the given solution if it is strictly better. Returns true if
+     * the solution became the new incumbent.
+     */
+    public boolean offer(MappedSolution solution, String source) {
+        if (solution == null) {
+            return false;
+        }
+
+        Incumbent candidate = new Incumbent(solution, solution.objective(), source, System.currentTimeMillis() - start);
+        while (true) {
+            Incumbent current = best.get();
+            if (current != null && current.objective <= candidate.objective) {
+                return false;
+            }
+            if (best.compareAndSet(current, candidate)) {
+                history.add(candidate);
+                return true;
+            }
+        }
+    }
+
+    public Incumbent get() {
+        return best.get();
+    }
+
+    public void markOptimal() {
+        optimal.set(true);
+    }
+
+    public boolean isOptimal() {
+        return optimal.get();
+    }
+
+    /**
+     * Returns the successive incumbents in the order they were found.
+     */
+    public ArrayList<Incumbent> history() {
+        return new ArrayList<>(history);
+    }
+}
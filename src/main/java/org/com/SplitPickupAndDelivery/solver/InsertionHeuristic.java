@@ -0,0 +1,138 @@
+package org.com.SplitPickupAndDelivery.solver;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * The InsertionHeuristic class builds a solution of the split pickup and delivery problem with
+ * time constraints by cheapest insertion. Requests are taken by increasing pickup deadline and
+ * each of them is inserted, split over several trucks if needed, where it adds the fewest
+ * inter-hub movements while respecting capacities, deadlines and forbidden points. It runs in
+ * milliseconds and also provides the warm start of the MILP with time constraints.
+ */
+public class InsertionHeuristic implements PickupAndDeliverySolver {
+
+    private RouteProblem problem;
+    private List<List<String>> seed_routes;
+
+    public InsertionHeuristic(MappedData data) {
+        problem = new RouteProblem(data);
+    }
+
+    /**
+     * The construction takes milliseconds, so the time limit is ignored.
+     */
+    public void setTimeLimit(long time_limit_ms) {
+    }
+
+    public void setSeedRoutes(List<List<String>> seed_routes) {
+        this.seed_routes = seed_routes;
+    }
+
+    public MappedSolution solve(boolean verbose) {
+        long start = System.currentTimeMillis();
+        RoutePlan plan = construct(problem, seed_routes);
+
+        System.out.println("Insertion heuristic: " + plan.moves() + " moves, "
+                + plan.unservedQuantity() + " boxes unserved, " + (System.currentTimeMillis() - start) + " ms.");
+        if (verbose) {
+            plan.display();
+        }
+
+        return plan.toMappedSolution();
+    }
+
+    static RoutePlan construct(RouteProblem problem) {
+        return insert_all(new RoutePlan(problem));
+    }
+
+    /**
+     * Builds the plan twice, once from empty routes and once along the seed routes, given as hub IDs per
+     * truck, and returns the better of the two. Along the seed routes the requests are inserted first
+     * where the hubs are already visited, then the hubs where nothing is picked up or delivered are
+     * removed. A hub ID stands for the hub and its logical delivery copy. A seed route is ignored if it
+     * does not start at the truck location, visits a forbidden or unknown hub or uses a missing arc.
+     */
+    static RoutePlan construct(RouteProblem problem, List<List<String>> seed_routes) {
+        RoutePlan plan = construct(problem);
+        if (seed_routes == null || seed_routes.size() != problem.num_trucks) {
+            return plan;
+        }
+
+        HashMap<String, Integer> hub_index = new HashMap<>();
+        for (int i=problem.num_hubs-1; i>=0; i--) {
+            // the physical hubs come before their logical copies, which have the same ID
+            hub_index.put(problem.hub_id[i], i);
+        }
+
+        RoutePlan seeded = new RoutePlan(problem);
+        int num_seeded = 0;
+        for (int k=0; k<problem.num_trucks; k++) {
+            int[] hubs = seed_route(problem, k, seed_routes.get(k), hub_index);
+            if (hubs != null) {
+                seeded.setRoute(k, hubs);
+                num_seeded++;
+            }
+        }
+        if (num_seeded == 0) {
+            return plan;
+        }
+        insert_all(seeded);
+        seeded.removeIdleHubs();
+
+        boolean better = seeded.unservedQuantity() < plan.unservedQuantity() - RoutePlan.EPS
+                || (seeded.unservedQuantity() <= plan.unservedQuantity() + RoutePlan.EPS && seeded.cost() < plan.cost());
+        System.out.println("Seeded insertion: " + seeded.moves() + " moves, " + seeded.unservedQuantity() + " boxes unserved, "
+                + (better ? "kept" : "plain insertion kept") + ".");
+        return better ? seeded : plan;
+    }
+
+    private static int[] seed_route(RouteProblem problem, int k, List<String> route, HashMap<String, Integer> hub_index) {
+        if (route == null || route.isEmpty()) {
+            return null;
+        }
+
+        int[] hubs = new int[2 * route.size()];
+        int len = 0;
+        boolean[] on_route = new boolean[problem.num_hubs];
+        for (String id: route) {
+            Integer i = hub_index.get(id);
+            if (i == null) {
+                return null;
+            }
+            for (int node: new int[] {i, problem.logical_of[i]}) {
+                if (node < 0 || on_route[node]) {
+                    continue;
+                }
+                if (problem.forbidden[k][node] || (len > 0 && problem.travel_time[hubs[len-1]][node] < 0)) {
+                    return null;
+                }
+                hubs[len++] = node;
+                on_route[node] = true;
+            }
+        }
+
+        if (hubs[0] != problem.location[k]) {
+            return null;
+        }
+        return Arrays.copyOf(hubs, len);
+    }
+
+    private static RoutePlan insert_all(RoutePlan plan) {
+        RouteProblem problem = plan.problem;
+        Integer[] order = new Integer[problem.num_requests];
+        for (int r=0; r<order.length; r++) {
+            order[r] = r;
+        }
+        Arrays.sort(order, Comparator.<Integer>comparingDouble(r -> problem.pickup_deadline[r])
+                .thenComparingDouble(r -> -problem.quantity[r]));
+
+        for (int r: order) {
+            plan.insert(r);
+        }
+
+        return plan;
+    }
+}
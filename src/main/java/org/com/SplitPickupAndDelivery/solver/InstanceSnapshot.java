@@ -0,0 +1,262 @@
+package org.com.SplitPickupAndDelivery.solver;
+
+import org.com.SplitPickupAndDelivery.models.*;
+import org.com.SplitPickupAndDelivery.utils.IOExcelHandling;
+import org.com.SplitPickupAndDelivery.utils.TextInstanceHandling;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Binary snapshot of a MappedData, so an instance is parsed from Excel once and then loaded in milliseconds.
+ * The file holds the hubs, trucks and requests with their parsed times, the logical copies of the
+ * delivery points and the N x N travel time matrix. It is read through a memory-mapped FileChannel and
+ * the matrix, which is most of the file, is not copied: the TravelTimeMatrix of the loaded instance
+ * reads straight from the mapped file. The hubs, trucks and requests are still decoded into one object per
+ * record, as MappedData and resolveOutput() work on them, so only the matrix is loaded without allocation.
+ *
+ * The InputData of a loaded instance has no travel_time map, the matrix of the MappedData replaces it.
+ *
+ * Layout, big-endian: MAGIC, VERSION, hubs, trucks, requests, logical copies, N, matrix. Strings are
+ * stored as their UTF-8 length (-1 for null) followed by the bytes.
+ */
+public class InstanceSnapshot {
+
+    private static final int MAGIC = 0x53504453;      // "SPDS"
+    private static final int VERSION = 2;              // 2: times parsed with seconds (ss), not milliseconds (SS)
+
+    public static final String EXTENSION = ".snapshot";
+
+    /**
+     * Loads the snapshot next to the workbook if it is newer than the workbook, otherwise reads the workbook
+     * and writes its snapshot for the next run. A .txt file is read as a TextInstanceHandling instance.
+     */
+    public static MappedData loadOrParse(String workbook) {
+        return loadOrParse(workbook, new SolveMetrics());
+    }
+
+    /**
+     * Same as loadOrParse(workbook), loading the snapshot or reading the workbook is recorded as the read
+     * phase of the metrics, building the MappedData as the map phase and writing the snapshot as its own phase.
+     */
+    public static MappedData loadOrParse(String workbook, SolveMetrics metrics) {
+        long start = System.currentTimeMillis();
+        File snapshot = new File(workbook + EXTENSION);
+        if (snapshot.isFile() && snapshot.lastModified() >= new File(workbook).lastModified()) {
+            try {
+                MappedData mapped_data = read(snapshot.getPath());
+                metrics.addPhase("read", System.currentTimeMillis() - start);
+                return mapped_data;
+            } catch (IOException e) {
+                // outdated or damaged snapshot, it is rebuilt below
+                System.out.println("Cannot load " + snapshot + ": " + e.getMessage());
+            }
+        }
+
+        InputData data = workbook.endsWith(".txt") ? TextInstanceHandling.readInputData(workbook) : IOExcelHandling.readInputData(workbook);
+        metrics.addPhase("read", System.currentTimeMillis() - start);
+        if (data == null) {
+            return null;
+        }
+        start = System.currentTimeMillis();
+        MappedData mapped_data = MappedData.parseInput(data);
+        metrics.addPhase("map", System.currentTimeMillis() - start);
+        start = System.currentTimeMillis();
+        try {
+            write(mapped_data, snapshot.getPath());
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        metrics.addPhase("snapshot", System.currentTimeMillis() - start);
+        return mapped_data;
+    }
+
+    public static void write(MappedData data, String path) throws IOException {
+        // written to a temp file first, so a concurrent reader never sees half a snapshot
+        File tmp = new File(path + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+
+            InputData input = data.input;
+            out.writeInt(input.hubs.size());
+            for (Hub hub: input.hubs) {
+                writeString(out, hub.getHubID());
+                writeString(out, hub.getHubName());
+                writeString(out, hub.getHub_lat());
+                writeString(out, hub.getHub_long());
+            }
+
+            out.writeInt(data.K);
+            for (int k=0; k<data.K; k++) {
+                Truck truck = input.trucks.get(k);
+                writeString(out, truck.getTruckID());
+                writeString(out, truck.getLocation());
+                writeString(out, truck.getStartWorkingTime());
+                out.writeLong(data.startWorkingTime.get(k));
+                out.writeDouble(truck.getCapacity());
+                if (truck.getForbiddenPoints() == null) {
+                    out.writeInt(-1);
+                } else {
+                    out.writeInt(truck.getForbiddenPoints().size());
+                    for (String point: truck.getForbiddenPoints()) {
+                        writeString(out, point);
+                    }
+                }
+            }
+
+            out.writeInt(data.requests.size());
+            for (int r=0; r<data.requests.size(); r++) {
+                Request req = input.requests.get(r);
+                MappedRequest mapped = data.requests.get(r);
+                writeString(out, req.getRequestID());
+                writeString(out, req.getPickupPoint());
+                writeString(out, req.getPickupDateTime());
+                writeString(out, req.getDeliveryPoint());
+                writeString(out, req.getDeliveryDateTime());
+                out.writeDouble(req.getDemand());
+                out.writeInt(mapped.from_hub);
+                out.writeLong(mapped.pickupTime);
+                out.writeInt(mapped.to_hub);
+                out.writeLong(mapped.deliveryTime);
+            }
+
+            out.writeInt(data._mapPickup2Delivery.size());
+            for (int hub: data._mapPickup2Delivery.keySet()) {
+                out.writeInt(hub);
+                out.writeInt(data._mapPickup2Delivery.get(hub));
+            }
+
+            out.writeInt(data.N);
+            for (int i=0; i<data.N; i++) {
+                for (int j=0; j<data.N; j++) {
+                    out.writeDouble(data.travelTime(i, j));
+                }
+            }
+        }
+
+        File target = new File(path);
+        if (!tmp.renameTo(target)) {
+            // renameTo does not replace an existing file on every platform
+            if (!target.delete() || !tmp.renameTo(target)) {
+                throw new IOException("Cannot move " + tmp + " to " + target);
+            }
+        }
+    }
+
+    public static MappedData read(String path) throws IOException {
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(new File(path).toPath(), StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+
+        try {
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                throw new IOException(path + " is not a snapshot of this version");
+            }
+
+            InputData input = new InputData();
+
+            int num_hubs = buffer.getInt();
+            input.hubs = new ArrayList<>(num_hubs);
+            for (int i=0; i<num_hubs; i++) {
+                Hub hub = new Hub();
+                hub.setHubID(readString(buffer));
+                hub.setHubName(readString(buffer));
+                hub.setHub_lat(readString(buffer));
+                hub.setHub_long(readString(buffer));
+                input.hubs.add(hub);
+            }
+
+            int K = buffer.getInt();
+            input.trucks = new ArrayList<>(K);
+            List<Long> start_times = new ArrayList<>(K);
+            for (int k=0; k<K; k++) {
+                Truck truck = new Truck();
+                truck.setTruckID(readString(buffer));
+                truck.setLocation(readString(buffer));
+                truck.setStartWorkingTime(readString(buffer));
+                start_times.add(buffer.getLong());
+                truck.setCapacity(buffer.getDouble());
+                int num_forbidden = buffer.getInt();
+                if (num_forbidden >= 0) {
+                    ArrayList<String> fp = new ArrayList<>(num_forbidden);
+                    for (int f=0; f<num_forbidden; f++) {
+                        fp.add(readString(buffer));
+                    }
+                    truck.setForbiddenPoints(fp);
+                }
+                input.trucks.add(truck);
+            }
+
+            int num_requests = buffer.getInt();
+            input.requests = new ArrayList<>(num_requests);
+            List<MappedRequest> requests = new ArrayList<>(num_requests);
+            for (int r=0; r<num_requests; r++) {
+                Request req = new Request();
+                req.setRequestID(readString(buffer));
+                req.setPickupPoint(readString(buffer));
+                req.setPickupDateTime(readString(buffer));
+                req.setDeliveryPoint(readString(buffer));
+                req.setDeliveryDateTime(readString(buffer));
+                req.setDemand(buffer.getDouble());
+                input.requests.add(req);
+
+                int from_hub = buffer.getInt();
+                long pickup_time = buffer.getLong();
+                int to_hub = buffer.getInt();
+                long delivery_time = buffer.getLong();
+                requests.add(new MappedRequest(req.getRequestID(), from_hub, pickup_time, to_hub, delivery_time, req.getDemand()));
+            }
+
+            int num_logical = buffer.getInt();
+            HashMap<Integer, Integer> mapPickup2Delivery = new HashMap<>();
+            for (int i=0; i<num_logical; i++) {
+                int hub = buffer.getInt();
+                mapPickup2Delivery.put(hub, buffer.getInt());
+            }
+
+            int N = buffer.getInt();
+            if (N != num_hubs + num_logical) {
+                throw new IOException(path + " is damaged, " + N + " nodes for " + num_hubs + " hubs and " + num_logical + " logical copies");
+            }
+            TravelTimeMatrix travel_time = new TravelTimeMatrix(N, buffer.asDoubleBuffer());
+
+            return new MappedData(input, mapPickup2Delivery, start_times, requests, travel_time);
+        } catch (RuntimeException e) {
+            // BufferUnderflowException and the like on a truncated file
+            throw new IOException(path + " is damaged", e);
+        }
+    }
+
+    static void writeString(DataOutputStream out, String s) throws IOException {
+        if (s == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    static String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
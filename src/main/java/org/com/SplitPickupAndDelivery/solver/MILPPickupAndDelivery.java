@@ -7,6 +7,7 @@ import com.google.ortools.linearsolver.MPSolver;
 import com.google.ortools.linearsolver.MPVariable;
 
 import java.util.ArrayList;
+import java.util.List;
 
 import static java.lang.Math.round;
 
@@ -16,66 +17,85 @@ import static java.lang.Math.round;
  * require the Google OR-tools library version 9.5.
  * @Date: 15/12/2022
  */
-public class MILPPickupAndDelivery {
+public class MILPPickupAndDelivery implements PickupAndDeliverySolver {
 
     private ArrayList<Integer> H;       // set of hubs
     private ArrayList<Integer> S1;      // set of departure nodes
     private ArrayList<Integer> S2;      // set of arrival nodes
     private int num_nodes;
     private ArrayList<Integer> K;       // set of all trucks
-    private double[][] request;         // request[i][j] is the amount of boxes needs to be delivered from i to j
+    private final MappedData data;
+    private List<MappedRequest> requests;          // requests[r] is the r-th request (commodity)
+    private ArrayList<ArrayList<Integer>> pickups_at;   // pickups_at[i] is the list of requests picked up at node i
+    private ArrayList<ArrayList<Integer>> drops_at;     // drops_at[i] is the list of requests delivered at node i
 
     private MPSolver solver;
+    private long time_limit_ms = 1000 * Parameters.TIME_LIMIT_S;
+    private SolveMetrics metrics = new SolveMetrics();
     private MPVariable[][][]  x;
     private MPVariable[][] t;
     private MPVariable[][] z;
-    private MPVariable[][][] p;
+    private MPVariable[][] p;                   // p[k][r] is the amount of request r served by truck k
+    private MPVariable[][] y;                   // y[k][r] = 1 if truck k serves (a part of) request r
+    private MPVariable[][] w;                   // w[k][i] is the net amount picked up by truck k at node i
 
-    public MILPPickupAndDelivery() {
+    public MILPPickupAndDelivery(MappedData data) {
+        this.data = data;
 
         H = new ArrayList<>();
-        for (int i=0; i<MappedData.N; i++) {
+        for (int i=0; i<data.N; i++) {
             H.add(i);
         }
 
         S1 = new ArrayList<>();
-        for (int i=MappedData.N; i<MappedData.N + MappedData.K; i++) {
+        for (int i=data.N; i<data.N + data.K; i++) {
             S1.add(i);
         }
 
         S2 = new ArrayList<>();
-        for (int i=MappedData.N + MappedData.K; i<MappedData.N + 2 * MappedData.K; i++) {
+        for (int i=data.N + data.K; i<data.N + 2 * data.K; i++) {
             S2.add(i);
         }
 
         K = new ArrayList<>();
-        for (int k=0; k<MappedData.K; k++) {
+        for (int k=0; k<data.K; k++) {
             K.add(k);
         }
 
         num_nodes = H.size() + S1.size() + S2.size();
 
-        request = new double[num_nodes][num_nodes];
-        for (MappedRequest r: MappedData.requests) {
-            request[r.from_hub][r.to_hub] = r.quantity;
-            // System.out.println(r.from_hub + " -> " + r.to_hub + ": " + r.quantity);
+        requests = data.requests;
+        pickups_at = new ArrayList<>();
+        drops_at = new ArrayList<>();
+        for (int i=0; i<num_nodes; i++) {
+            pickups_at.add(new ArrayList<>());
+            drops_at.add(new ArrayList<>());
+        }
+        for (int r=0; r<requests.size(); r++) {
+            pickups_at.get(requests.get(r).from_hub).add(r);
+            drops_at.get(requests.get(r).to_hub).add(r);
         }
     }
 
-    public MappedSolution solve(boolean verbose) {
+    public void setTimeLimit(long time_limit_ms) {
+        this.time_limit_ms = time_limit_ms;
+    }
 
-        Loader.loadNativeLibraries();
-        solver = MPSolver.createSolver(String.valueOf(MPSolver.OptimizationProblemType.SCIP_MIXED_INTEGER_PROGRAMMING));
+    public void setMetrics(SolveMetrics metrics) {
+        this.metrics = metrics;
+    }
 
-        if (solver == null) {
-            System.err.println("Could not create solver SCIP");
+    public MappedSolution solve(boolean verbose) {
+
+        metrics.startSolver("MILP untimed");
+        long build_start = System.currentTimeMillis();
+        if (!createModel()) {
             return null;
         }
+        metrics.addPhase("build", System.currentTimeMillis() - build_start);
+        metrics.setModelSize(solver);
 
-        build_model();
-        create_obj();
-
-        solver.setTimeLimit(1000 * Parameters.TIME_LIMIT_S);
+        solver.setTimeLimit(time_limit_ms);
         solver.setNumThreads(Parameters.NUMBER_OF_CPUs);
         if (verbose) {
             solver.enableOutput();
@@ -83,7 +103,13 @@ public class MILPPickupAndDelivery {
             System.out.println("MILP solver is running...");
         }
 
+        long solve_start = System.currentTimeMillis();
         final MPSolver.ResultStatus resultStatus = solver.solve();
+        metrics.addPhase("solve", System.currentTimeMillis() - solve_start);
+        metrics.status = resultStatus.toString();
+        metrics.iterations = solver.iterations();
+        metrics.nodes = solver.nodes();
+        metrics.best_bound = solver.objective().bestBound();
 
         if (resultStatus == MPSolver.ResultStatus.OPTIMAL || resultStatus == MPSolver.ResultStatus.FEASIBLE) {
 
@@ -93,84 +119,123 @@ public class MILPPickupAndDelivery {
                 System.out.println("A good solution found!");
             }
 
-            ArrayList<ArrayList<Integer>> routes = new ArrayList<>();
-            ArrayList<ArrayList<ArrayList<MappedRequest>>> route_pickup = new ArrayList<>();
-            ArrayList<ArrayList<ArrayList<MappedRequest>>> route_delivery = new ArrayList<>();
-            for (int k: K) {
-                // extract the route of truck k
-                ArrayList<Integer> route_k = new ArrayList<>();
-                route_k.add(H.size() + k);
-
-                int pre = route_k.get(0);
-                while (!S2.contains(pre)) {
-                    for (int i=0; i<num_nodes; i++) {
-                        if (x[k][pre][i].solutionValue() > 0) {
-                            pre = i;
-                            route_k.add(pre);
-                            break;
-                        }
+            long extract_start = System.currentTimeMillis();
+            MappedSolution solution = extractSolution();
+            metrics.addPhase("extract", System.currentTimeMillis() - extract_start);
+            metrics.objective = solution.objective();
+            return solution;
+        } else {
+            System.out.println("No feasible solution found");
+        }
+
+        return null;
+    }
+
+    /**
+     * Creates the SCIP solver and builds the model and the objective.
+     */
+    public boolean createModel() {
+        Loader.loadNativeLibraries();
+        solver = MPSolver.createSolver(String.valueOf(MPSolver.OptimizationProblemType.SCIP_MIXED_INTEGER_PROGRAMMING));
+
+        if (solver == null) {
+            System.err.println("Could not create solver SCIP");
+            return false;
+        }
+
+        build_model();
+        create_obj();
+        return true;
+    }
+
+    /**
+     * Reads the routes and the operations of the trucks from the last solution of the solver.
+     */
+    public MappedSolution extractSolution() {
+        int first_arrival = H.size() + K.size();    // the arrival nodes are numbered last
+        ArrayList<ArrayList<Integer>> routes = new ArrayList<>();
+        ArrayList<ArrayList<ArrayList<MappedRequest>>> route_pickup = new ArrayList<>();
+        ArrayList<ArrayList<ArrayList<MappedRequest>>> route_delivery = new ArrayList<>();
+        for (int k: K) {
+            // extract the route of truck k
+            ArrayList<Integer> route_k = new ArrayList<>();
+            route_k.add(H.size() + k);
+
+            // x is dense, the next node is searched among the hubs and the arrival node of truck k, which are the
+            // only successors allowed by the flow constraints
+            int arrival = first_arrival + k;
+            int pre = route_k.get(0);
+            while (pre < first_arrival) {
+                int next = arrival;
+                for (int i: H) {
+                    if (x[k][pre][i].solutionValue() > 0.5) {
+                        next = i;
+                        break;
                     }
                 }
+                pre = next;
+                route_k.add(pre);
+            }
 
-                route_k.remove(0);
-                route_k.remove(route_k.size()-1);
+            route_k.remove(0);
+            route_k.remove(route_k.size()-1);
 
-                ArrayList<ArrayList<MappedRequest>> pickup = new ArrayList<>();
-                ArrayList<ArrayList<MappedRequest>> delivery = new ArrayList<>();
+            ArrayList<ArrayList<MappedRequest>> pickup = new ArrayList<>();
+            ArrayList<ArrayList<MappedRequest>> delivery = new ArrayList<>();
+            double[] amount = new double[requests.size()];     // amount[r] is the value of p[k][r], read at the pickup hub
 
-                if (route_k.size() > 0) {
-                    double load = ((int) (10000 * z[k][H.size() + k].solutionValue() / MappedData.capacity.get(k))) / 100.0;
-                    System.out.print("Truck " + (k + 1) + ": DEPARTURE_HUB (" + load + "%)");
-                    for (int hub: route_k) {
-                        load = ((int) (10000 * z[k][hub].solutionValue() / MappedData.capacity.get(k))) / 100.0;
-                        System.out.print(" -> HUB " + hub + " (" + load + "%)");
-                    }
-                    System.out.println(" -> ARRIVAL HUB.");
-
-                    for (int i: route_k) {
-                        System.out.println("\tOperations at HUB " + i + ":");
-
-                        ArrayList<MappedRequest> pickup_operations = new ArrayList<>();
-                        ArrayList<MappedRequest> drop_operations = new ArrayList<>();
-                        for (int j: H) {
-                            if (p[k][i][j].solutionValue() > 1e-6) {
-                                System.out.println("\t\tPick " + round(p[k][i][j].solutionValue()) + " boxes to delivery to HUB " + j);
-                                pickup_operations.add(new MappedRequest(i, j, round(p[k][i][j].solutionValue())));
-                            }
+            if (route_k.size() > 0) {
+                double load = ((int) (10000 * z[k][H.size() + k].solutionValue() / data.capacity.get(k))) / 100.0;
+                System.out.print("Truck " + (k + 1) + ": DEPARTURE_HUB (" + load + "%)");
+                for (int hub: route_k) {
+                    load = ((int) (10000 * z[k][hub].solutionValue() / data.capacity.get(k))) / 100.0;
+                    System.out.print(" -> HUB " + hub + " (" + load + "%)");
+                }
+                System.out.println(" -> ARRIVAL HUB.");
+
+                for (int i: route_k) {
+                    System.out.println("\tOperations at HUB " + i + ":");
+
+                    ArrayList<MappedRequest> pickup_operations = new ArrayList<>();
+                    ArrayList<MappedRequest> drop_operations = new ArrayList<>();
+                    for (int r: pickups_at.get(i)) {
+                        int j = requests.get(r).to_hub;
+                        amount[r] = p[k][r].solutionValue();
+                        if (amount[r] > 1e-6) {
+                            System.out.println("\t\tPick " + round(amount[r]) + " boxes to delivery to HUB " + j);
+                            pickup_operations.add(new MappedRequest(requests.get(r).id, i, j, round(amount[r])));
                         }
+                    }
 
-                        for (int j: H) {
-                            if (p[k][j][i].solutionValue() > 0) {
-                                System.out.println("\t\tDrop " + round(p[k][j][i].solutionValue()) + " boxes picked from HUB " + j);
-                                drop_operations.add(new MappedRequest(j, i, round(p[k][j][i].solutionValue())));
-                            }
+                    // a request is picked up before it is dropped, so its amount is already read
+                    for (int r: drops_at.get(i)) {
+                        int j = requests.get(r).from_hub;
+                        if (amount[r] > 1e-6) {
+                            System.out.println("\t\tDrop " + round(amount[r]) + " boxes picked from HUB " + j);
+                            drop_operations.add(new MappedRequest(requests.get(r).id, j, i, round(amount[r])));
                         }
-                        System.out.println("\tLeave HUB " + i + " with " + round(z[k][i].solutionValue()) + " boxes.");
-                        System.out.println("\t--------------------------");
-
-                        pickup.add(pickup_operations);
-                        delivery.add(drop_operations);
                     }
-                } else {
-                    System.out.println("Truck " + (k + 1) + ": NOT USED.");
-                }
+                    System.out.println("\tLeave HUB " + i + " with " + round(z[k][i].solutionValue()) + " boxes.");
+                    System.out.println("\t--------------------------");
 
-                routes.add(route_k);
-                route_pickup.add(pickup);
-                route_delivery.add(delivery);
+                    pickup.add(pickup_operations);
+                    delivery.add(drop_operations);
+                }
+            } else {
+                System.out.println("Truck " + (k + 1) + ": NOT USED.");
             }
 
-            MappedSolution output = new MappedSolution();
-            output.routes = routes;
-            output.pickup = route_pickup;
-            output.delivery = route_delivery;
-
-            return output;
-        } else {
-            System.out.println("No feasible solution found");
+            routes.add(route_k);
+            route_pickup.add(pickup);
+            route_delivery.add(delivery);
         }
 
-        return null;
+        MappedSolution output = new MappedSolution();
+        output.routes = routes;
+        output.pickup = route_pickup;
+        output.delivery = route_delivery;
+
+        return output;
     }
 
     private void build_model() {
@@ -185,7 +250,7 @@ public class MILPPickupAndDelivery {
         S1H.addAll(H);
 
         // create decision variables
-        x = new MPVariable[MappedData.K][num_nodes][num_nodes];
+        x = new MPVariable[data.K][num_nodes][num_nodes];
         for (int k: K) {
             for (int i=0; i<num_nodes; i++) {
                 for (int j=0; j<num_nodes; j++) {
@@ -201,16 +266,16 @@ public class MILPPickupAndDelivery {
             }
 
             for (int i: HS2) {
-                z[k][i] = solver.makeNumVar(0, MappedData.capacity.get(k), "");
+                z[k][i] = solver.makeNumVar(0, data.capacity.get(k), "");
             }
         }
 
-        p = new MPVariable[K.size()][num_nodes][num_nodes];
+        p = new MPVariable[K.size()][requests.size()];
+        y = new MPVariable[K.size()][requests.size()];
         for (int k: K) {
-            for (int i=0; i<num_nodes; i++) {
-                for (int j=0; j<num_nodes; j++) {
-                    p[k][i][j] = solver.makeNumVar(0, request[i][j], "");
-                }
+            for (int r=0; r<requests.size(); r++) {
+                p[k][r] = solver.makeNumVar(0, requests.get(r).quantity, "p[" + k + "," + r + "]");
+                y[k][r] = solver.makeIntVar(0, 1, "y[" + k + "," + r + "]");
             }
         }
 
@@ -297,36 +362,55 @@ public class MILPPickupAndDelivery {
          *              START PICKUP AND DELIVERY CONSTRAINTS                         *
          * ****************************************************************************/
         // all the requests must be served
-        for (int i: H) {
+        for (int r=0; r<requests.size(); r++) {
+            MPConstraint c = solver.makeConstraint(requests.get(r).quantity, requests.get(r).quantity);
+            for (int k: K) {
+                c.setCoefficient(p[k][r], 1);
+            }
+        }
+
+        // net picking up at each node, w[k][j] = total picking up at j - total dropping at j,
+        // it only exists for the nodes where some requests are picked up or delivered
+        w = new MPVariable[K.size()][num_nodes];
+        for (int k: K) {
+            double cap = data.capacity.get(k);
             for (int j: H) {
-                MPConstraint c = solver.makeConstraint(request[i][j], request[i][j]);
-                for (int k: K) {
-                    c.setCoefficient(p[k][i][j], 1);
+                if (pickups_at.get(j).isEmpty() && drops_at.get(j).isEmpty()) {
+                    continue;
+                }
+
+                w[k][j] = solver.makeNumVar(-cap, cap, "w[" + k + "," + j + "]");
+                MPConstraint c = solver.makeConstraint(0, 0);
+                c.setCoefficient(w[k][j], 1);
+                for (int r: pickups_at.get(j)) {
+                    c.setCoefficient(p[k][r], -1);
+                }
+                for (int r: drops_at.get(j)) {
+                    c.setCoefficient(p[k][r], 1);
                 }
             }
         }
 
         // if truck k move from hub i to hub j, then
-        // loading when leaving j = loading when leaving i + total picking up at j - total dropping at j
+        // loading when leaving j = loading when leaving i + net picking up at j
         for (int k: K) {
+            double M_load = 2 * data.capacity.get(k);
             for (int i: S1H) {
                 for (int j: HS2) {
-                    MPConstraint c1 = solver.makeConstraint(-M, M);
+                    MPConstraint c1 = solver.makeConstraint(-M_load, M_load);
                     c1.setCoefficient(z[k][j], 1);
                     c1.setCoefficient(z[k][i], -1);
-                    c1.setCoefficient(x[k][i][j], M);
-                    for (int v: H) {
-                        c1.setCoefficient(p[k][j][v], -1);
-                        c1.setCoefficient(p[k][v][j], 1);
+                    c1.setCoefficient(x[k][i][j], M_load);
+                    if (w[k][j] != null) {
+                        c1.setCoefficient(w[k][j], -1);
                     }
 
-                    MPConstraint c2 = solver.makeConstraint(-M, M);
+                    MPConstraint c2 = solver.makeConstraint(-M_load, M_load);
                     c2.setCoefficient(z[k][j], 1);
                     c2.setCoefficient(z[k][i], -1);
-                    c2.setCoefficient(x[k][i][j], -M);
-                    for (int v: H) {
-                        c2.setCoefficient(p[k][j][v], -1);
-                        c2.setCoefficient(p[k][v][j], 1);
+                    c2.setCoefficient(x[k][i][j], -M_load);
+                    if (w[k][j] != null) {
+                        c2.setCoefficient(w[k][j], -1);
                     }
                 }
             }
@@ -335,39 +419,41 @@ public class MILPPickupAndDelivery {
         // if truck k does not visit hub i, then there is no picking up or dropping off at hub i
         for (int k: K) {
             for (int i: H) {
-                MPConstraint pc = solver.makeConstraint(-M, 0);
-                for (int j: H) {
-                    pc.setCoefficient(p[k][i][j], 1);
-                }
-                for (int j: S1H) {
-                    pc.setCoefficient(x[k][j][i], -M);
+                if (!pickups_at.get(i).isEmpty()) {
+                    MPConstraint pc = solver.makeConstraint(-M, 0);
+                    for (int r: pickups_at.get(i)) {
+                        pc.setCoefficient(p[k][r], 1);
+                    }
+                    for (int j: S1H) {
+                        pc.setCoefficient(x[k][j][i], -M);
+                    }
                 }
 
-                MPConstraint dc = solver.makeConstraint(-M, 0);
-                for (int j: H) {
-                    dc.setCoefficient(p[k][j][i], 1);
-                }
-                for (int j: S1H) {
-                    dc.setCoefficient(x[k][j][i], -M);
+                if (!drops_at.get(i).isEmpty()) {
+                    MPConstraint dc = solver.makeConstraint(-M, 0);
+                    for (int r: drops_at.get(i)) {
+                        dc.setCoefficient(p[k][r], 1);
+                    }
+                    for (int j: S1H) {
+                        dc.setCoefficient(x[k][j][i], -M);
+                    }
                 }
             }
         }
 
         // truck k must visit hub i before hub j to serve a request R(i -> j, q)
         for (int k: K) {
-            for (int i: H) {
-                for (int j: H) {
-                    MPVariable tmp = solver.makeIntVar(0, 1, "");
+            for (int r=0; r<requests.size(); r++) {
+                MappedRequest req = requests.get(r);
 
-                    MPConstraint c1 = solver.makeConstraint(-M, M);
-                    c1.setCoefficient(t[k][i], 1);
-                    c1.setCoefficient(t[k][j], -1);
-                    c1.setCoefficient(tmp, M);
+                MPConstraint c1 = solver.makeConstraint(-M, M);
+                c1.setCoefficient(t[k][req.from_hub], 1);
+                c1.setCoefficient(t[k][req.to_hub], -1);
+                c1.setCoefficient(y[k][r], M);
 
-                    MPConstraint c2 = solver.makeConstraint(-M, 0);
-                    c2.setCoefficient(p[k][i][j], 1);
-                    c2.setCoefficient(tmp, -M);
-                }
+                MPConstraint c2 = solver.makeConstraint(-req.quantity, 0);
+                c2.setCoefficient(p[k][r], 1);
+                c2.setCoefficient(y[k][r], -req.quantity);
             }
         }
         /******************************************************************************
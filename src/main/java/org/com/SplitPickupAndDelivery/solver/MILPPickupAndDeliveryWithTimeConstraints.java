@@ -6,11 +6,16 @@ import com.google.ortools.linearsolver.MPObjective;
 import com.google.ortools.linearsolver.MPSolver;
 import com.google.ortools.linearsolver.MPVariable;
 import org.apache.xmlbeans.impl.common.LoadSaveUtils;
+import org.com.SplitPickupAndDelivery.models.Request;
 
 import java.sql.SQLOutput;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Comparator;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 import static java.lang.Math.round;
 
@@ -18,10 +23,20 @@ import static java.lang.Math.round;
  * The MILPPickupAndDelivery class implements a mixed integer linear programming model
  * for solving the split pickup and delivery problem between multiple hubs. This solver
  * require the Google OR-tools library version 9.5.
+ *
+ * The model stays alive after solve(). Requests can be added or removed, trucks taken out of service or
+ * delayed and travel times changed with the add/remove/set methods, which patch the bounds, coefficients
+ * and rows concerned instead of building the model again. The next solve() starts from the previous
+ * solution: SCIP receives the routes, orders and assignments that the changes did not invalidate as a
+ * partial solution and completes it.
  * @Date: 15/12/2022
  */
-public class MILPPickupAndDeliveryWithTimeConstraints {
+public class MILPPickupAndDeliveryWithTimeConstraints implements PickupAndDeliverySolver {
 
+    private static final double M = 1e6;
+    private static final double M_TIME = 1e8;
+
+    private MappedData data;            // replaced by a new instance at each change of the live model
     private ArrayList<Integer> H;       // set of hubs
     private ArrayList<Integer> S1;      // set of departure nodes
     private ArrayList<Integer> S2;      // set of arrival nodes
@@ -30,214 +45,690 @@ public class MILPPickupAndDeliveryWithTimeConstraints {
     private double base_time;
     private int num_nodes;
     private ArrayList<Integer> K;       // set of all trucks
-    private double[][] request;         // request[i][j] is the amount of boxes needs to be delivered from i to j
+    private List<MappedRequest> requests;          // requests[r] is the r-th request (commodity)
+    private ArrayList<ArrayList<Integer>> pickups_at;   // pickups_at[i] is the list of requests picked up at node i
+    private ArrayList<ArrayList<Integer>> drops_at;     // drops_at[i] is the list of requests delivered at node i
+    private ArcIndex arcs;              // arcs that each truck can actually use
+    private Presolve presolve;          // reductions of the instance, null if it is not presolved
 
     private MPSolver solver;
-    private MPVariable[][][]  x;
+    private volatile MPSolver running;          // solver while solve() is running, used by interrupt()
+    private long time_limit_ms;
+    private String solver_parameters;           // SCIP parameters in the format of a SCIP settings file, null for the defaults
+    private IncumbentHolder holder;
+    private List<List<String>> seed_routes;     // routes of a similar instance, see setSeedRoutes()
+    private SolveMetrics metrics = new SolveMetrics();
+    private volatile boolean interrupted;
+    private boolean optimal;
+    private double best_bound = Double.NaN;
+    private MPVariable[][]  x;                  // x[k][a] = 1 if truck k moves along its arc a
     private MPVariable[][] arrival_time;        // arrival_time[k][i] is the time point that trucks k arrives at hub i
+    private MPVariable[][] t;                   // t[k][i] is the order of node i in the route of truck k
     private MPVariable[][] z;
-    private MPVariable[][][] p;
+    private MPVariable[][] p;                   // p[k][r] is the amount of request r served by truck k
+    private MPVariable[][] y;                   // y[k][r] = 1 if truck k serves (a part of) request r
+    private MPVariable[][] w;                   // w[k][i] is the net amount picked up by truck k at node i
+
+    // rows that the changes of the live model patch
+    private ArrayList<MPConstraint> demand_row;         // demand_row[r] makes the trucks serve all of request r
+    private MPConstraint[][] time_row;                  // time_row[k][a] enforces the travel time along arc a
+    private MPConstraint[][][] load_row;                // load_row[k][a] carries the load of truck k along arc a, two rows
+    private MPConstraint[][] pickup_row;                // pickup_row[k][i] forbids pickups at hub i if truck k does not visit it
+    private MPConstraint[][] drop_row;                  // drop_row[k][i] forbids drops at hub i if truck k does not visit it
+    private MPConstraint[][] net_row;                   // net_row[k][i] defines w[k][i]
+    private HashMap<MPVariable, Double> previous = new HashMap<>();    // values of x, t and y in the last solution still valid
+
+    // last solution read by extractSolution()
+    private ArrayList<ArrayList<Integer>> solution_path;    // solution_path[k] is the node path of truck k, from its departure to its arrival node
+    private double[][] solution_amount;                     // solution_amount[k][r] is the value of p[k][r]
+
+    public MILPPickupAndDeliveryWithTimeConstraints(MappedData data) {
+        this(data, null);
+    }
+
+    /**
+     * Builds the model of the reduced instance of presolve, without the arcs and the assignments of requests
+     * to trucks that it rules out. The solutions refer to the hubs of the reduced instance, see
+     * Presolve.restore(), and so do the changes of the live model. The first change drops the reductions,
+     * which may not hold any more, and the model is built again at the next solve().
+     */
+    public MILPPickupAndDeliveryWithTimeConstraints(Presolve presolve) {
+        this(presolve.reduced(), presolve);
+    }
+
+    private MILPPickupAndDeliveryWithTimeConstraints(MappedData data, Presolve presolve) {
+        this.data = data;
+        this.presolve = presolve;
 
-    public MILPPickupAndDeliveryWithTimeConstraints() {
+        time_limit_ms = 1000 * Parameters.TIME_LIMIT_S;
 
         H = new ArrayList<>();
-        for (int i=0; i<MappedData.N; i++) {
+        for (int i=0; i<data.N; i++) {
             H.add(i);
         }
 
         S1 = new ArrayList<>();
-        for (int i=MappedData.N; i<MappedData.N + MappedData.K; i++) {
+        for (int i=data.N; i<data.N + data.K; i++) {
             S1.add(i);
         }
 
         S2 = new ArrayList<>();
-        for (int i=MappedData.N + MappedData.K; i<MappedData.N + 2 * MappedData.K; i++) {
+        for (int i=data.N + data.K; i<data.N + 2 * data.K; i++) {
             S2.add(i);
         }
 
         K = new ArrayList<>();
-        for (int k=0; k<MappedData.K; k++) {
+        for (int k=0; k<data.K; k++) {
             K.add(k);
         }
 
         num_nodes = H.size() + S1.size() + S2.size();
 
-        request = new double[num_nodes][num_nodes];
-        for (MappedRequest r: MappedData.requests) {
-            request[r.from_hub][r.to_hub] = r.quantity;
-            // System.out.println(r.from_hub + " -> " + r.to_hub + ": " + r.quantity);
+        load_data();
+        build_arc_index();
+    }
+
+    /**
+     * Derives the requests by hub, the travel times in milliseconds and the start times from data.
+     */
+    private void load_data() {
+        requests = data.requests;
+        pickups_at = new ArrayList<>();
+        drops_at = new ArrayList<>();
+        for (int i=0; i<num_nodes; i++) {
+            pickups_at.add(new ArrayList<>());
+            drops_at.add(new ArrayList<>());
+        }
+        for (int r=0; r<requests.size(); r++) {
+            pickups_at.get(requests.get(r).from_hub).add(r);
+            drops_at.get(requests.get(r).to_hub).add(r);
         }
 
         travel_time = new double[num_nodes][num_nodes];
         for (int i: H) {
             for (int j: H) {
-                travel_time[i][j] = 1e3 * MappedData.travel_time[i][j]; // convert to milisecs
+                travel_time[i][j] = 1e3 * data.travelTime(i, j); // convert to milisecs
             }
         }
 
+        // the times of the live model stay relative to the base time it was built with
         start_working_time = new double[K.size()];
-        base_time = MappedData.startWorkingTime.get(0);
-        for (double t: MappedData.startWorkingTime) {
-            base_time = Math.min(t, base_time);
+        if (solver == null) {
+            base_time = data.startWorkingTime.get(0);
+            for (double t: data.startWorkingTime) {
+                base_time = Math.min(t, base_time);
+            }
         }
         for (int k=0; k<K.size(); k++) {
-            start_working_time[k] = MappedData.startWorkingTime.get(k) - base_time;
+            start_working_time[k] = data.startWorkingTime.get(k) - base_time;
         }
+
     }
 
-    public MappedSolution solve(boolean verbose) {
+    /**
+     * Collects the arcs that truck k can use: its departure node only leads to its location,
+     * every hub can lead to its arrival node, and a hub-to-hub arc exists if there is a direct
+     * path between the two hubs and none of them is forbidden for truck k, and the presolve keeps it.
+     */
+    private void build_arc_index() {
+        arcs = new ArcIndex(K.size(), num_nodes);
 
-        Loader.loadNativeLibraries();
-        solver = MPSolver.createSolver(String.valueOf(MPSolver.OptimizationProblemType.SCIP_MIXED_INTEGER_PROGRAMMING));
+        for (int k: K) {
+            boolean[] forbidden = new boolean[num_nodes];
+            if (data.forbiddenPoints.get(k) != null) {
+                for (Integer p: data.forbiddenPoints.get(k)) {
+                    if (p != null) {
+                        forbidden[p] = true;
+                    }
+                }
+            }
 
-        if (solver == null) {
-            System.err.println("Could not create solver SCIP");
-            return null;
+            arcs.add(k, H.size() + k, data.truck_location.get(k));
+
+            for (int i: H) {
+                if (forbidden[i]) {
+                    continue;
+                }
+
+                for (int j: H) {
+                    if (i != j && !forbidden[j] && travel_time[i][j] >= 0 && (presolve == null || presolve.usableArc(k, i, j))) {
+                        arcs.add(k, i, j);
+                    }
+                }
+
+                arcs.add(k, i, H.size() + K.size() + k);
+            }
         }
+    }
 
-        build_model();
-        create_obj();
+    public void setTimeLimit(long time_limit_ms) {
+        this.time_limit_ms = time_limit_ms;
+    }
+
+    /**
+     * Sets SCIP specific parameters, e.g. "randomization/randomseedshift = 3", used to run
+     * diversified copies of the model in the portfolio solver.
+     */
+    public void setSolverParameters(String solver_parameters) {
+        this.solver_parameters = solver_parameters;
+    }
 
-        solver.setTimeLimit(1000 * Parameters.TIME_LIMIT_S);
+    public void setIncumbentHolder(IncumbentHolder holder) {
+        this.holder = holder;
+    }
+
+    public void setSeedRoutes(List<List<String>> seed_routes) {
+        this.seed_routes = seed_routes;
+    }
+
+    public void setMetrics(SolveMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    public void interrupt() {
+        interrupted = true;
+        MPSolver current = running;
+        if (current != null) {
+            current.interruptSolve();
+        }
+    }
+
+    public boolean isOptimal() {
+        return optimal;
+    }
+
+    public double bestBound() {
+        return best_bound;
+    }
+
+    public MappedSolution solve(boolean verbose) {
+
+        optimal = false;
+        best_bound = Double.NaN;
+        metrics.startSolver("MILP");
+        long build_start = System.currentTimeMillis();
+        if (solver != null) {
+            // the live model was solved before and patched since, it restarts from what is left of that solution
+            set_previous_hint();
+        } else {
+            if (!createModel()) {
+                return null;
+            }
+
+            if (Parameters.USE_WARM_START) {
+                RoutePlan plan = InsertionHeuristic.construct(new RouteProblem(data), seed_routes);
+                set_hint(plan);
+                System.out.println("Warm start: " + plan.moves() + " moves, " + plan.unservedQuantity() + " boxes unserved.");
+                if (holder != null) {
+                    holder.offer(plan.toMappedSolution(), "MILP warm start");
+                }
+            }
+        }
+        metrics.addPhase("build", System.currentTimeMillis() - build_start);
+        metrics.setModelSize(solver);
+
+        solver.setTimeLimit(time_limit_ms);
         solver.setNumThreads(Parameters.NUMBER_OF_CPUs);
+        if (solver_parameters != null && !solver.setSolverSpecificParametersAsString(solver_parameters)) {
+            System.err.println("Could not set SCIP parameters: " + solver_parameters);
+        }
         if (verbose) {
             solver.enableOutput();
         } else {
             System.out.println("MILP solver is running...");
         }
 
+        // publish the solver so that interrupt() can stop it, then check for an interruption
+        // that came while the model was being built
+        running = solver;
+        if (interrupted) {
+            running = null;
+            return null;
+        }
+        long solve_start = System.currentTimeMillis();
         final MPSolver.ResultStatus resultStatus = solver.solve();
+        running = null;
+        best_bound = solver.objective().bestBound();
+        metrics.addPhase("solve", System.currentTimeMillis() - solve_start);
+        metrics.status = resultStatus.toString();
+        metrics.iterations = solver.iterations();
+        metrics.nodes = solver.nodes();
+        metrics.best_bound = best_bound;
 
         if (resultStatus == MPSolver.ResultStatus.OPTIMAL || resultStatus == MPSolver.ResultStatus.FEASIBLE) {
 
             if (resultStatus == MPSolver.ResultStatus.OPTIMAL) {
+                optimal = true;
                 System.out.println("Optimal solution found!");
             } else {
                 System.out.println("A good solution found!");
             }
 
-            ArrayList<ArrayList<Integer>> routes = new ArrayList<>();
-            ArrayList<ArrayList<ArrayList<MappedRequest>>> route_pickup = new ArrayList<>();
-            ArrayList<ArrayList<ArrayList<MappedRequest>>> route_delivery = new ArrayList<>();
+            long extract_start = System.currentTimeMillis();
+            MappedSolution solution = extractSolution();
+            metrics.addPhase("extract", System.currentTimeMillis() - extract_start);
+            save_previous();
+            metrics.objective = solution.objective();
+            return solution;
+        } else {
+            System.out.println("No feasible solution found");
+        }
+
+        return null;
+    }
+
+    /**
+     * Creates the SCIP solver and builds the model and the objective. Separate from solve() so that the
+     * model build can be measured on its own.
+     */
+    public boolean createModel() {
+        previous.clear();
+        Loader.loadNativeLibraries();
+        solver = MPSolver.createSolver(String.valueOf(MPSolver.OptimizationProblemType.SCIP_MIXED_INTEGER_PROGRAMMING));
+
+        if (solver == null) {
+            System.err.println("Could not create solver SCIP");
+            return false;
+        }
+
+        build_model();
+        create_obj();
+        return true;
+    }
+
+    /**
+     * Returns the instance of the live model, with all the changes applied so far.
+     */
+    public MappedData getData() {
+        return data;
+    }
+
+    /**
+     * Adds a request to the live model, see MappedData.withRequest() for the requests that can be added.
+     */
+    public void addRequest(Request req) {
+        drop_presolve();
+        data = data.withRequest(req);
+        load_data();
+        if (solver == null) {
+            return;
+        }
+
+        int r = requests.size() - 1;
+        MappedRequest q = requests.get(r);
+        for (int k: K) {
+            p[k] = Arrays.copyOf(p[k], requests.size());
+            y[k] = Arrays.copyOf(y[k], requests.size());
+            p[k][r] = solver.makeNumVar(0, q.quantity, "p[" + k + "," + r + "]");
+            y[k][r] = solver.makeIntVar(0, data.capacity.get(k) > 0 ? 1 : 0, "y[" + k + "," + r + "]");
+        }
+        make_request_rows(r);
+
+        for (int k: K) {
+            if (pickup_row[k][q.from_hub] == null) {
+                pickup_row[k][q.from_hub] = make_visit_row(k, q.from_hub, pickups_at.get(q.from_hub));
+            } else {
+                pickup_row[k][q.from_hub].setCoefficient(p[k][r], 1);
+            }
+            if (drop_row[k][q.to_hub] == null) {
+                drop_row[k][q.to_hub] = make_visit_row(k, q.to_hub, drops_at.get(q.to_hub));
+            } else {
+                drop_row[k][q.to_hub].setCoefficient(p[k][r], 1);
+            }
+
+            if (w[k][q.from_hub] == null) {
+                make_net_row(k, q.from_hub);
+            } else {
+                net_row[k][q.from_hub].setCoefficient(p[k][r], -1);
+            }
+            if (w[k][q.to_hub] == null) {
+                make_net_row(k, q.to_hub);
+            } else {
+                net_row[k][q.to_hub].setCoefficient(p[k][r], 1);
+            }
+        }
+    }
+
+    /**
+     * Removes a request from the live model. Its variables are fixed to 0 and stay in the model,
+     * the requests after it move one index down.
+     */
+    public void removeRequest(String request_id) {
+        drop_presolve();
+        int r = 0;
+        while (r < requests.size() && !request_id.equals(requests.get(r).id)) {
+            r++;
+        }
+        if (r == requests.size()) {
+            throw new IllegalArgumentException("Unknown request " + request_id);
+        }
+
+        data = data.withoutRequest(r);
+        if (solver != null) {
+            demand_row.get(r).setBounds(0, 0);
+            demand_row.remove(r);
             for (int k: K) {
-                // extract the route of truck k
-                ArrayList<Integer> route_k = new ArrayList<>();
-                route_k.add(H.size() + k);
-
-                int pre = route_k.get(0);
-                while (!S2.contains(pre)) {
-                    for (int i=0; i<num_nodes; i++) {
-                        if (x[k][pre][i].solutionValue() > 0) {
-                            pre = i;
-                            route_k.add(pre);
-                            break;
-                        }
+                p[k][r].setBounds(0, 0);
+                y[k][r].setBounds(0, 0);
+                previous.remove(y[k][r]);
+                p[k] = remove(p[k], r);
+                y[k] = remove(y[k], r);
+            }
+        }
+        load_data();
+    }
+
+    /**
+     * Changes the capacity of truck k in the live model, 0 takes the truck out of service.
+     */
+    public void setTruckCapacity(int k, double capacity) {
+        drop_presolve();
+        double old_capacity = data.capacity.get(k);
+        data = data.withTruckCapacity(k, capacity);
+        load_data();
+        if (solver == null) {
+            return;
+        }
+
+        for (int i=0; i<num_nodes; i++) {
+            if (!S1.contains(i)) {
+                z[k][i].setUb(capacity);
+            }
+            if (w[k][i] != null) {
+                w[k][i].setBounds(-capacity, capacity);
+            }
+        }
+        double M_load = 2 * capacity;
+        for (int a=0; a<arcs.numArcs(k); a++) {
+            load_row[k][a][0].setBounds(-M_load, M_load);
+            load_row[k][a][0].setCoefficient(x[k][a], M_load);
+            load_row[k][a][1].setBounds(-M_load, M_load);
+            load_row[k][a][1].setCoefficient(x[k][a], -M_load);
+        }
+        for (int r=0; r<requests.size(); r++) {
+            y[k][r].setUb(capacity > 0 ? 1 : 0);
+        }
+
+        if (capacity < old_capacity) {
+            forget_truck(k);
+        }
+    }
+
+    /**
+     * Changes the time truck k starts working in the live model, in milliseconds since the epoch.
+     */
+    public void setStartWorkingTime(int k, long time_ms) {
+        drop_presolve();
+        double old_start = start_working_time[k];
+        data = data.withStartWorkingTime(k, time_ms);
+        load_data();
+        if (solver == null) {
+            return;
+        }
+
+        for (int i=0; i<num_nodes; i++) {
+            arrival_time[k][i].setLb(start_working_time[k]);
+        }
+        if (start_working_time[k] > old_start) {
+            forget_truck(k);
+        }
+    }
+
+    /**
+     * Changes the travel time from physical hub i to physical hub j in the live model, in seconds,
+     * TravelTimeMatrix.MISSING if there is no direct path any more. An arc that did not exist cannot be
+     * added to the model, the next solve() builds the model again in that case.
+     *
+     * @throws IllegalStateException if the instance is closed by MappedData.withShortestPaths()
+     */
+    public void setTravelTime(int i, int j, double time) {
+        drop_presolve();
+        double[][] old_travel_time = travel_time;
+        data = data.withTravelTime(i, j, time);
+        load_data();
+        if (solver == null) {
+            build_arc_index();
+            return;
+        }
+
+        for (int k: K) {
+            for (int a=0; a<arcs.numArcs(k); a++) {
+                int u = arcs.tail(k, a);
+                int v = arcs.head(k, a);
+                if (u >= H.size() || v >= H.size() || travel_time[u][v] == old_travel_time[u][v]) {
+                    continue;
+                }
+
+                boolean removed = travel_time[u][v] < 0;
+                if (removed) {
+                    x[k][a].setUb(0);
+                } else {
+                    x[k][a].setUb(1);
+                    time_row[k][a].setLb(travel_time[u][v] - M_TIME);
+                }
+                // a hint at 1 on a removed or slower arc would make SCIP reject the whole warm start
+                if ((removed || travel_time[u][v] > old_travel_time[u][v]) && previous.getOrDefault(x[k][a], 0.0) > 0.5) {
+                    forget_truck(k);
+                }
+            }
+        }
+
+        for (int u: H) {
+            for (int v: H) {
+                if (u != v && old_travel_time[u][v] < 0 && travel_time[u][v] >= 0) {
+                    System.out.println("A new arc " + u + " -> " + v + " cannot be added to the live model, it is built again at the next solve.");
+                    solver = null;
+                    build_arc_index();
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * The reductions of the presolve only hold for the instance it ran on, so the first change of a
+     * presolved model forgets them and the model is built again at the next solve().
+     */
+    private void drop_presolve() {
+        if (presolve != null) {
+            presolve = null;
+            solver = null;
+            build_arc_index();
+        }
+    }
+
+    private static MPVariable[] remove(MPVariable[] vars, int r) {
+        MPVariable[] result = new MPVariable[vars.length - 1];
+        System.arraycopy(vars, 0, result, 0, r);
+        System.arraycopy(vars, r + 1, result, r, vars.length - r - 1);
+        return result;
+    }
+
+    /**
+     * Keeps the routes, orders and request assignments of the last solution, to warm start the next solve().
+     * They follow from what extractSolution() read, so the solver is not queried for every variable:
+     * x is 1 on the arcs of the paths, t is the position of a node in its path and y is 1 where a part
+     * of the request is served, all the other values are 0.
+     */
+    private void save_previous() {
+        previous.clear();
+        for (int k: K) {
+            ArrayList<Integer> path = solution_path.get(k);
+            for (int a=0; a<arcs.numArcs(k); a++) {
+                previous.put(x[k][a], 0.0);
+            }
+            for (int pos=1; pos<path.size(); pos++) {
+                previous.put(x[k][arcs.find(k, path.get(pos-1), path.get(pos))], 1.0);
+            }
+
+            double[] order = new double[num_nodes];
+            for (int pos=0; pos<path.size(); pos++) {
+                order[path.get(pos)] = pos;
+            }
+            for (int i=0; i<num_nodes; i++) {
+                previous.put(t[k][i], order[i]);
+            }
+
+            for (int r=0; r<requests.size(); r++) {
+                previous.put(y[k][r], solution_amount[k][r] > 0 ? 1.0 : 0.0);
+            }
+        }
+    }
+
+    /**
+     * A change made the last route of truck k unusable, its part of the previous solution is dropped
+     * and SCIP plans the truck again.
+     */
+    private void forget_truck(int k) {
+        for (int a=0; a<arcs.numArcs(k); a++) {
+            previous.remove(x[k][a]);
+        }
+        for (int i=0; i<num_nodes; i++) {
+            previous.remove(t[k][i]);
+        }
+        for (int r=0; r<requests.size(); r++) {
+            previous.remove(y[k][r]);
+        }
+    }
+
+    private void set_previous_hint() {
+        if (previous.isEmpty()) {
+            return;
+        }
+        MPVariable[] vars = new MPVariable[previous.size()];
+        double[] values = new double[previous.size()];
+        int n = 0;
+        for (Map.Entry<MPVariable, Double> e: previous.entrySet()) {
+            vars[n] = e.getKey();
+            values[n++] = e.getValue();
+        }
+        solver.setHint(vars, values);
+        System.out.println("Warm start from the previous solution: " + n + " values.");
+    }
+
+    /**
+     * Reads the routes and the operations of the trucks from the last solution of the solver. Only the
+     * variables along the routes are read: the arcs leaving the nodes of a route, and the loads, times and
+     * amounts at its hubs.
+     */
+    public MappedSolution extractSolution() {
+        int first_arrival = H.size() + K.size();    // the arrival nodes are numbered last
+        solution_path = new ArrayList<>();
+        solution_amount = new double[K.size()][requests.size()];
+        ArrayList<ArrayList<Integer>> routes = new ArrayList<>();
+        ArrayList<ArrayList<ArrayList<MappedRequest>>> route_pickup = new ArrayList<>();
+        ArrayList<ArrayList<ArrayList<MappedRequest>>> route_delivery = new ArrayList<>();
+        for (int k: K) {
+            // extract the route of truck k
+            ArrayList<Integer> route_k = new ArrayList<>();
+            route_k.add(H.size() + k);
+
+            int pre = route_k.get(0);
+            while (pre < first_arrival) {
+                for (int a: arcs.outArcs(k, pre)) {
+                    if (x[k][a].solutionValue() > 0.5) {
+                        pre = arcs.head(k, a);
+                        route_k.add(pre);
+                        break;
                     }
                 }
+            }
+            solution_path.add(new ArrayList<>(route_k));
 
-                route_k.remove(0);
-                route_k.remove(route_k.size()-1);
+            route_k.remove(0);
+            route_k.remove(route_k.size()-1);
 
-                ArrayList<ArrayList<MappedRequest>> pickup = new ArrayList<>();
-                ArrayList<ArrayList<MappedRequest>> delivery = new ArrayList<>();
+            ArrayList<ArrayList<MappedRequest>> pickup = new ArrayList<>();
+            ArrayList<ArrayList<MappedRequest>> delivery = new ArrayList<>();
 
-                if (route_k.size() > 1) {
-                    double load = ((int) (10000 * z[k][H.size() + k].solutionValue() / MappedData.capacity.get(k))) / 100.0;
-                    System.out.print("Truck " + (k + 1) + ": ");
-                    for (int hub: route_k) {
-                        String hub_ID = MappedData._hubIndex2hubID.get(hub);
-                        load = ((int) (10000 * z[k][hub].solutionValue() / MappedData.capacity.get(k))) / 100.0;
-                        System.out.print(" -> HUB " + hub + ", load=" + load + "%, time=");
+            if (route_k.size() > 1) {
+                double load = ((int) (10000 * z[k][H.size() + k].solutionValue() / data.capacity.get(k))) / 100.0;
+                System.out.print("Truck " + (k + 1) + ": ");
+                for (int hub: route_k) {
+                    String hub_ID = data._hubIndex2hubID.get(hub);
+                    load = ((int) (10000 * z[k][hub].solutionValue() / data.capacity.get(k))) / 100.0;
+                    System.out.print(" -> HUB " + hub + ", load=" + load + "%, time=");
 
-                        long ti = round(arrival_time[k][hub].solutionValue() + base_time);
-                        Date date = new Date(ti);
-                        System.out.print(date + " ");
+                    long ti = round(arrival_time[k][hub].solutionValue() + base_time);
+                    Date date = new Date(ti);
+                    System.out.print(date + " ");
+                }
+                System.out.println();
+
+                ArrayList<Integer> _route_k = new ArrayList<>();
+                int idx = 0;
+                String pre_hub = "";
+                while (idx < route_k.size()) {
+                    int i = route_k.get(idx++);
+                    ArrayList<MappedRequest> pickup_operations = new ArrayList<>();
+                    ArrayList<MappedRequest> drop_operations = new ArrayList<>();
+
+                    if (!data._hubIndex2hubID.get(i).equals(pre_hub)) {
+                        System.out.println("\tOperations at HUB " + data._hubIndex2hubID.get(i) + ":");
                     }
-                    System.out.println();
-
-                    ArrayList<Integer> _route_k = new ArrayList<>();
-                    int idx = 0;
-                    String pre_hub = "";
-                    while (idx < route_k.size()) {
-                        int i = route_k.get(idx++);
-                        ArrayList<MappedRequest> pickup_operations = new ArrayList<>();
-                        ArrayList<MappedRequest> drop_operations = new ArrayList<>();
-
-                        if (!MappedData._hubIndex2hubID.get(i).equals(pre_hub)) {
-                            System.out.println("\tOperations at HUB " + MappedData._hubIndex2hubID.get(i) + ":");
-                        }
 
-                        for (int j: H) {
-                            if (p[k][i][j].solutionValue() > 1e-3) {
-                                System.out.println("\t\tPick " + round(p[k][i][j].solutionValue()) + " boxes to delivery to HUB " + MappedData._hubIndex2hubID.get(j) + "");
-                                pickup_operations.add(new MappedRequest(i, j, round(p[k][i][j].solutionValue())));
-                            }
+                    // a request is picked up before it is delivered, its amount is read at its pickup hub
+                    for (int r: pickups_at.get(i)) {
+                        int j = requests.get(r).to_hub;
+                        solution_amount[k][r] = p[k][r].solutionValue();
+                        if (solution_amount[k][r] > 1e-3) {
+                            System.out.println("\t\tPick " + round(solution_amount[k][r]) + " boxes to delivery to HUB " + data._hubIndex2hubID.get(j) + "");
+                            pickup_operations.add(new MappedRequest(requests.get(r).id, i, j, round(solution_amount[k][r])));
                         }
+                    }
 
-                        for (int j: H) {
-                            if (p[k][j][i].solutionValue() > 1e-3) {
-                                System.out.println("\t\tDrop " + round(p[k][j][i].solutionValue()) + " boxes picked from HUB " + MappedData._hubIndex2hubID.get(j) + "");
-                                drop_operations.add(new MappedRequest(j, i, round(p[k][j][i].solutionValue())));
-                            }
+                    for (int r: drops_at.get(i)) {
+                        int j = requests.get(r).from_hub;
+                        if (solution_amount[k][r] > 1e-3) {
+                            System.out.println("\t\tDrop " + round(solution_amount[k][r]) + " boxes picked from HUB " + data._hubIndex2hubID.get(j) + "");
+                            drop_operations.add(new MappedRequest(requests.get(r).id, j, i, round(solution_amount[k][r])));
                         }
+                    }
 
-                        if (!MappedData._hubIndex2hubID.get(i).equals(pre_hub)) {
-                            _route_k.add(i);
-
-                            pickup.add(pickup_operations);
-                            delivery.add(drop_operations);
-                        } else {
-                            pickup.get(pickup.size() - 1).addAll(pickup_operations);
-                            delivery.get(delivery.size() - 1).addAll(drop_operations);
-                        }
+                    if (!data._hubIndex2hubID.get(i).equals(pre_hub)) {
+                        _route_k.add(i);
 
-                        pre_hub = MappedData._hubIndex2hubID.get(i);
+                        pickup.add(pickup_operations);
+                        delivery.add(drop_operations);
+                    } else {
+                        pickup.get(pickup.size() - 1).addAll(pickup_operations);
+                        delivery.get(delivery.size() - 1).addAll(drop_operations);
                     }
-                    route_k.clear();
-                    route_k.addAll(_route_k);
 
-                } else {
-                    System.out.println("Truck " + (k + 1) + ": NOT USED.");
-                    route_k.clear();
+                    pre_hub = data._hubIndex2hubID.get(i);
                 }
+                route_k.clear();
+                route_k.addAll(_route_k);
 
-                routes.add(route_k);
-                route_pickup.add(pickup);
-                route_delivery.add(delivery);
+            } else {
+                System.out.println("Truck " + (k + 1) + ": NOT USED.");
+                route_k.clear();
             }
 
-            MappedSolution output = new MappedSolution();
-            output.routes = routes;
-            output.pickup = route_pickup;
-            output.delivery = route_delivery;
-
-            return output;
-        } else {
-            System.out.println("No feasible solution found");
+            routes.add(route_k);
+            route_pickup.add(pickup);
+            route_delivery.add(delivery);
         }
 
-        return null;
+        MappedSolution output = new MappedSolution();
+        output.routes = routes;
+        output.pickup = route_pickup;
+        output.delivery = route_delivery;
+
+        return output;
     }
 
     private void build_model() {
-        double M = 1e6;
-        double M_time = 1e8;
-
         ArrayList<Integer> HS2 = new ArrayList<>();
         HS2.addAll(H);
         HS2.addAll(S2);
 
-        ArrayList<Integer> S1H = new ArrayList<>();
-        S1H.addAll(S1);
-        S1H.addAll(H);
-
-        // create decision variables
-        x = new MPVariable[MappedData.K][num_nodes][num_nodes];
+        // create decision variables, one for each arc that truck k can use
+        x = new MPVariable[K.size()][];
         for (int k: K) {
-            for (int i=0; i<num_nodes; i++) {
-                for (int j=0; j<num_nodes; j++) {
-                    x[k][i][j] = solver.makeIntVar(0,1,"x[" + k + "," + i + "," + j + "]");
-                }
+            x[k] = new MPVariable[arcs.numArcs(k)];
+            for (int a=0; a<arcs.numArcs(k); a++) {
+                x[k][a] = solver.makeIntVar(0,1,"x[" + k + "," + arcs.tail(k, a) + "," + arcs.head(k, a) + "]");
             }
         }
 
@@ -248,35 +739,28 @@ public class MILPPickupAndDeliveryWithTimeConstraints {
             }
 
             for (int i: HS2) {
-                z[k][i] = solver.makeNumVar(0, MappedData.capacity.get(k), "");
+                z[k][i] = solver.makeNumVar(0, data.capacity.get(k), "");
             }
         }
 
-        p = new MPVariable[K.size()][num_nodes][num_nodes];
+        p = new MPVariable[K.size()][requests.size()];
+        y = new MPVariable[K.size()][requests.size()];
         for (int k: K) {
-            for (int i=0; i<num_nodes; i++) {
-                for (int j=0; j<num_nodes; j++) {
-                    p[k][i][j] = solver.makeNumVar(0, request[i][j], "");
-                }
+            for (int r=0; r<requests.size(); r++) {
+                boolean can_serve = presolve == null || presolve.canServe(k, r);
+                p[k][r] = solver.makeNumVar(0, can_serve ? requests.get(r).quantity : 0, "p[" + k + "," + r + "]");
+                y[k][r] = solver.makeIntVar(0, can_serve ? 1 : 0, "y[" + k + "," + r + "]");
             }
         }
 
         /******************************************************************************
          *                      START ROUTE CONSTRAINTS                               *
          * ****************************************************************************/
-        // every truck departs from its location
-        for (int k1: K) {
-            for (int k2: K) {
-                for (int i: H) {
-                    int location = MappedData.truck_location.get(k1);
-                    MPConstraint c;
-                    if (k1 == k2 && i == location) {
-                        c = solver.makeConstraint(1, 1);
-                    } else {
-                        c = solver.makeConstraint(0, 0);
-                    }
-                    c.setCoefficient(x[k1][H.size() + k2][i], 1);
-                }
+        // every truck departs from its location (the only arc leaving its departure node)
+        for (int k: K) {
+            MPConstraint c = solver.makeConstraint(1, 1);
+            for (int a: arcs.outArcs(k, H.size() + k)) {
+                c.setCoefficient(x[k][a], 1);
             }
         }
 
@@ -284,205 +768,125 @@ public class MILPPickupAndDeliveryWithTimeConstraints {
         for (int k: K) {
             MPConstraint c = solver.makeConstraint(1,1);
 
-            for (int i: S1H) {
-                c.setCoefficient(x[k][i][H.size() + K.size() + k], 1);
+            for (int a: arcs.inArcs(k, H.size() + K.size() + k)) {
+                c.setCoefficient(x[k][a], 1);
             }
         }
 
-        // balance flow constraint of each truck
+        // balance flow constraint of each truck, it also implies the balance flow at each node
         for (int k: K) {
             for (int j: H) {
                 MPConstraint c1 = solver.makeConstraint(0, 0);
                 MPConstraint c2 = solver.makeConstraint(0, 1);
 
-                for (int i: S1H) {
-                    c1.setCoefficient(x[k][i][j], 1);
-                    c2.setCoefficient(x[k][i][j], 1);
+                for (int a: arcs.inArcs(k, j)) {
+                    c1.setCoefficient(x[k][a], 1);
+                    c2.setCoefficient(x[k][a], 1);
                 }
 
-                for (int i: HS2) {
-                    c1.setCoefficient(x[k][j][i], -1);
-                }
-            }
-        }
-
-        // balance flow constraint at each node
-        for (int j: H) {
-            MPConstraint c = solver.makeConstraint(0, 0);
-            for (int k: K) {
-                for (int i: S1H) {
-                    c.setCoefficient(x[k][i][j], 1);
-                }
-
-                for (int i: HS2) {
-                    c.setCoefficient(x[k][j][i], -1);
+                for (int a: arcs.outArcs(k, j)) {
+                    c1.setCoefficient(x[k][a], -1);
                 }
             }
         }
 
         // sub-tour elimination constraints
-        MPVariable[][] t = new MPVariable[K.size()][num_nodes];
+        t = new MPVariable[K.size()][num_nodes];
         for (int k: K) {
             for (int i=0; i<t[0].length; i++) {
                 t[k][i] = solver.makeIntVar(0, num_nodes, "t[" + k + "," + i + "]");
             }
         }
         for (int k: K) {
-            for (int i: S1H) {
-                for (int j: HS2) {
-                    MPConstraint c = solver.makeConstraint(1-num_nodes, num_nodes);
-                    c.setCoefficient(t[k][j], 1);
-                    c.setCoefficient(t[k][i], -1);
-                    c.setCoefficient(x[k][i][j], -num_nodes);
-                }
+            for (int a=0; a<arcs.numArcs(k); a++) {
+                MPConstraint c = solver.makeConstraint(1-num_nodes, num_nodes);
+                c.setCoefficient(t[k][arcs.head(k, a)], 1);
+                c.setCoefficient(t[k][arcs.tail(k, a)], -1);
+                c.setCoefficient(x[k][a], -num_nodes);
             }
         }
 
-        // forbidden point constraint
-        for (int k: K) {
-            if (MappedData.forbiddenPoints.get(k) == null) {
-                continue;
-            }
-
-            for (int p: MappedData.forbiddenPoints.get(k)) {
-                MPConstraint c = solver.makeConstraint(0, 0);
-                for (int i: S1H) {
-                    c.setCoefficient(x[k][i][p], 1);
-                }
-
-                for (int j: HS2) {
-                    c.setCoefficient(x[k][p][j], 1);
-                }
-            }
-        }
-
-        // forbidden route constraint
-        for (int i: H) {
-            for (int j: H) {
-                if (travel_time[i][j] < 0) {
-                    for (int k: K) {
-                        MPConstraint c = solver.makeConstraint(0, 0);
-                        c.setCoefficient(x[k][i][j], 1);
-                    }
-                }
-            }
-        }
+        // forbidden points and forbidden routes have no arc in the arc index
 
         // time constraints
         arrival_time = new MPVariable[K.size()][num_nodes];
         for (int k: K) {
             for (int i=0; i<arrival_time[0].length; i++) {
-                arrival_time[k][i] = solver.makeNumVar(start_working_time[k], M_time, "");
+                arrival_time[k][i] = solver.makeNumVar(start_working_time[k], M_TIME, "");
             }
         }
 
+        time_row = new MPConstraint[K.size()][];
         for (int k: K) {
-            for (int i: S1H) {
-                for (int j: HS2) {
-                    MPConstraint c = solver.makeConstraint(travel_time[i][j]-M_time, M_time);
-                    c.setCoefficient(arrival_time[k][j], 1);
-                    c.setCoefficient(arrival_time[k][i], -1);
-                    c.setCoefficient(x[k][i][j], -M_time);
-                }
+            time_row[k] = new MPConstraint[arcs.numArcs(k)];
+            for (int a=0; a<arcs.numArcs(k); a++) {
+                int i = arcs.tail(k, a);
+                int j = arcs.head(k, a);
+                MPConstraint c = solver.makeConstraint(travel_time[i][j]-M_TIME, M_TIME);
+                c.setCoefficient(arrival_time[k][j], 1);
+                c.setCoefficient(arrival_time[k][i], -1);
+                c.setCoefficient(x[k][a], -M_TIME);
+                time_row[k][a] = c;
             }
         }
 
-        for (MappedRequest req: MappedData.requests) {
-            double pickup_time = req.pickupTime - base_time;
-            double delivery_time = req.deliveryTime - base_time;
-
-            for (int k: K) {
-                MPVariable u = solver.makeIntVar(0, 1, "");
-                MPConstraint c = solver.makeConstraint(-M, 0);
-                c.setCoefficient(p[k][req.from_hub][req.to_hub], 1);
-                c.setCoefficient(u, -M);
-
-                // pickup time constraint
-                MPConstraint pickup_constraint = solver.makeConstraint(-M_time, pickup_time + M_time);
-                pickup_constraint.setCoefficient(arrival_time[k][req.from_hub], 1);
-                pickup_constraint.setCoefficient(u, M_time);
-
-                // delivery time constraint
-                MPConstraint delivery_constraint = solver.makeConstraint(-M_time, delivery_time + M_time);
-                delivery_constraint.setCoefficient(arrival_time[k][req.to_hub], 1);
-                delivery_constraint.setCoefficient(u, M_time);
-            }
+        // the time windows, the demand and the precedence of each request
+        demand_row = new ArrayList<>();
+        for (int r=0; r<requests.size(); r++) {
+            make_request_rows(r);
         }
         /******************************************************************************
          *                      END ROUTE CONSTRAINTS                                 *
          *              START PICKUP AND DELIVERY CONSTRAINTS                         *
          * ****************************************************************************/
-        // all the requests must be served
-        for (int i: H) {
-            for (int j: H) {
-                MPConstraint c = solver.makeConstraint(request[i][j], request[i][j]);
-                for (int k: K) {
-                    c.setCoefficient(p[k][i][j], 1);
-                }
-            }
-        }
-
         // if truck k does not visit hub i, then there is no picking up or dropping off at hub i
+        pickup_row = new MPConstraint[K.size()][num_nodes];
+        drop_row = new MPConstraint[K.size()][num_nodes];
         for (int k: K) {
             for (int i: H) {
-                MPConstraint pc = solver.makeConstraint(-M, 0);
-                for (int j: H) {
-                    pc.setCoefficient(p[k][i][j], 1);
-                }
-                for (int j: S1H) {
-                    pc.setCoefficient(x[k][j][i], -M);
+                if (!pickups_at.get(i).isEmpty()) {
+                    pickup_row[k][i] = make_visit_row(k, i, pickups_at.get(i));
                 }
 
-                MPConstraint dc = solver.makeConstraint(-M, 0);
-                for (int j: H) {
-                    dc.setCoefficient(p[k][j][i], 1);
-                }
-                for (int j: S1H) {
-                    dc.setCoefficient(x[k][j][i], -M);
+                if (!drops_at.get(i).isEmpty()) {
+                    drop_row[k][i] = make_visit_row(k, i, drops_at.get(i));
                 }
             }
         }
 
-        // truck k must visit hub i before hub j to serve a request R(i -> j, q)
+        // if truck k move from hub i to hub j, then
+        // loading when leaving j = loading when leaving i + net picking up at j
+        load_row = new MPConstraint[K.size()][][];
         for (int k: K) {
-            for (int i: H) {
-                for (int j: H) {
-                    MPVariable tmp = solver.makeIntVar(0, 1, "");
-
-                    MPConstraint c1 = solver.makeConstraint(-M, M);
-                    c1.setCoefficient(t[k][i], 1);
-                    c1.setCoefficient(t[k][j], -1);
-                    c1.setCoefficient(tmp, M);
-
-                    MPConstraint c2 = solver.makeConstraint(-M, 0);
-                    c2.setCoefficient(p[k][i][j], 1);
-                    c2.setCoefficient(tmp, -M);
-                }
+            double M_load = 2 * data.capacity.get(k);
+            load_row[k] = new MPConstraint[arcs.numArcs(k)][2];
+            for (int a=0; a<arcs.numArcs(k); a++) {
+                int i = arcs.tail(k, a);
+                int j = arcs.head(k, a);
+
+                MPConstraint c1 = solver.makeConstraint(-M_load, M_load);
+                c1.setCoefficient(z[k][j], 1);
+                c1.setCoefficient(z[k][i], -1);
+                c1.setCoefficient(x[k][a], M_load);
+
+                MPConstraint c2 = solver.makeConstraint(-M_load, M_load);
+                c2.setCoefficient(z[k][j], 1);
+                c2.setCoefficient(z[k][i], -1);
+                c2.setCoefficient(x[k][a], -M_load);
+
+                load_row[k][a][0] = c1;
+                load_row[k][a][1] = c2;
             }
         }
 
-        // if truck k move from hub i to hub j, then
-        // loading when leaving j = loading when leaving i + total picking up at j - total dropping at j
+        // net picking up at each node, w[k][j] = total picking up at j - total dropping at j,
+        // it only exists for the nodes where some requests are picked up or delivered
+        w = new MPVariable[K.size()][num_nodes];
+        net_row = new MPConstraint[K.size()][num_nodes];
         for (int k: K) {
-            for (int i: S1H) {
-                for (int j: HS2) {
-                    MPConstraint c1 = solver.makeConstraint(-M, M);
-                    c1.setCoefficient(z[k][j], 1);
-                    c1.setCoefficient(z[k][i], -1);
-                    c1.setCoefficient(x[k][i][j], M);
-                    for (int v: H) {
-                        c1.setCoefficient(p[k][j][v], -1);
-                        c1.setCoefficient(p[k][v][j], 1);
-                    }
-
-                    MPConstraint c2 = solver.makeConstraint(-M, M);
-                    c2.setCoefficient(z[k][j], 1);
-                    c2.setCoefficient(z[k][i], -1);
-                    c2.setCoefficient(x[k][i][j], -M);
-                    for (int v: H) {
-                        c2.setCoefficient(p[k][j][v], -1);
-                        c2.setCoefficient(p[k][v][j], 1);
-                    }
+            for (int j: H) {
+                if (!pickups_at.get(j).isEmpty() || !drops_at.get(j).isEmpty()) {
+                    make_net_row(k, j);
                 }
             }
         }
@@ -493,15 +897,160 @@ public class MILPPickupAndDeliveryWithTimeConstraints {
         System.out.println("MILP model built successfully.");
     }
 
+    /**
+     * Adds the rows of request r: truck k must arrive in time at both ends of r if it serves a part of it,
+     * the trucks serve all of r, and a truck serving r visits its pickup hub before its delivery hub.
+     */
+    private void make_request_rows(int r) {
+        MappedRequest req = requests.get(r);
+        double pickup_time = req.pickupTime - base_time;
+        double delivery_time = req.deliveryTime - base_time;
+
+        MPConstraint demand = solver.makeConstraint(req.quantity, req.quantity);
+        for (int k: K) {
+            demand.setCoefficient(p[k][r], 1);
+
+            // pickup time constraint
+            MPConstraint pickup_constraint = solver.makeConstraint(-M_TIME, pickup_time + M_TIME);
+            pickup_constraint.setCoefficient(arrival_time[k][req.from_hub], 1);
+            pickup_constraint.setCoefficient(y[k][r], M_TIME);
+
+            // delivery time constraint
+            MPConstraint delivery_constraint = solver.makeConstraint(-M_TIME, delivery_time + M_TIME);
+            delivery_constraint.setCoefficient(arrival_time[k][req.to_hub], 1);
+            delivery_constraint.setCoefficient(y[k][r], M_TIME);
+
+            // truck k must visit hub i before hub j to serve a request R(i -> j, q)
+            MPConstraint c1 = solver.makeConstraint(-M, M);
+            c1.setCoefficient(t[k][req.from_hub], 1);
+            c1.setCoefficient(t[k][req.to_hub], -1);
+            c1.setCoefficient(y[k][r], M);
+
+            MPConstraint c2 = solver.makeConstraint(-req.quantity, 0);
+            c2.setCoefficient(p[k][r], 1);
+            c2.setCoefficient(y[k][r], -req.quantity);
+        }
+        demand_row.add(demand);
+    }
+
+    private MPConstraint make_visit_row(int k, int i, List<Integer> served_at) {
+        MPConstraint c = solver.makeConstraint(-M, 0);
+        for (int r: served_at) {
+            c.setCoefficient(p[k][r], 1);
+        }
+        for (int a: arcs.inArcs(k, i)) {
+            c.setCoefficient(x[k][a], -M);
+        }
+        return c;
+    }
+
+    /**
+     * Creates w[k][j] and its definition, and adds it to the load rows of the arcs entering j.
+     */
+    private void make_net_row(int k, int j) {
+        double cap = data.capacity.get(k);
+        w[k][j] = solver.makeNumVar(-cap, cap, "w[" + k + "," + j + "]");
+        MPConstraint c = solver.makeConstraint(0, 0);
+        c.setCoefficient(w[k][j], 1);
+        for (int r: pickups_at.get(j)) {
+            c.setCoefficient(p[k][r], -1);
+        }
+        for (int r: drops_at.get(j)) {
+            c.setCoefficient(p[k][r], 1);
+        }
+        net_row[k][j] = c;
+
+        for (int a: arcs.inArcs(k, j)) {
+            load_row[k][a][0].setCoefficient(w[k][j], -1);
+            load_row[k][a][1].setCoefficient(w[k][j], -1);
+        }
+    }
+
+    /**
+     * Passes a plan of the heuristic solvers to SCIP as a solution hint. Nodes that are not in the
+     * route of a truck get values that satisfy the relaxed big-M rows.
+     */
+    private void set_hint(RoutePlan plan) {
+        ArrayList<MPVariable> vars = new ArrayList<>();
+        ArrayList<Double> values = new ArrayList<>();
+
+        for (int k: K) {
+            int[] route = plan.route[k];
+            int len = plan.length[k];
+            double[] arrival = plan.arrival(k);
+            double[] load = plan.load(k);
+
+            double[] t_val = new double[num_nodes];
+            double[] z_val = new double[num_nodes];
+            double[] arrival_val = new double[num_nodes];
+            Arrays.fill(arrival_val, start_working_time[k]);
+            for (int pos=0; pos<len; pos++) {
+                t_val[route[pos]] = pos + 1;
+                z_val[route[pos]] = load[pos];
+                arrival_val[route[pos]] = arrival[pos];
+            }
+            int arrival_node = H.size() + K.size() + k;
+            t_val[arrival_node] = len + 1;
+            arrival_val[arrival_node] = arrival[len - 1];
+
+            double[] x_val = new double[arcs.numArcs(k)];
+            int pre = H.size() + k;
+            for (int pos=0; pos<=len; pos++) {
+                int next = pos < len ? route[pos] : arrival_node;
+                int a = arcs.find(k, pre, next);
+                if (a >= 0) {
+                    x_val[a] = 1;
+                }
+                pre = next;
+            }
+
+            for (int a=0; a<arcs.numArcs(k); a++) {
+                vars.add(x[k][a]);
+                values.add(x_val[a]);
+            }
+
+            double[] w_val = new double[num_nodes];
+            for (int r=0; r<requests.size(); r++) {
+                double served = plan.served[k][r];
+                vars.add(p[k][r]);
+                values.add(served);
+                vars.add(y[k][r]);
+                values.add(served > RoutePlan.EPS ? 1.0 : 0.0);
+
+                w_val[requests.get(r).from_hub] += served;
+                w_val[requests.get(r).to_hub] -= served;
+            }
+
+            for (int i=0; i<num_nodes; i++) {
+                vars.add(t[k][i]);
+                values.add(t_val[i]);
+                vars.add(z[k][i]);
+                values.add(z_val[i]);
+                vars.add(arrival_time[k][i]);
+                values.add(arrival_val[i]);
+                if (w[k][i] != null) {
+                    vars.add(w[k][i]);
+                    values.add(w_val[i]);
+                }
+            }
+        }
+
+        double[] hint = new double[values.size()];
+        for (int i=0; i<hint.length; i++) {
+            hint[i] = values.get(i);
+        }
+        solver.setHint(vars.toArray(new MPVariable[0]), hint);
+    }
+
     private void create_obj() {
 
         MPObjective obj = solver.objective();
         for (int k: K) {
-            for (int i: H) {
-                for (int j: H) {
-                    if (MappedData._mapPickup2Delivery.get(i) == null || MappedData._mapPickup2Delivery.get(i) != j) {
-                        obj.setCoefficient(x[k][i][j], 1);
-                    }
+            for (int a=0; a<arcs.numArcs(k); a++) {
+                int i = arcs.tail(k, a);
+                int j = arcs.head(k, a);
+                if (i < H.size() && j < H.size() && (data._mapPickup2Delivery.get(i) == null || data._mapPickup2Delivery.get(i) != j)) {
+                    obj.setCoefficient(x[k][a], 1);
                 }
             }
         }
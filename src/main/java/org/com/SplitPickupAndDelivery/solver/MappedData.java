@@ -3,190 +3,418 @@ package org.com.SplitPickupAndDelivery.solver;
 import org.apache.commons.math3.util.Pair;
 import org.com.SplitPickupAndDelivery.models.*;
 
-import java.io.File;
-import java.io.FileNotFoundException;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Scanner;
+import java.util.List;
+import java.util.Map;
 
 class MappedRequest {
 
-    public String id;
-    public int from_hub;
-    public long pickupTime;
-    public int to_hub;
-    public long deliveryTime;
-    public double quantity;
+    public final String id;
+    public final int from_hub;
+    public final long pickupTime;
+    public final int to_hub;
+    public final long deliveryTime;
+    public final double quantity;
 
-    public MappedRequest() {
-
-    }
-
-    public MappedRequest(int from, int to, double quantity) {
+    public MappedRequest(String id, int from, long pickupTime, int to, long deliveryTime, double quantity) {
+        this.id = id;
         this.from_hub = from;
+        this.pickupTime = pickupTime;
         this.to_hub = to;
+        this.deliveryTime = deliveryTime;
         this.quantity = quantity;
     }
+
+    public MappedRequest(int from, int to, double quantity) {
+        this(null, from, 0, to, 0, quantity);
+    }
+
+    /**
+     * A part of request id served or left unserved in a solution, the times are not used.
+     */
+    public MappedRequest(String id, int from, int to, double quantity) {
+        this(id, from, 0, to, 0, quantity);
+    }
 }
 
+/**
+ * The MappedData class is an instance of the problem where hubs, trucks and requests are
+ * numbered. It is created by parseInput() and never changes afterwards, so it can be shared by
+ * solvers running in parallel, and several instances can be solved at the same time.
+ */
 public class MappedData {
 
-    public static InputData data;
-    public static int N;                        // number of hubs
-    public static int K;                        // number of trucks
-    public static double[][] travel_time;       // travel time between hubs, travel_time[i][j] = -1 if there is no direct path from i to j
-    public static ArrayList<Double> capacity;
-    public static ArrayList<Integer> truck_location;
-    public static ArrayList<ArrayList<Integer>> forbiddenPoints;
-    public static ArrayList<Long> startWorkingTime;
-    public static ArrayList<MappedRequest> requests;
-
-    public static HashMap<String, Integer> _hubID2HubIndex;
-    public static HashMap<Integer, String> _hubIndex2hubID;
-    public static HashMap<String, Integer> _truckID2TruckIndex;
-    public static HashMap<Pair<Integer, Integer>, Request> _mapRequest;
-
-    public static HashMap<Integer, Integer> _mapPickup2Delivery;
-
-    public static void parseInput(InputData input_data) {
-        data = input_data;
-
-        N = input_data.hubs.size();
-        _hubID2HubIndex = new HashMap<>();
-        _hubIndex2hubID = new HashMap<>();
-        for (int i=0; i<input_data.hubs.size(); i++) {
-            _hubID2HubIndex.put(input_data.hubs.get(i).getHubID(), i);
-            _hubIndex2hubID.put(i, input_data.hubs.get(i).getHubID());
-        }
+    static final String TIME_PATTERN = "yyyy-MM-dd HH:mm:ss";     // format of the times of the trucks and the requests
 
-        K = input_data.trucks.size();
-        _truckID2TruckIndex = new HashMap<>();
-        capacity = new ArrayList<>();
-        for (int i=0; i<input_data.trucks.size(); i++) {
-            _truckID2TruckIndex.put(input_data.trucks.get(i).getTruckID(), i);
-            capacity.add(input_data.trucks.get(i).getCapacity());
-        }
+    public final InputData input;              // input.travel_time is null when the instance is loaded from a snapshot
+    public final int N;                         // number of hubs
+    public final int K;                         // number of trucks
+    private final TravelTimeMatrix travel_time; // travel time between hubs, TravelTimeMatrix.MISSING if there is no direct path from i to j
+    public final List<Double> capacity;
+    public final List<Integer> truck_location;
+    public final List<List<Integer>> forbiddenPoints;
+    public final List<Long> startWorkingTime;
+    public final List<MappedRequest> requests;
 
-        truck_location = new ArrayList<>();
-        for (int i=0; i<input_data.trucks.size(); i++) {
-            truck_location.add(_hubID2HubIndex.get(input_data.trucks.get(i).getLocation()));
+    public final Map<String, Integer> _hubID2HubIndex;
+    public final Map<Integer, String> _hubIndex2hubID;
+    public final Map<String, Integer> _truckID2TruckIndex;
+    public final Map<Pair<Integer, Integer>, Request> _mapRequest;
+    public final Map<String, Integer> _requestID2RequestIndex;
+
+    public final Map<Integer, Integer> _mapPickup2Delivery;
+
+    private final ShortestPathClosure closure;  // hubs passed through between two stops, null unless withShortestPaths()
+
+    public static MappedData parseInput(InputData input_data) {
+        int num_hubs = input_data.hubs.size();
+        HashMap<String, Integer> hubID2HubIndex = new HashMap<>();
+        for (int i=0; i<input_data.hubs.size(); i++) {
+            hubID2HubIndex.put(input_data.hubs.get(i).getHubID(), i);
         }
 
-        startWorkingTime = new ArrayList<>();
+        ArrayList<Long> start_times = new ArrayList<>();
         for (int i=0; i<input_data.trucks.size(); i++) {
-            SimpleDateFormat formatter = new SimpleDateFormat("yyyy-MM-dd HH:mm:SS");
+            SimpleDateFormat formatter = new SimpleDateFormat(TIME_PATTERN);
             try {
-                startWorkingTime.add(formatter.parse(input_data.trucks.get(i).getStartWorkingTime()).getTime());
+                start_times.add(formatter.parse(input_data.trucks.get(i).getStartWorkingTime()).getTime());
             } catch (ParseException e) {
                 e.printStackTrace();
                 throw new RuntimeException(e);
             }
         }
 
-        requests = new ArrayList<>();
-        _mapRequest = new HashMap<>();
         HashSet<Integer> pickup_points = new HashSet<>();
         for (Request req: input_data.requests) {
-            MappedRequest mapped_req = new MappedRequest();
-            SimpleDateFormat formatter = new SimpleDateFormat("yyyy-MM-dd HH:mm:SS");
+            pickup_points.add(hubID2HubIndex.get(req.getPickupPoint()));
+        }
+        for (int i=0; i<input_data.trucks.size(); i++) {
+            pickup_points.add(hubID2HubIndex.get(input_data.trucks.get(i).getLocation()));
+        }
 
-            mapped_req.id = req.getRequestID();
-            mapped_req.from_hub = _hubID2HubIndex.get(req.getPickupPoint());
-            mapped_req.to_hub = _hubID2HubIndex.get(req.getDeliveryPoint());
-            mapped_req.quantity = req.getDemand();
+        // a delivery to a pickup point goes to a logical copy of the point
+        HashMap<Integer, Integer> mapPickup2Delivery = new HashMap<>();
+        for (Request req: input_data.requests) {
+            int to_hub = hubID2HubIndex.get(req.getDeliveryPoint());
+            if (pickup_points.contains(to_hub) && !mapPickup2Delivery.containsKey(to_hub)) {
+                int logic_point = num_hubs++;
+                mapPickup2Delivery.put(to_hub, logic_point);
+            }
+        }
+        int N = num_hubs;
 
-            pickup_points.add(mapped_req.from_hub);
+        ArrayList<MappedRequest> mapped_requests = new ArrayList<>();
+        for (Request req: input_data.requests) {
+            SimpleDateFormat formatter = new SimpleDateFormat(TIME_PATTERN);
+
+            int from_hub = hubID2HubIndex.get(req.getPickupPoint());
+            int to_hub = hubID2HubIndex.get(req.getDeliveryPoint());
+            if (mapPickup2Delivery.containsKey(to_hub)) {
+                to_hub = mapPickup2Delivery.get(to_hub);
+            }
 
             try {
-                mapped_req.pickupTime = formatter.parse(req.getPickupDateTime()).getTime();
-                mapped_req.deliveryTime = formatter.parse(req.getDeliveryDateTime()).getTime();
+                mapped_requests.add(new MappedRequest(req.getRequestID(), from_hub, formatter.parse(req.getPickupDateTime()).getTime(),
+                        to_hub, formatter.parse(req.getDeliveryDateTime()).getTime(), req.getDemand()));
             } catch (ParseException e) {
                 e.printStackTrace();
                 throw new RuntimeException(e);
             }
-
-            requests.add(mapped_req);
-            _mapRequest.put(new Pair<>(mapped_req.from_hub, mapped_req.to_hub), req);
         }
 
-        for (int i=0; i<input_data.trucks.size(); i++) {
-            pickup_points.add(_hubID2HubIndex.get(input_data.trucks.get(i).getLocation()));
+        TravelTimeMatrix travel_time = withLogicalHubs(input_data.travel_time, mapPickup2Delivery, N);
+        return new MappedData(input_data, mapPickup2Delivery, start_times, mapped_requests, travel_time);
+    }
+
+    /**
+     * Extends the travel times between physical hubs to their logical copies, which are numbered after them.
+     */
+    private static TravelTimeMatrix withLogicalHubs(TravelTimeMatrix physical, Map<Integer, Integer> mapPickup2Delivery, int N) {
+        // logical[i] is the logical copy of hub i, -1 if it has none
+        int num_physical = physical.size();
+        int[] logical = new int[num_physical];
+        Arrays.fill(logical, -1);
+        for (Map.Entry<Integer, Integer> e: mapPickup2Delivery.entrySet()) {
+            logical[e.getKey()] = e.getValue();
         }
 
-        _mapPickup2Delivery = new HashMap<>();
-        for (MappedRequest mapped_req: requests) {
-            Request req = _mapRequest.get(new Pair<>(mapped_req.from_hub, mapped_req.to_hub));
+        // the diagonal, also between a hub and its logical copy, is 0
+        TravelTimeMatrix travel_time = new TravelTimeMatrix(N, Parameters.OFF_HEAP_TRAVEL_TIME, 0);
+        for (int i=0; i<num_physical; i++) {
+            for (int j=0; j<num_physical; j++) {
+                if (i != j) {
+                    double time_val = physical.get(i, j);
 
-            if (pickup_points.contains(mapped_req.to_hub)) {
-                Integer logic_point = _mapPickup2Delivery.get(mapped_req.to_hub);
+                    travel_time.set(i, j, time_val);
 
-                if (logic_point == null) {
-                    logic_point = N++;
-                    _mapPickup2Delivery.put(mapped_req.to_hub, logic_point);
-                    _hubIndex2hubID.put(logic_point, input_data.hubs.get(mapped_req.to_hub).getHubID());
-                }
+                    if (logical[i] >= 0) {
+                        travel_time.set(logical[i], j, time_val);
+                    }
+
+                    if (logical[j] >= 0) {
+                        travel_time.set(i, logical[j], time_val);
+                    }
 
-                mapped_req.to_hub = logic_point;
+                    if (logical[i] >= 0 && logical[j] >= 0) {
+                        travel_time.set(logical[i], logical[j], time_val);
+                    }
+                }
             }
+        }
+        return travel_time;
+    }
+
+    /**
+     * Builds an instance from its parsed parts, the lookup maps are derived here. Used by parseInput() and by
+     * InstanceSnapshot, which stores exactly these parts.
+     *
+     * @param requests the mapped requests, in the order of input_data.requests
+     */
+    MappedData(InputData input_data, Map<Integer, Integer> mapPickup2Delivery, List<Long> start_times,
+               List<MappedRequest> requests, TravelTimeMatrix travel_time) {
+        this(input_data, mapPickup2Delivery, start_times, requests, travel_time, null);
+    }
+
+    private MappedData(InputData input_data, Map<Integer, Integer> mapPickup2Delivery, List<Long> start_times,
+                       List<MappedRequest> requests, TravelTimeMatrix travel_time, ShortestPathClosure closure) {
+        input = input_data;
+        N = input_data.hubs.size() + mapPickup2Delivery.size();
+        K = input_data.trucks.size();
+        this.travel_time = travel_time;
+        this.closure = closure;
 
-            _mapRequest.put(new Pair<>(mapped_req.from_hub, mapped_req.to_hub), req);
+        HashMap<String, Integer> hubID2HubIndex = new HashMap<>();
+        HashMap<Integer, String> hubIndex2hubID = new HashMap<>();
+        for (int i=0; i<input_data.hubs.size(); i++) {
+            hubID2HubIndex.put(input_data.hubs.get(i).getHubID(), i);
+            hubIndex2hubID.put(i, input_data.hubs.get(i).getHubID());
+        }
+        for (Map.Entry<Integer, Integer> e: mapPickup2Delivery.entrySet()) {
+            hubIndex2hubID.put(e.getValue(), input_data.hubs.get(e.getKey()).getHubID());
         }
 
-        forbiddenPoints = new ArrayList<>();
+        HashMap<String, Integer> truckID2TruckIndex = new HashMap<>();
+        ArrayList<Double> capacities = new ArrayList<>();
+        ArrayList<Integer> locations = new ArrayList<>();
+        ArrayList<List<Integer>> forbidden_points = new ArrayList<>();
         for (int i=0; i<K; i++) {
-            if (input_data.trucks.get(i).getForbiddenPoints() == null) {
-                forbiddenPoints.add(null);
+            Truck truck = input_data.trucks.get(i);
+            truckID2TruckIndex.put(truck.getTruckID(), i);
+            capacities.add(truck.getCapacity());
+            locations.add(hubID2HubIndex.get(truck.getLocation()));
+
+            if (truck.getForbiddenPoints() == null) {
+                forbidden_points.add(null);
             } else {
                 ArrayList<Integer> fbp = new ArrayList<>();
-                for (String point: input_data.trucks.get(i).getForbiddenPoints()) {
-                    fbp.add(_hubID2HubIndex.get(point));
-                    fbp.add(_mapPickup2Delivery.get(_hubID2HubIndex.get(point)));
+                for (String point: truck.getForbiddenPoints()) {
+                    fbp.add(hubID2HubIndex.get(point));
+                    fbp.add(mapPickup2Delivery.get(hubID2HubIndex.get(point)));
                 }
 
-                forbiddenPoints.add(fbp);
+                forbidden_points.add(Collections.unmodifiableList(fbp));
             }
         }
 
-        travel_time = new double[N][N];
-        for (int i=0; i<input_data.hubs.size(); i++) {
-            for (int j=0; j<input_data.hubs.size(); j++) {
-                if (i != j) {
-                    Pair<String, String> key = new Pair<>(input_data.hubs.get(i).getHubID(), input_data.hubs.get(j).getHubID());
-                    Long time = input_data.travel_time.get(key);
-                    long time_val = time == null ? -1 : time;
+        HashMap<Pair<Integer, Integer>, Request> mapRequest = new HashMap<>();
+        HashMap<String, Integer> requestID2RequestIndex = new HashMap<>();
+        for (int r=0; r<requests.size(); r++) {
+            mapRequest.put(new Pair<>(requests.get(r).from_hub, requests.get(r).to_hub), input_data.requests.get(r));
+            if (requests.get(r).id != null) {
+                requestID2RequestIndex.putIfAbsent(requests.get(r).id, r);
+            }
+        }
 
-                    Integer logical_i = _mapPickup2Delivery.get(i);
-                    Integer logical_j = _mapPickup2Delivery.get(j);
+        capacity = Collections.unmodifiableList(capacities);
+        truck_location = Collections.unmodifiableList(locations);
+        forbiddenPoints = Collections.unmodifiableList(forbidden_points);
+        startWorkingTime = Collections.unmodifiableList(new ArrayList<>(start_times));
+        this.requests = Collections.unmodifiableList(new ArrayList<>(requests));
+        _hubID2HubIndex = Collections.unmodifiableMap(hubID2HubIndex);
+        _hubIndex2hubID = Collections.unmodifiableMap(hubIndex2hubID);
+        _truckID2TruckIndex = Collections.unmodifiableMap(truckID2TruckIndex);
+        _mapRequest = Collections.unmodifiableMap(mapRequest);
+        _requestID2RequestIndex = Collections.unmodifiableMap(requestID2RequestIndex);
+        _mapPickup2Delivery = Collections.unmodifiableMap(new HashMap<>(mapPickup2Delivery));
+    }
 
-                    travel_time[i][j] = time_val;
+    /**
+     * Returns a copy of the instance with one more request, served after the existing ones. The hubs of the
+     * request must keep their role: a delivery to a hub where boxes are picked up goes to its logical copy,
+     * which must exist already, and a hub that received deliveries cannot become a pickup point. Otherwise the
+     * logical hubs change and the instance must be parsed again.
+     */
+    public MappedData withRequest(Request req) {
+        Integer from_hub = _hubID2HubIndex.get(req.getPickupPoint());
+        Integer to_hub = _hubID2HubIndex.get(req.getDeliveryPoint());
+        if (from_hub == null || to_hub == null || from_hub.equals(to_hub)) {
+            throw new IllegalArgumentException("Request " + req.getRequestID() + " goes from " + req.getPickupPoint() + " to " + req.getDeliveryPoint());
+        }
 
-                    if (logical_i != null) {
-                        travel_time[logical_i][j] = time_val;
-                    }
+        boolean from_is_pickup = truck_location.contains(from_hub);
+        boolean from_gets_deliveries = false;
+        boolean to_is_pickup = truck_location.contains(to_hub);
+        for (MappedRequest r: requests) {
+            from_is_pickup |= r.from_hub == from_hub;
+            from_gets_deliveries |= r.to_hub == from_hub;
+            to_is_pickup |= r.from_hub == to_hub;
+        }
+        if (!from_is_pickup && from_gets_deliveries) {
+            throw new IllegalArgumentException("Request " + req.getRequestID() + " turns " + req.getPickupPoint() + " into a pickup point, parse the instance again");
+        }
+        if (_mapPickup2Delivery.containsKey(to_hub)) {
+            to_hub = _mapPickup2Delivery.get(to_hub);
+        } else if (to_is_pickup) {
+            throw new IllegalArgumentException("Request " + req.getRequestID() + " needs a logical copy of " + req.getDeliveryPoint() + ", parse the instance again");
+        }
 
-                    if (logical_j != null) {
-                        travel_time[i][logical_j] = time_val;
-                    }
+        SimpleDateFormat formatter = new SimpleDateFormat(TIME_PATTERN);
+        ArrayList<MappedRequest> new_requests = new ArrayList<>(requests);
+        try {
+            new_requests.add(new MappedRequest(req.getRequestID(), from_hub, formatter.parse(req.getPickupDateTime()).getTime(),
+                    to_hub, formatter.parse(req.getDeliveryDateTime()).getTime(), req.getDemand()));
+        } catch (ParseException e) {
+            e.printStackTrace();
+            throw new RuntimeException(e);
+        }
 
-                    if (logical_i != null && logical_j != null) {
-                        travel_time[logical_i][logical_j] = time_val;
-                    }
-                }
+        InputData new_input = copyInput();
+        new_input.requests.add(req);
+        return new MappedData(new_input, _mapPickup2Delivery, startWorkingTime, new_requests, travel_time, closure);
+    }
+
+    /**
+     * Returns a copy of the instance without request r, the requests after r move one index down.
+     */
+    public MappedData withoutRequest(int r) {
+        ArrayList<MappedRequest> new_requests = new ArrayList<>(requests);
+        new_requests.remove(r);
+        InputData new_input = copyInput();
+        new_input.requests.remove(r);
+        return new MappedData(new_input, _mapPickup2Delivery, startWorkingTime, new_requests, travel_time, closure);
+    }
+
+    /**
+     * Returns a copy of the instance where truck k has the given capacity, 0 takes the truck out of service.
+     */
+    public MappedData withTruckCapacity(int k, double capacity) {
+        InputData new_input = copyInput();
+        Truck truck = copyTruck(new_input.trucks.get(k));
+        truck.setCapacity(capacity);
+        new_input.trucks.set(k, truck);
+        return new MappedData(new_input, _mapPickup2Delivery, startWorkingTime, requests, travel_time, closure);
+    }
+
+    /**
+     * Returns a copy of the instance where truck k starts working at time_ms.
+     */
+    public MappedData withStartWorkingTime(int k, long time_ms) {
+        InputData new_input = copyInput();
+        Truck truck = copyTruck(new_input.trucks.get(k));
+        truck.setStartWorkingTime(new SimpleDateFormat(TIME_PATTERN).format(new Date(time_ms)));
+        new_input.trucks.set(k, truck);
+        ArrayList<Long> start_times = new ArrayList<>(startWorkingTime);
+        start_times.set(k, time_ms);
+        return new MappedData(new_input, _mapPickup2Delivery, start_times, requests, travel_time, closure);
+    }
+
+    /**
+     * Returns a copy of the instance where the travel time from hub i to hub j, and between their logical
+     * copies, is the given time in seconds, TravelTimeMatrix.MISSING if there is no direct path any more.
+     * i and j are physical hubs. An instance closed by withShortestPaths() cannot be changed, as other
+     * shortest paths may pass through the arc: change the original instance and close it again.
+     *
+     * @throws IllegalStateException if the instance is closed by withShortestPaths()
+     */
+    public MappedData withTravelTime(int i, int j, double time) {
+        if (closure != null) {
+            throw new IllegalStateException("The travel times are closed by shortest paths, change the instance before withShortestPaths()");
+        }
+        TravelTimeMatrix new_travel_time = travel_time.copy();
+        for (int u: new int[] {i, _mapPickup2Delivery.getOrDefault(i, i)}) {
+            for (int v: new int[] {j, _mapPickup2Delivery.getOrDefault(j, j)}) {
+                new_travel_time.set(u, v, time);
             }
         }
 
-        for (int i=0; i<N; i++) {
-            for (int j=0; j<N; j++) {
-                System.out.print(travel_time[i][j] + "\t");
+        InputData new_input = copyInput();
+        if (new_input.travel_time != null) {
+            new_input.travel_time = new_input.travel_time.copy();
+            new_input.travel_time.set(i, j, time);
+        }
+        return new MappedData(new_input, _mapPickup2Delivery, startWorkingTime, requests, new_travel_time);
+    }
+
+    /**
+     * Returns a copy of the instance where the travel time between two hubs is the shortest path between
+     * them, see ShortestPathClosure, so hubs without direct path are joined and the models get the arcs
+     * instead of forbidding them. resolveOutput() inserts the hubs passed through between the stops of
+     * the routes, without any operation. Only the hubs that no truck is forbidden to visit are passed through.
+     */
+    public MappedData withShortestPaths() {
+        int num_physical = input.hubs.size();
+        TravelTimeMatrix physical = new TravelTimeMatrix(num_physical, false);
+        for (int i=0; i<num_physical; i++) {
+            for (int j=0; j<num_physical; j++) {
+                physical.set(i, j, travel_time.get(i, j));
             }
-            System.out.println();
         }
+        boolean[] transit = new boolean[num_physical];
+        Arrays.fill(transit, true);
+        for (List<Integer> points: forbiddenPoints) {
+            if (points != null) {
+                for (Integer p: points) {
+                    if (p != null && p < num_physical) {
+                        transit[p] = false;
+                    }
+                }
+            }
+        }
+
+        ShortestPathClosure new_closure = new ShortestPathClosure(physical, transit, Parameters.CLOSURE_THREADS);
+        InputData new_input = copyInput();
+        new_input.travel_time = new_closure.toMatrix(Parameters.OFF_HEAP_TRAVEL_TIME);
+        return new MappedData(new_input, _mapPickup2Delivery, startWorkingTime, requests,
+                withLogicalHubs(new_input.travel_time, _mapPickup2Delivery, N), new_closure);
     }
 
-    public static Solution resolveOutput(MappedSolution raw_solution) {
+    /**
+     * The copy has its own lists of trucks and requests, the hubs, trucks and requests themselves are shared.
+     */
+    private InputData copyInput() {
+        InputData copy = new InputData();
+        copy.hubs = input.hubs;
+        copy.travel_time = input.travel_time;
+        copy.trucks = new ArrayList<>(input.trucks);
+        copy.requests = new ArrayList<>(input.requests);
+        return copy;
+    }
+
+    private static Truck copyTruck(Truck truck) {
+        Truck copy = new Truck();
+        copy.setTruckID(truck.getTruckID());
+        copy.setLocation(truck.getLocation());
+        copy.setStartWorkingTime(truck.getStartWorkingTime());
+        copy.setCapacity(truck.getCapacity());
+        copy.setForbiddenPoints(truck.getForbiddenPoints());
+        return copy;
+    }
+
+    /**
+     * Returns the travel time from (logical) hub i to hub j in seconds, -1 if there is no direct path.
+     */
+    public double travelTime(int i, int j) {
+        return travel_time.get(i, j);
+    }
+
+    public Solution resolveOutput(MappedSolution raw_solution) {
         Solution solution = new Solution();
 
         ArrayList<ArrayList<Integer>> raw_routes = raw_solution.routes;
@@ -205,7 +433,7 @@ public class MappedData {
 
                 for (int i=0; i<raw_routes.get(r).size(); i++) {
                     int hub_idx = raw_routes.get(r).get(i);
-                    if (hub_idx >= data.hubs.size()) {
+                    if (hub_idx >= input.hubs.size()) {
                         for (int p: _mapPickup2Delivery.keySet()) {
                             if (_mapPickup2Delivery.get(p) == hub_idx) {
                                 hub_idx = p;
@@ -213,22 +441,23 @@ public class MappedData {
                             }
                         }
                     }
-                    path.add(data.hubs.get(hub_idx));
+                    if (closure != null && i > 0) {
+                        for (int transit_hub: closure.transitHubs(_hubID2HubIndex.get(path.get(path.size() - 1).getHubID()), hub_idx)) {
+                            path.add(input.hubs.get(transit_hub));
+                            pick_operations.add(new ArrayList<>());
+                            drop_operations.add(new ArrayList<>());
+                        }
+                    }
+                    path.add(input.hubs.get(hub_idx));
 
                     ArrayList<Request> pick = new ArrayList<>();
                     for (MappedRequest rp: raw_pick.get(r).get(i)) {
-                        Pair<Integer, Integer> key = new Pair<>(rp.from_hub, rp.to_hub);
-                        Request req = _mapRequest.get(key).clone();
-                        req.setDemand(rp.quantity);
-                        pick.add(req);
+                        pick.add(resolveRequest(rp));
                     }
 
                     ArrayList<Request> drop = new ArrayList<>();
                     for (MappedRequest rp: raw_delivery.get(r).get(i)) {
-                        Pair<Integer, Integer> key = new Pair<>(rp.from_hub, rp.to_hub);
-                        Request req = _mapRequest.get(key).clone();
-                        req.setDemand(rp.quantity);
-                        drop.add(req);
+                        drop.add(resolveRequest(rp));
                     }
 
                     pick_operations.add(pick);
@@ -236,7 +465,7 @@ public class MappedData {
                 }
 
                 Route route = new Route();
-                route.truckID = data.trucks.get(r).getTruckID();
+                route.truckID = input.trucks.get(r).getTruckID();
                 route.path = path;
                 route.pickup = pick_operations;
                 route.drop = drop_operations;
@@ -245,11 +474,30 @@ public class MappedData {
             }
         }
 
+        ArrayList<Request> unserved = new ArrayList<>();
+        if (raw_solution.unserved != null) {
+            for (MappedRequest rp: raw_solution.unserved) {
+                unserved.add(resolveRequest(rp));
+            }
+        }
+
         solution.routes = routes;
+        solution.unservedRequests = unserved;
         return solution;
     }
 
-    public static void display() {
+    /**
+     * Returns a copy of the request that rp is a part of, with the quantity of rp. The request is found by its
+     * ID, several requests may share the same hubs. Parts without ID are matched by their hubs.
+     */
+    private Request resolveRequest(MappedRequest rp) {
+        Integer r = rp.id == null ? null : _requestID2RequestIndex.get(rp.id);
+        Request req = r != null ? input.requests.get(r).clone() : _mapRequest.get(new Pair<>(rp.from_hub, rp.to_hub)).clone();
+        req.setDemand(rp.quantity);
+        return req;
+    }
+
+    public void display() {
         System.out.println("Number of HUBs: " + N);
         System.out.println("Number of Trucks: " + K);
 
@@ -264,5 +512,12 @@ public class MappedData {
         for (int i=0; i<requests.size(); i++) {
             System.out.println("\tHUB " + requests.get(i).from_hub + " (" + requests.get(i).pickupTime + ") -> HUB " + requests.get(i).to_hub + " (" + requests.get(i).deliveryTime + "): " + requests.get(i).quantity);
         }
+
+        for (int i=0; i<N; i++) {
+            for (int j=0; j<N; j++) {
+                System.out.print(travel_time.get(i, j) + "\t");
+            }
+            System.out.println();
+        }
     }
 }
@@ -5,7 +5,77 @@ import java.util.ArrayList;
 
 public class MappedSolution {
 
+    public static final double UNSERVED_PENALTY = 1e4;      // cost of one box that is not served
+
     public ArrayList<ArrayList<Integer>> routes;
     public ArrayList<ArrayList<ArrayList<MappedRequest>>> pickup;
     public ArrayList<ArrayList<ArrayList<MappedRequest>>> delivery;
+    public ArrayList<MappedRequest> unserved;       // parts of requests that are not served, null or empty if all requests are served
+
+    /**
+     * Returns the number of inter-hub movements of the solution.
+     */
+    public int moves() {
+        int moves = 0;
+        for (ArrayList<Integer> route: routes) {
+            if (route.size() > 0) {
+                moves += route.size() - 1;
+            }
+        }
+        return moves;
+    }
+
+    public double unservedQuantity() {
+        double total = 0;
+        if (unserved != null) {
+            for (MappedRequest req: unserved) {
+                total += req.quantity;
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Objective used to compare solutions of different solvers: the number of inter-hub
+     * movements plus a large penalty for every box that is not served.
+     */
+    public double objective() {
+        return moves() + UNSERVED_PENALTY * unservedQuantity();
+    }
+
+    /**
+     * Returns a copy of the solution where hub i is renumbered node[i], in the routes and in the requests.
+     */
+    MappedSolution withHubs(int[] node) {
+        MappedSolution solution = new MappedSolution();
+        solution.routes = new ArrayList<>();
+        solution.pickup = new ArrayList<>();
+        solution.delivery = new ArrayList<>();
+        for (int k=0; k<routes.size(); k++) {
+            ArrayList<Integer> route = new ArrayList<>();
+            ArrayList<ArrayList<MappedRequest>> pick = new ArrayList<>();
+            ArrayList<ArrayList<MappedRequest>> drop = new ArrayList<>();
+            for (int s=0; s<routes.get(k).size(); s++) {
+                route.add(node[routes.get(k).get(s)]);
+                pick.add(withHubs(pickup.get(k).get(s), node));
+                drop.add(withHubs(delivery.get(k).get(s), node));
+            }
+            solution.routes.add(route);
+            solution.pickup.add(pick);
+            solution.delivery.add(drop);
+        }
+        solution.unserved = withHubs(unserved, node);
+        return solution;
+    }
+
+    private static ArrayList<MappedRequest> withHubs(ArrayList<MappedRequest> requests, int[] node) {
+        if (requests == null) {
+            return null;
+        }
+        ArrayList<MappedRequest> result = new ArrayList<>(requests.size());
+        for (MappedRequest req: requests) {
+            result.add(new MappedRequest(req.id, node[req.from_hub], node[req.to_hub], req.quantity));
+        }
+        return result;
+    }
 }
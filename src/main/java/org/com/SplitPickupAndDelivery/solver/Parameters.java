@@ -4,4 +4,21 @@ public class Parameters {
 
     public static long TIME_LIMIT_S = 60;
     public static int NUMBER_OF_CPUs = 1;
+    public static boolean USE_WARM_START = true;        // hint the MILP with the solution of the insertion heuristic
+    public static int CP_SAT_WORKERS = Runtime.getRuntime().availableProcessors();      // number of parallel search workers of CP-SAT
+    public static int PORTFOLIO_THREADS = Runtime.getRuntime().availableProcessors();   // number of strategies run in parallel by the portfolio solver
+    public static int DECOMPOSITION_THREADS = Runtime.getRuntime().availableProcessors();   // number of regions solved in parallel by the geographic decomposition
+    public static int DECOMPOSITION_REGIONS = 0;            // solve by GeographicDecomposition into this many regions instead of the MILP, 0 or 1 to solve the instance as a whole
+    public static int BATCH_THREADS = Runtime.getRuntime().availableProcessors();   // number of instances solved in parallel in batch mode
+    public static int BATCH_IO_THREADS = 4;                                         // number of workbooks read or written in parallel in batch mode
+    public static boolean OFF_HEAP_TRAVEL_TIME = false;     // keep the travel time matrices in direct buffers, outside of the Java heap
+    public static long ROLLING_WINDOW_S = 4 * 3600;         // length of a window of the rolling horizon
+    public static long ROLLING_COMMIT_S = 2 * 3600;         // part of a window whose plan is kept, the next window starts that much later
+    public static boolean USE_SOLUTION_CACHE = false;       // reuse the solutions of instances solved before, see SolutionCache
+    public static String SOLUTION_CACHE_DIR = "cache";
+    public static long SOLUTION_CACHE_MB = 64;              // the least recently used solutions are deleted above this size
+    public static boolean USE_PRESOLVE = true;              // remove useless hubs, arcs and assignments before building the MILP, see Presolve
+    public static boolean USE_SHORTEST_PATH_CLOSURE = false;    // join the hubs without direct path through other hubs, see ShortestPathClosure
+    public static double ROUTING_CHUNK_FRACTION = 0.25;     // the routing backend splits the requests into chunks of at most this part of the largest truck
+    public static int CLOSURE_THREADS = Runtime.getRuntime().availableProcessors();     // number of threads of the shortest path closure
 }
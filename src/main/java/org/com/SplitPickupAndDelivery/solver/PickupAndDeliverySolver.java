@@ -0,0 +1,61 @@
+package org.com.SplitPickupAndDelivery.solver;
+
+import java.util.List;
+
+/**
+ * Common interface of the solvers of the split pickup and delivery problem.
+ */
+public interface PickupAndDeliverySolver {
+
+    /**
+     * Solves the mapped instance and returns the best solution found, or null if there is none.
+     */
+    MappedSolution solve(boolean verbose);
+
+    /**
+     * Sets the time budget of the next call of solve().
+     */
+    void setTimeLimit(long time_limit_ms);
+
+    /**
+     * Asks a running solve() to stop as soon as possible and return its best solution.
+     */
+    default void interrupt() {
+    }
+
+    /**
+     * Returns true if the last call of solve() proved that its solution is optimal.
+     */
+    default boolean isOptimal() {
+        return false;
+    }
+
+    /**
+     * Returns the lower bound on the number of moves proved by the last call of solve(), NaN if the
+     * solver does not compute bounds.
+     */
+    default double bestBound() {
+        return Double.NaN;
+    }
+
+    /**
+     * Gives the solver a holder where it publishes its improving solutions while it runs.
+     */
+    default void setIncumbentHolder(IncumbentHolder holder) {
+    }
+
+    /**
+     * Gives the solver the routes of a solution of a similar instance, e.g. the same network and fleet with
+     * other requests, as sequences of hub IDs per truck. Solvers that start from the insertion heuristic
+     * insert the requests along these routes first and keep the result if it beats the plain insertion.
+     */
+    default void setSeedRoutes(List<List<String>> seed_routes) {
+    }
+
+    /**
+     * Gives the solver the metrics where it records the build, solve and extract phases of the next
+     * call of solve(), the size of its model and the statistics of its search.
+     */
+    default void setMetrics(SolveMetrics metrics) {
+    }
+}
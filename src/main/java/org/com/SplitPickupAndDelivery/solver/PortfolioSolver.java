@@ -0,0 +1,161 @@
+package org.com.SplitPickupAndDelivery.solver;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * The PortfolioSolver class runs several solvers of the split pickup and delivery problem with
+ * time constraints in parallel on the same instance: the insertion heuristic, copies of the
+ * MILP with different SCIP settings and random seeds, and the ALNS with different seeds. The
+ * solvers share an IncumbentHolder where they publish their improving solutions. The portfolio
+ * stops all of them when the time limit is reached or when one MILP proves optimality, and
+ * returns the best solution found.
+ */
+public class PortfolioSolver implements PickupAndDeliverySolver {
+
+    private static final long GRACE_MS = 5000;      // time given to the solvers to return after being interrupted
+
+    // SCIP settings of the MILP copies: default, few cutting plane rounds, aggressive primal heuristics
+    private static final String[] MILP_SETTINGS = {
+            "",
+            "separating/maxrounds = 1\nseparating/maxroundsroot = 5\n",
+            "heuristics/rins/freq = 5\nheuristics/localbranching/freq = 10\n"
+    };
+
+    private int num_threads;
+    private long time_limit_ms;
+    private IncumbentHolder holder;
+    private ArrayList<PickupAndDeliverySolver> strategies;
+    private ArrayList<String> names;
+
+    public PortfolioSolver(MappedData data) {
+        this(data, Parameters.PORTFOLIO_THREADS);
+    }
+
+    public PortfolioSolver(MappedData data, int num_threads) {
+        this.num_threads = Math.max(1, num_threads);
+        time_limit_ms = 1000 * Parameters.TIME_LIMIT_S;
+        holder = new IncumbentHolder();
+        strategies = new ArrayList<>();
+        names = new ArrayList<>();
+
+        // the insertion heuristic returns within milliseconds and frees its thread for the others
+        add("insertion", new InsertionHeuristic(data));
+
+        int num_milp = this.num_threads == 1 ? 0 : Math.min(MILP_SETTINGS.length, Math.max(1, this.num_threads / 4));
+        for (int m=0; m<num_milp; m++) {
+            MILPPickupAndDeliveryWithTimeConstraints milp = new MILPPickupAndDeliveryWithTimeConstraints(data);
+            milp.setSolverParameters(MILP_SETTINGS[m] + "randomization/randomseedshift = " + m + "\n");
+            add("MILP-" + m, milp);
+        }
+
+        for (int a=0; a<this.num_threads-num_milp; a++) {
+            add("ALNS-" + a, new ALNSPickupAndDelivery(data, a));
+        }
+    }
+
+    private void add(String name, PickupAndDeliverySolver solver) {
+        solver.setIncumbentHolder(holder);
+        strategies.add(solver);
+        names.add(name);
+    }
+
+    public void setTimeLimit(long time_limit_ms) {
+        this.time_limit_ms = time_limit_ms;
+    }
+
+    public void setSeedRoutes(List<List<String>> seed_routes) {
+        for (PickupAndDeliverySolver solver: strategies) {
+            solver.setSeedRoutes(seed_routes);
+        }
+    }
+
+    public void interrupt() {
+        for (PickupAndDeliverySolver solver: strategies) {
+            solver.interrupt();
+        }
+    }
+
+    public boolean isOptimal() {
+        return holder.isOptimal();
+    }
+
+    /**
+     * Returns the holder of the best solution, with the history of the improvements.
+     */
+    public IncumbentHolder getIncumbentHolder() {
+        return holder;
+    }
+
+    public MappedSolution solve(boolean verbose) {
+        long start = System.currentTimeMillis();
+        long deadline = start + time_limit_ms;
+        System.out.println("Portfolio of " + strategies.size() + " strategies on " + num_threads + " threads is running...");
+
+        ExecutorService pool = Executors.newFixedThreadPool(num_threads);
+        ArrayList<Future<?>> futures = new ArrayList<>();
+        for (int s=0; s<strategies.size(); s++) {
+            PickupAndDeliverySolver solver = strategies.get(s);
+            String name = names.get(s);
+            futures.add(pool.submit(() -> {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0 || holder.isOptimal()) {
+                    return;
+                }
+
+                solver.setTimeLimit(remaining);
+                holder.offer(solver.solve(false), name);
+                if (solver.isOptimal()) {
+                    holder.markOptimal();
+                    interrupt();
+                }
+            }));
+        }
+        pool.shutdown();
+
+        try {
+            for (Future<?> future: futures) {
+                long remaining = deadline + GRACE_MS - System.currentTimeMillis();
+                try {
+                    future.get(Math.max(0, remaining), TimeUnit.MILLISECONDS);
+                } catch (TimeoutException e) {
+                    interrupt();
+                    break;
+                } catch (ExecutionException e) {
+                    // a failing strategy does not stop the others
+                    e.getCause().printStackTrace();
+                }
+            }
+            interrupt();
+            if (!pool.awaitTermination(GRACE_MS, TimeUnit.MILLISECONDS)) {
+                System.err.println("Some strategies of the portfolio did not stop in time");
+            }
+        } catch (InterruptedException e) {
+            e.printStackTrace();
+            throw new RuntimeException(e);
+        }
+
+        IncumbentHolder.Incumbent best = holder.get();
+        if (best == null) {
+            System.out.println("No feasible solution found");
+            return null;
+        }
+
+        System.out.println("Portfolio finished after " + (System.currentTimeMillis() - start) + " ms: " + best.solution.moves()
+                + " moves, " + best.solution.unservedQuantity() + " boxes unserved, found by " + best.source
+                + (holder.isOptimal() ? " (optimal)." : "."));
+        if (verbose) {
+            for (IncumbentHolder.Incumbent inc: holder.history()) {
+                System.out.println("\t" + inc.time_ms + " ms: " + inc.objective + " by " + inc.source);
+            }
+        }
+
+        return best.solution;
+    }
+}
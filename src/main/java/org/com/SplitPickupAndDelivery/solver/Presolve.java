@@ -0,0 +1,321 @@
+package org.com.SplitPickupAndDelivery.solver;
+
+import org.com.SplitPickupAndDelivery.models.Hub;
+import org.com.SplitPickupAndDelivery.models.InputData;
+import org.com.SplitPickupAndDelivery.models.TravelTimeMatrix;
+import org.com.SplitPickupAndDelivery.models.Truck;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The Presolve class shrinks an instance before the MILP with time constraints is built, see
+ * MILPPickupAndDeliveryWithTimeConstraints(Presolve). None of the reductions removes an optimal solution.
+ *
+ * - A hub where no request starts or ends and no truck is parked is removed if no truck can pass through it,
+ *   or if every detour through it is dominated by a direct path, which has one move less and is not slower.
+ *   The other hubs are renumbered in reduced().
+ * - A truck does not get the arc i -> j if it cannot reach j before the latest useful arrival at j: its
+ *   earliest arrival at i plus the travel time is after the last moment from which some request can still be
+ *   picked up or delivered in time starting from j. Such an arc can only lead to a route that serves
+ *   nothing more, and the route that goes home from i instead has fewer moves.
+ * - A truck does not serve a request whose hubs it must not visit, or whose pickup hub it cannot reach in
+ *   time, or whose delivery hub it cannot reach before the delivery deadline.
+ *
+ * The earliest arrivals follow the shortest paths of each truck avoiding its forbidden hubs. The latest
+ * useful arrivals and the distances between the hubs of a request use the shortest paths through all hubs,
+ * which are never longer, so the bounds stay valid for every truck. restore() maps a solution of the
+ * reduced instance back to the hubs of the original one.
+ */
+public class Presolve {
+
+    private static final double EPS_MS = 1;         // slack of the time comparisons, in milliseconds
+
+    private final MappedData original;
+    private final MappedData reduced;
+    private final int[] node;                   // node[i] is the hub of the original instance for hub i of the reduced one
+    private final boolean[][] forbidden;        // forbidden[k][i] is true if truck k must not visit hub i
+    private final double[][] earliest;          // earliest[k][i] is the earliest arrival of truck k at hub i, in ms
+    private final double[] latest;              // latest[i] is the latest arrival at hub i from which something can be served
+    private final double[] distance;            // distance[r] is the shortest travel time of request r, in ms
+
+    public int removed_hubs;
+    public int removed_arcs;                    // hub-to-hub arcs of the trucks that cannot be used in time
+    public int removed_assignments;             // truck-request pairs that cannot be served
+
+    public Presolve(MappedData data) {
+        long start = System.currentTimeMillis();
+        original = data;
+
+        boolean[] keep = keep_hubs(data);
+        ArrayList<Integer> kept = new ArrayList<>();
+        for (int i=0; i<keep.length; i++) {
+            if (keep[i]) {
+                kept.add(i);
+            }
+        }
+        removed_hubs = keep.length - kept.size();
+        if (removed_hubs == 0) {
+            reduced = data;
+            node = new int[data.N];
+            for (int i=0; i<data.N; i++) {
+                node[i] = i;
+            }
+        } else {
+            reduced = reduce(data, kept);
+            node = new int[reduced.N];
+            for (int a=0; a<kept.size(); a++) {
+                node[a] = kept.get(a);
+            }
+            for (Map.Entry<Integer, Integer> e: reduced._mapPickup2Delivery.entrySet()) {
+                node[e.getValue()] = data._mapPickup2Delivery.get(kept.get(e.getKey()));
+            }
+        }
+
+        int N = reduced.N;
+        int K = reduced.K;
+        forbidden = new boolean[K][N];
+        earliest = new double[K][];
+        for (int k=0; k<K; k++) {
+            if (reduced.forbiddenPoints.get(k) != null) {
+                for (Integer p: reduced.forbiddenPoints.get(k)) {
+                    if (p != null) {
+                        forbidden[k][p] = true;
+                    }
+                }
+            }
+            double[] init = new double[N];
+            Arrays.fill(init, Double.POSITIVE_INFINITY);
+            init[reduced.truck_location.get(k)] = reduced.startWorkingTime.get(k);
+            earliest[k] = shortest(reduced, init, forbidden[k], false);
+        }
+
+        // shortest travel time of each request, one search per pickup hub
+        List<MappedRequest> requests = reduced.requests;
+        distance = new double[requests.size()];
+        HashMap<Integer, double[]> from_pickup = new HashMap<>();
+        for (int r=0; r<requests.size(); r++) {
+            int from = requests.get(r).from_hub;
+            if (!from_pickup.containsKey(from)) {
+                double[] init = new double[N];
+                Arrays.fill(init, Double.POSITIVE_INFINITY);
+                init[from] = 0;
+                from_pickup.put(from, shortest(reduced, init, new boolean[N], false));
+            }
+            distance[r] = from_pickup.get(from)[requests.get(r).to_hub];
+        }
+
+        // latest[j] = max over the hubs x of (deadline at x - travel time from j to x), one backward search
+        // from all the hubs at once, starting at minus their deadline
+        double[] init = new double[N];
+        Arrays.fill(init, Double.POSITIVE_INFINITY);
+        for (int r=0; r<requests.size(); r++) {
+            MappedRequest req = requests.get(r);
+            init[req.from_hub] = Math.min(init[req.from_hub], -Math.min(req.pickupTime, req.deliveryTime - distance[r]));
+            init[req.to_hub] = Math.min(init[req.to_hub], -req.deliveryTime);
+        }
+        latest = shortest(reduced, init, new boolean[N], true);
+        for (int i=0; i<N; i++) {
+            latest[i] = -latest[i];
+        }
+
+        for (int k=0; k<K; k++) {
+            for (int i=0; i<N; i++) {
+                for (int j=0; j<N; j++) {
+                    if (i != j && !forbidden[k][i] && !forbidden[k][j] && reduced.travelTime(i, j) >= 0 && !usableArc(k, i, j)) {
+                        removed_arcs++;
+                    }
+                }
+            }
+            for (int r=0; r<requests.size(); r++) {
+                if (!canServe(k, r)) {
+                    removed_assignments++;
+                }
+            }
+        }
+
+        System.out.println("Presolve: " + removed_hubs + " hubs removed, " + removed_arcs + " arcs and " + removed_assignments
+                + " truck-request pairs ruled out, " + (System.currentTimeMillis() - start) + " ms.");
+    }
+
+    /**
+     * The instance without the removed hubs. Its requests and trucks are those of the original instance.
+     */
+    public MappedData reduced() {
+        return reduced;
+    }
+
+    /**
+     * Returns true if truck k may use the arc from hub i to hub j of the reduced instance.
+     */
+    boolean usableArc(int k, int i, int j) {
+        return !forbidden[k][i] && !forbidden[k][j] && reduced.travelTime(i, j) >= 0
+                && earliest[k][i] + 1e3 * reduced.travelTime(i, j) <= latest[j] + EPS_MS;
+    }
+
+    /**
+     * Returns true if truck k may serve a part of request r.
+     */
+    boolean canServe(int k, int r) {
+        MappedRequest req = reduced.requests.get(r);
+        return !forbidden[k][req.from_hub] && !forbidden[k][req.to_hub]
+                && earliest[k][req.from_hub] <= req.pickupTime + EPS_MS
+                && earliest[k][req.from_hub] + distance[r] <= req.deliveryTime + EPS_MS
+                && earliest[k][req.to_hub] <= req.deliveryTime + EPS_MS;
+    }
+
+    /**
+     * Maps a solution of the reduced instance to the hubs of the original instance.
+     */
+    public MappedSolution restore(MappedSolution solution) {
+        if (solution == null || reduced == original) {
+            return solution;
+        }
+        return solution.withHubs(node);
+    }
+
+    /**
+     * Marks the physical hubs to keep: those where a request starts or ends or a truck is parked, and those
+     * that a shorter path or a missing direct path may need. A hub is removed if every truck is forbidden to
+     * visit it, or if for every pair u -> hub -> v of kept hubs the direct path u -> v exists and is not
+     * longer. Removing the hubs one by one keeps the shortest paths between the remaining hubs.
+     */
+    private static boolean[] keep_hubs(MappedData data) {
+        int P = data.input.hubs.size();
+        boolean[] relevant = new boolean[P];
+        int[] physical = new int[data.N];
+        for (int i=0; i<data.N; i++) {
+            physical[i] = i;
+        }
+        for (Map.Entry<Integer, Integer> e: data._mapPickup2Delivery.entrySet()) {
+            physical[e.getValue()] = e.getKey();
+        }
+        for (MappedRequest req: data.requests) {
+            relevant[physical[req.from_hub]] = true;
+            relevant[physical[req.to_hub]] = true;
+        }
+        for (int location: data.truck_location) {
+            relevant[location] = true;
+        }
+
+        int[] num_forbidden = new int[P];
+        for (List<Integer> points: data.forbiddenPoints) {
+            if (points != null) {
+                for (Integer p: new HashSet<>(points)) {
+                    if (p != null && p < P) {
+                        num_forbidden[p]++;
+                    }
+                }
+            }
+        }
+
+        boolean[] keep = new boolean[P];
+        Arrays.fill(keep, true);
+        for (int h=0; h<P; h++) {
+            if (relevant[h]) {
+                continue;
+            }
+            if (data.K > 0 && num_forbidden[h] == data.K) {
+                keep[h] = false;
+                continue;
+            }
+
+            boolean dominated = true;
+            for (int u=0; u<P && dominated; u++) {
+                if (u == h || !keep[u] || data.travelTime(u, h) < 0) {
+                    continue;
+                }
+                for (int v=0; v<P; v++) {
+                    if (v == h || v == u || !keep[v] || data.travelTime(h, v) < 0) {
+                        continue;
+                    }
+                    double direct = data.travelTime(u, v);
+                    if (direct < 0 || direct > data.travelTime(u, h) + data.travelTime(h, v)) {
+                        dominated = false;
+                        break;
+                    }
+                }
+            }
+            keep[h] = !dominated;
+        }
+        return keep;
+    }
+
+    /**
+     * Parses again the instance restricted to the kept physical hubs, the forbidden points of the trucks
+     * only keep the hubs that remain.
+     */
+    private static MappedData reduce(MappedData data, List<Integer> kept) {
+        InputData input = new InputData();
+        input.hubs = new ArrayList<>();
+        HashSet<String> kept_ids = new HashSet<>();
+        for (int i: kept) {
+            Hub hub = data.input.hubs.get(i);
+            input.hubs.add(hub);
+            kept_ids.add(hub.getHubID());
+        }
+
+        input.travel_time = new TravelTimeMatrix(kept.size(), Parameters.OFF_HEAP_TRAVEL_TIME);
+        for (int a=0; a<kept.size(); a++) {
+            for (int b=0; b<kept.size(); b++) {
+                if (a != b) {
+                    input.travel_time.set(a, b, data.travelTime(kept.get(a), kept.get(b)));
+                }
+            }
+        }
+
+        input.trucks = new ArrayList<>();
+        for (Truck truck: data.input.trucks) {
+            Truck copy = new Truck();
+            copy.setTruckID(truck.getTruckID());
+            copy.setLocation(truck.getLocation());
+            copy.setStartWorkingTime(truck.getStartWorkingTime());
+            copy.setCapacity(truck.getCapacity());
+            if (truck.getForbiddenPoints() != null) {
+                ArrayList<String> points = new ArrayList<>();
+                for (String point: truck.getForbiddenPoints()) {
+                    if (kept_ids.contains(point)) {
+                        points.add(point);
+                    }
+                }
+                copy.setForbiddenPoints(points);
+            }
+            input.trucks.add(copy);
+        }
+        input.requests = new ArrayList<>(data.input.requests);
+        return MappedData.parseInput(input);
+    }
+
+    /**
+     * Shortest travel times in ms from the hubs with a finite init value, which is their starting time, to
+     * every hub, or to them from every hub if backward. The blocked hubs are never entered. The matrix is
+     * dense, so the search picks the closest hub by a linear scan.
+     */
+    private static double[] shortest(MappedData data, double[] init, boolean[] blocked, boolean backward) {
+        int N = data.N;
+        double[] time = init.clone();
+        boolean[] done = new boolean[N];
+        while (true) {
+            int u = -1;
+            for (int i=0; i<N; i++) {
+                if (!done[i] && time[i] < Double.POSITIVE_INFINITY && (u < 0 || time[i] < time[u])) {
+                    u = i;
+                }
+            }
+            if (u < 0) {
+                return time;
+            }
+            done[u] = true;
+            for (int v=0; v<N; v++) {
+                double t = backward ? data.travelTime(v, u) : data.travelTime(u, v);
+                if (v != u && !done[v] && !blocked[v] && t >= 0 && time[u] + 1e3 * t < time[v]) {
+                    time[v] = time[u] + 1e3 * t;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,294 @@
+package org.com.SplitPickupAndDelivery.solver;
+
+import org.com.SplitPickupAndDelivery.models.*;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * The RollingHorizon class plans a day of requests window by window, so that the size of the models
+ * depends on the requests of one window and not on the whole day. A window holds the requests not served
+ * yet whose pickup deadline falls before its end. The window is solved with the trucks where the previous
+ * windows left them, then only the beginning of each route is kept: the stops reached before the commit
+ * time, up to the last one where the truck is empty. The next window starts commit_s seconds later, so
+ * consecutive windows overlap and the requests near the end of a window are planned again with the
+ * requests that follow them. The last window, which holds all the remaining requests, is kept entirely.
+ *
+ * As the trucks are empty at the end of what is kept, a truck starts every window without load.
+ *
+ * The MILP must serve every request of a window, so a request that no truck can reach in time any more, e.g.
+ * whose deadline passed while the stop serving it was dropped by the commit, is left out of the windows, see
+ * Presolve.canServe(), and reported as unserved. Otherwise every later window would be infeasible.
+ */
+public class RollingHorizon {
+
+    private InputData data;
+    private long time_limit_ms;
+    private long window_ms;
+    private long commit_ms;
+    private Function<MappedData, PickupAndDeliverySolver> factory = MILPPickupAndDeliveryWithTimeConstraints::new;
+
+    public RollingHorizon(InputData data) {
+        this.data = data;
+        time_limit_ms = 1000 * Parameters.TIME_LIMIT_S;
+        window_ms = 1000 * Parameters.ROLLING_WINDOW_S;
+        commit_ms = 1000 * Parameters.ROLLING_COMMIT_S;
+    }
+
+    public void setTimeLimit(long time_limit_ms) {
+        this.time_limit_ms = time_limit_ms;
+    }
+
+    /**
+     * @param window_s length of a window, in seconds
+     * @param commit_s part of the window whose plan is kept, and shift between two windows
+     */
+    public void setWindow(long window_s, long commit_s) {
+        if (commit_s <= 0 || commit_s > window_s) {
+            throw new IllegalArgumentException("The commit time must be in (0, " + window_s + "] s, found " + commit_s);
+        }
+        window_ms = 1000 * window_s;
+        commit_ms = 1000 * commit_s;
+    }
+
+    /**
+     * Sets the solver of the windows, the MILP with time constraints by default. A window where it
+     * finds no solution is planned by the insertion heuristic.
+     */
+    public void setSolverFactory(Function<MappedData, PickupAndDeliverySolver> factory) {
+        this.factory = factory;
+    }
+
+    public Solution solve(boolean verbose) {
+        long start = System.currentTimeMillis();
+        SimpleDateFormat formatter = new SimpleDateFormat(MappedData.TIME_PATTERN);
+        int K = data.trucks.size();
+        int R = data.requests.size();
+
+        // state of the trucks at the end of what is kept so far
+        String[] location = new String[K];
+        long[] available = new long[K];
+        ArrayList<Route> routes = new ArrayList<>();
+        for (int k=0; k<K; k++) {
+            Truck truck = data.trucks.get(k);
+            location[k] = truck.getLocation();
+            available[k] = parse(formatter, truck.getStartWorkingTime());
+
+            Route route = new Route();
+            route.truckID = truck.getTruckID();
+            route.path = new ArrayList<>();
+            route.pickup = new ArrayList<>();
+            route.drop = new ArrayList<>();
+            routes.add(route);
+        }
+
+        double[] remaining = new double[R];
+        boolean[] expired = new boolean[R];     // no truck can serve the request in time any more
+        long[] deadline = new long[R];
+        HashMap<String, Integer> request_index = new HashMap<>();
+        long last_deadline = Long.MIN_VALUE;
+        for (int r=0; r<R; r++) {
+            Request req = data.requests.get(r);
+            remaining[r] = req.getDemand();
+            deadline[r] = parse(formatter, req.getPickupDateTime());
+            request_index.put(req.getRequestID(), r);
+            last_deadline = Math.max(deadline[r], last_deadline);
+        }
+
+        long window_start = Long.MAX_VALUE;
+        for (long t: available) {
+            window_start = Math.min(t, window_start);
+        }
+
+        int window = 0;
+        while (true) {
+            long window_end = window_start + window_ms;
+            boolean last = last_deadline < window_end;
+
+            // the trucks as the previous windows left them, and the requests of the window
+            InputData sub = new InputData();
+            sub.hubs = data.hubs;
+            sub.travel_time = data.travel_time;
+            sub.trucks = new ArrayList<>();
+            for (int k=0; k<K; k++) {
+                Truck truck = data.trucks.get(k);
+                Truck copy = new Truck();
+                copy.setTruckID(truck.getTruckID());
+                copy.setLocation(location[k]);
+                copy.setStartWorkingTime(formatter.format(new Date(available[k])));
+                copy.setCapacity(truck.getCapacity());
+                copy.setForbiddenPoints(truck.getForbiddenPoints());
+                sub.trucks.add(copy);
+            }
+            ArrayList<Integer> window_requests = new ArrayList<>();
+            for (int r=0; r<R; r++) {
+                if (remaining[r] > RoutePlan.EPS && !expired[r] && deadline[r] < window_end) {
+                    window_requests.add(r);
+                }
+            }
+            sub.requests = requests(window_requests, remaining);
+
+            MappedData mapped_data = null;
+            if (!sub.requests.isEmpty()) {
+                mapped_data = MappedData.parseInput(sub);
+                Presolve presolve = new Presolve(mapped_data);
+                ArrayList<Integer> servable = new ArrayList<>();
+                for (int w=0; w<window_requests.size(); w++) {
+                    boolean can_serve = false;
+                    for (int k=0; k<K && !can_serve; k++) {
+                        can_serve = presolve.canServe(k, w);
+                    }
+                    if (can_serve) {
+                        servable.add(window_requests.get(w));
+                    } else {
+                        expired[window_requests.get(w)] = true;
+                    }
+                }
+                if (servable.size() < window_requests.size()) {
+                    System.out.println("\tWindow " + window + ": " + (window_requests.size() - servable.size())
+                            + " requests cannot be served in time any more, they are left unserved.");
+                    sub.requests = requests(servable, remaining);
+                    mapped_data = sub.requests.isEmpty() ? null : MappedData.parseInput(sub);
+                }
+            }
+
+            if (mapped_data != null) {
+                // the time left is shared by the windows left, counted as if none was empty
+                long windows_left = last ? 1 : 2 + (last_deadline - window_end) / commit_ms;
+                long budget = Math.max(0, time_limit_ms - (System.currentTimeMillis() - start)) / windows_left;
+
+                PickupAndDeliverySolver solver = factory.apply(mapped_data);
+                solver.setTimeLimit(budget);
+                MappedSolution raw_solution = solver.solve(false);
+                if (raw_solution == null) {
+                    System.out.println("\tWindow " + window + ": the solver found no solution, it is planned by the insertion heuristic.");
+                    raw_solution = new InsertionHeuristic(mapped_data).solve(false);
+                }
+                Solution solution = mapped_data.resolveOutput(raw_solution);
+
+                int kept = 0;
+                for (int k=0; k<K; k++) {
+                    kept += commit(mapped_data, raw_solution.routes.get(k), solution.routes.get(k), routes.get(k),
+                            last ? Long.MAX_VALUE : window_start + commit_ms, k, location, available, remaining, request_index);
+                }
+                if (verbose) {
+                    System.out.println("\tWindow " + window + " from " + formatter.format(new Date(window_start)) + ": "
+                            + sub.requests.size() + " requests, " + kept + " stops kept.");
+                }
+            }
+
+            if (last) {
+                break;
+            }
+            window_start += commit_ms;
+            window++;
+        }
+
+        Solution solution = new Solution();
+        solution.routes = new ArrayList<>();
+        for (Route route: routes) {
+            solution.routes.add(route.path.size() > 1 ? route : null);
+        }
+        solution.unservedRequests = new ArrayList<>();
+        for (int r=0; r<R; r++) {
+            if (remaining[r] > RoutePlan.EPS) {
+                Request req = data.requests.get(r).clone();
+                req.setDemand(remaining[r]);
+                solution.unservedRequests.add(req);
+            }
+        }
+
+        System.out.println("Rolling horizon finished after " + (window + 1) + " windows and " + (System.currentTimeMillis() - start)
+                + " ms, " + solution.unservedRequests.size() + " requests not served entirely.");
+        return solution;
+    }
+
+    /**
+     * Copies of the given requests with their remaining demand.
+     */
+    private ArrayList<Request> requests(List<Integer> indices, double[] remaining) {
+        ArrayList<Request> requests = new ArrayList<>();
+        for (int r: indices) {
+            Request req = data.requests.get(r).clone();
+            req.setDemand(remaining[r]);
+            requests.add(req);
+        }
+        return requests;
+    }
+
+    /**
+     * Appends to the route of truck k the stops of its window route reached before commit_time, up to the
+     * last one where the truck is empty, and moves the truck there. Returns the number of stops kept.
+     */
+    private int commit(MappedData mapped_data, ArrayList<Integer> hubs, Route window_route, Route route, long commit_time, int k,
+                       String[] location, long[] available, double[] remaining, HashMap<String, Integer> request_index) {
+        if (window_route == null || hubs.isEmpty()) {
+            return 0;
+        }
+
+        long arrival = available[k];
+        double load = 0;
+        int end = 0;
+        long end_arrival = arrival;
+        for (int p=0; p<hubs.size(); p++) {
+            if (p > 0) {
+                arrival += (long) Math.ceil(1e3 * mapped_data.travelTime(hubs.get(p-1), hubs.get(p)));
+            }
+            if (arrival >= commit_time) {
+                break;
+            }
+            for (Request req: window_route.pickup.get(p)) {
+                load += req.getDemand();
+            }
+            for (Request req: window_route.drop.get(p)) {
+                load -= req.getDemand();
+            }
+            if (load <= RoutePlan.EPS) {
+                end = p;
+                end_arrival = arrival;
+            }
+        }
+        if (end == 0) {
+            return 0;
+        }
+
+        // the first stop is where the truck already is, in a later window its operations join the last kept stop
+        if (route.path.isEmpty()) {
+            route.path.add(window_route.path.get(0));
+            route.pickup.add(window_route.pickup.get(0));
+            route.drop.add(window_route.drop.get(0));
+        } else {
+            route.pickup.get(route.pickup.size() - 1).addAll(window_route.pickup.get(0));
+            route.drop.get(route.drop.size() - 1).addAll(window_route.drop.get(0));
+        }
+        for (int p=1; p<=end; p++) {
+            route.path.add(window_route.path.get(p));
+            route.pickup.add(window_route.pickup.get(p));
+            route.drop.add(window_route.drop.get(p));
+        }
+        for (int p=0; p<=end; p++) {
+            for (Request req: window_route.drop.get(p)) {
+                int r = request_index.get(req.getRequestID());
+                remaining[r] = Math.max(0, remaining[r] - req.getDemand());
+            }
+        }
+
+        location[k] = window_route.path.get(end).getHubID();
+        available[k] = end_arrival;
+        return end;
+    }
+
+    private static long parse(SimpleDateFormat formatter, String time) {
+        try {
+            return formatter.parse(time).getTime();
+        } catch (ParseException e) {
+            e.printStackTrace();
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -0,0 +1,651 @@
+package org.com.SplitPickupAndDelivery.solver;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * The RoutePlan class is the working solution of the heuristic solvers. The route of truck k is
+ * route[k][0..length[k]-1], a sequence of distinct hubs starting at the truck location, and
+ * served[k][r] is the amount of request r carried by truck k. Arrival times, loads and time
+ * slacks of every route are cached and refreshed lazily after a route changes.
+ */
+class RoutePlan {
+
+    static final double EPS = 1e-6;
+    static final double TIME_WEIGHT = 1e-9;     // cost of one millisecond of driving, only breaks ties between equal numbers of moves
+    private static final double TOL = 1e-6;
+
+    /**
+     * An insertion of (a part of) request r into the route of a truck. A new pickup hub is
+     * inserted right after position pickup_pos, otherwise pickup_pos is the position where the
+     * pickup hub already is; the same holds for the delivery hub. Positions refer to the route
+     * before the insertion, and a new delivery hub at the same position as a new pickup hub
+     * goes right after it.
+     */
+    static class Insertion {
+        int truck;
+        int request;
+        int pickup_pos;
+        boolean new_pickup;
+        int delivery_pos;
+        boolean new_delivery;
+        double amount;
+        double cost;
+
+        Insertion(int truck, int request, int pickup_pos, boolean new_pickup, int delivery_pos, boolean new_delivery, double amount, double cost) {
+            this.truck = truck;
+            this.request = request;
+            this.pickup_pos = pickup_pos;
+            this.new_pickup = new_pickup;
+            this.delivery_pos = delivery_pos;
+            this.new_delivery = new_delivery;
+            this.amount = amount;
+            this.cost = cost;
+        }
+
+        boolean betterThan(Insertion other) {
+            if (other == null || cost < other.cost - 1e-12) {
+                return true;
+            }
+            return cost <= other.cost + 1e-12 && amount > other.amount + EPS;
+        }
+    }
+
+    final RouteProblem problem;
+    int[][] route;
+    int[] length;
+    double[][] served;
+    double[] unserved;          // unserved[r] is the amount of request r that no truck carries
+    int[][] operations;         // operations[k][i] is the number of requests picked up or delivered by truck k at hub i
+
+    private double[][] arrival;     // arrival[k][p] is the arrival time of truck k at the p-th hub of its route
+    private double[][] load;        // load[k][p] is the load of truck k when leaving the p-th hub of its route
+    private double[][] gap;         // gap[k][p] is the time left before the deadline of the p-th hub
+    private double[][] slack;       // slack[k][p] is the largest delay of the hubs p, p+1, ... that keeps all deadlines
+    private boolean[] dirty;
+    private int[] position;         // scratch array, position[i] is the position of hub i in the evaluated route or -1
+
+    RoutePlan(RouteProblem problem) {
+        this.problem = problem;
+        int K = problem.num_trucks;
+
+        route = new int[K][];
+        length = new int[K];
+        for (int k=0; k<K; k++) {
+            route[k] = new int[8];
+            route[k][0] = problem.location[k];
+            length[k] = 1;
+        }
+
+        served = new double[K][problem.num_requests];
+        unserved = problem.quantity.clone();
+        operations = new int[K][problem.num_hubs];
+
+        init_cache();
+    }
+
+    RoutePlan(RoutePlan other) {
+        problem = other.problem;
+        int K = problem.num_trucks;
+
+        route = new int[K][];
+        for (int k=0; k<K; k++) {
+            route[k] = other.route[k].clone();
+        }
+        length = other.length.clone();
+        served = new double[K][];
+        operations = new int[K][];
+        for (int k=0; k<K; k++) {
+            served[k] = other.served[k].clone();
+            operations[k] = other.operations[k].clone();
+        }
+        unserved = other.unserved.clone();
+
+        init_cache();
+    }
+
+    private void init_cache() {
+        int K = problem.num_trucks;
+        arrival = new double[K][0];
+        load = new double[K][0];
+        gap = new double[K][0];
+        slack = new double[K][0];
+        dirty = new boolean[K];
+        Arrays.fill(dirty, true);
+        position = new int[problem.num_hubs];
+        Arrays.fill(position, -1);
+    }
+
+    RoutePlan copy() {
+        return new RoutePlan(this);
+    }
+
+    int indexOf(int k, int hub) {
+        for (int p=0; p<length[k]; p++) {
+            if (route[k][p] == hub) {
+                return p;
+            }
+        }
+        return -1;
+    }
+
+    double[] arrival(int k) {
+        evaluate(k);
+        return arrival[k];
+    }
+
+    double[] load(int k) {
+        evaluate(k);
+        return load[k];
+    }
+
+    /**
+     * Recomputes arrival times, loads and slacks of truck k if its route has changed.
+     */
+    private void evaluate(int k) {
+        if (!dirty[k]) {
+            return;
+        }
+
+        int len = length[k];
+        int[] a = route[k];
+        if (arrival[k].length < len) {
+            int size = Math.max(len, 2 * arrival[k].length);
+            arrival[k] = new double[size];
+            load[k] = new double[size];
+            gap[k] = new double[size];
+            slack[k] = new double[size + 1];
+        }
+
+        double[] arr = arrival[k];
+        double[] ld = load[k];
+        double[] gp = gap[k];
+        double[] sl = slack[k];
+
+        arr[0] = problem.start_time[k];
+        for (int p=1; p<len; p++) {
+            arr[p] = arr[p-1] + problem.travel_time[a[p-1]][a[p]];
+        }
+
+        Arrays.fill(ld, 0, len, 0);
+        Arrays.fill(gp, 0, len, Double.POSITIVE_INFINITY);
+        for (int p=0; p<len; p++) {
+            position[a[p]] = p;
+        }
+        for (int r=0; r<problem.num_requests; r++) {
+            double s = served[k][r];
+            if (s > EPS) {
+                int pf = position[problem.from[r]];
+                int pt = position[problem.to[r]];
+                ld[pf] += s;
+                ld[pt] -= s;
+                gp[pf] = Math.min(gp[pf], problem.pickup_deadline[r]);
+                gp[pt] = Math.min(gp[pt], problem.delivery_deadline[r]);
+            }
+        }
+        for (int p=0; p<len; p++) {
+            position[a[p]] = -1;
+        }
+
+        for (int p=1; p<len; p++) {
+            ld[p] += ld[p-1];
+        }
+
+        sl[len] = Double.POSITIVE_INFINITY;
+        for (int p=len-1; p>=0; p--) {
+            gp[p] -= arr[p];
+            sl[p] = Math.min(sl[p+1], gp[p]);
+        }
+
+        dirty[k] = false;
+    }
+
+    /**
+     * Returns true if the route of truck k meets all the deadlines of the requests it serves.
+     */
+    boolean isOnTime(int k) {
+        evaluate(k);
+        return slack[k][0] >= -TOL;
+    }
+
+    /**
+     * Finds the cheapest insertion of at most q units of request r over all trucks, or null if
+     * no truck can take any part of it.
+     */
+    Insertion findInsertion(int r, double q) {
+        Insertion best = null;
+        for (int k=0; k<problem.num_trucks; k++) {
+            Insertion ins = findInsertion(k, r, q);
+            if (ins != null && ins.betterThan(best)) {
+                best = ins;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Finds the cheapest insertion of at most q units of request r into the route of truck k.
+     * Positions are scanned once per pickup position while the maximal load and the minimal
+     * time gap of the segment between pickup and delivery are maintained, so the search takes
+     * O(length^2) time.
+     */
+    Insertion findInsertion(int k, int r, double q) {
+        int from = problem.from[r];
+        int to = problem.to[r];
+        if (problem.forbidden[k][from] || problem.forbidden[k][to]) {
+            return null;
+        }
+
+        evaluate(k);
+        double cap = problem.capacity[k];
+        double pdl = problem.pickup_deadline[r];
+        double ddl = problem.delivery_deadline[r];
+        double[][] tt = problem.travel_time;
+        int len = length[k];
+        int[] a = route[k];
+        double[] arr = arrival[k];
+        double[] ld = load[k];
+        double[] gp = gap[k];
+        double[] sl = slack[k];
+
+        int pa = indexOf(k, from);
+        int pb = indexOf(k, to);
+        Insertion best = null;
+
+        if (pa >= 0 && pb >= 0) {
+            // both hubs are already visited, only the spare capacity between them matters
+            if (pb <= pa || arr[pa] > pdl + TOL || arr[pb] > ddl + TOL) {
+                return null;
+            }
+            double max_load = 0;
+            for (int p=pa; p<pb; p++) {
+                max_load = Math.max(max_load, ld[p]);
+            }
+            double amount = Math.min(q, cap - max_load);
+            return amount > EPS ? new Insertion(k, r, pa, false, pb, false, amount, 0) : null;
+        }
+
+        if (pa >= 0) {
+            // new delivery hub after position j >= pa
+            if (arr[pa] > pdl + TOL) {
+                return null;
+            }
+            double max_load = 0;
+            for (int j=pa; j<len; j++) {
+                max_load = Math.max(max_load, ld[j]);
+                double amount = Math.min(q, cap - max_load);
+                if (amount <= EPS) {
+                    break;
+                }
+
+                double t_in = tt[a[j]][to];
+                if (t_in < 0 || arr[j] + t_in > ddl + TOL) {
+                    continue;
+                }
+                double cost = problem.arcCost(a[j], to);
+                if (j + 1 < len) {
+                    double t_out = tt[to][a[j+1]];
+                    if (t_out < 0 || t_in + t_out - tt[a[j]][a[j+1]] > sl[j+1] + TOL) {
+                        continue;
+                    }
+                    cost += problem.arcCost(to, a[j+1]) - problem.arcCost(a[j], a[j+1]);
+                }
+
+                Insertion ins = new Insertion(k, r, pa, false, j, true, amount, cost);
+                if (ins.betterThan(best)) {
+                    best = ins;
+                }
+            }
+            return best;
+        }
+
+        if (pb >= 0) {
+            // new pickup hub after position i < pb, scanned backwards to grow the loaded segment
+            double max_load = 0;
+            for (int i=pb-1; i>=0; i--) {
+                max_load = Math.max(max_load, ld[i]);
+                double amount = Math.min(q, cap - max_load);
+                if (amount <= EPS) {
+                    break;
+                }
+
+                double t_in = tt[a[i]][from];
+                double t_out = tt[from][a[i+1]];
+                if (t_in < 0 || t_out < 0 || arr[i] + t_in > pdl + TOL) {
+                    continue;
+                }
+                double delay = t_in + t_out - tt[a[i]][a[i+1]];
+                if (delay > sl[i+1] + TOL || arr[pb] + delay > ddl + TOL) {
+                    continue;
+                }
+                double cost = problem.arcCost(a[i], from) + problem.arcCost(from, a[i+1]) - problem.arcCost(a[i], a[i+1]);
+
+                Insertion ins = new Insertion(k, r, i, true, pb, false, amount, cost);
+                if (ins.betterThan(best)) {
+                    best = ins;
+                }
+            }
+            return best;
+        }
+
+        // new pickup hub after position i and new delivery hub after position j >= i
+        for (int i=0; i<len; i++) {
+            double t_in = tt[a[i]][from];
+            if (t_in < 0 || arr[i] + t_in > pdl + TOL || cap - ld[i] <= EPS) {
+                continue;
+            }
+            double arr_from = arr[i] + t_in;
+
+            // delivery hub right after the pickup hub
+            double t_ft = tt[from][to];
+            if (t_ft >= 0 && arr_from + t_ft <= ddl + TOL) {
+                double amount = Math.min(q, cap - ld[i]);
+                double cost = problem.arcCost(a[i], from) + problem.arcCost(from, to);
+                boolean feasible = true;
+                if (i + 1 < len) {
+                    double t_out = tt[to][a[i+1]];
+                    feasible = t_out >= 0 && t_in + t_ft + t_out - tt[a[i]][a[i+1]] <= sl[i+1] + TOL;
+                    if (feasible) {
+                        cost += problem.arcCost(to, a[i+1]) - problem.arcCost(a[i], a[i+1]);
+                    }
+                }
+
+                Insertion ins = new Insertion(k, r, i, true, i, true, amount, cost);
+                if (feasible && ins.betterThan(best)) {
+                    best = ins;
+                }
+            }
+
+            if (i + 1 >= len) {
+                continue;
+            }
+            double t_out = tt[from][a[i+1]];
+            if (t_out < 0) {
+                continue;
+            }
+            double d1 = t_in + t_out - tt[a[i]][a[i+1]];
+            double c1 = problem.arcCost(a[i], from) + problem.arcCost(from, a[i+1]) - problem.arcCost(a[i], a[i+1]);
+
+            double max_load = ld[i];
+            double min_gap = Double.POSITIVE_INFINITY;
+            for (int j=i+1; j<len; j++) {
+                max_load = Math.max(max_load, ld[j]);
+                double amount = Math.min(q, cap - max_load);
+                if (amount <= EPS) {
+                    break;
+                }
+                min_gap = Math.min(min_gap, gp[j]);
+                if (d1 > min_gap + TOL) {
+                    break;
+                }
+
+                double t_jin = tt[a[j]][to];
+                if (t_jin < 0 || arr[j] + d1 + t_jin > ddl + TOL) {
+                    continue;
+                }
+                double cost = c1 + problem.arcCost(a[j], to);
+                if (j + 1 < len) {
+                    double t_jout = tt[to][a[j+1]];
+                    if (t_jout < 0 || d1 + t_jin + t_jout - tt[a[j]][a[j+1]] > sl[j+1] + TOL) {
+                        continue;
+                    }
+                    cost += problem.arcCost(to, a[j+1]) - problem.arcCost(a[j], a[j+1]);
+                }
+
+                Insertion ins = new Insertion(k, r, i, true, j, true, amount, cost);
+                if (ins.betterThan(best)) {
+                    best = ins;
+                }
+            }
+        }
+
+        return best;
+    }
+
+    void apply(Insertion ins) {
+        int k = ins.truck;
+        int r = ins.request;
+
+        if (ins.new_pickup || ins.new_delivery) {
+            int len = length[k];
+            int[] old = route[k];
+            int[] next = new int[Math.max(old.length, len + 2)];
+            int q = 0;
+            for (int p=0; p<len; p++) {
+                next[q++] = old[p];
+                if (ins.new_pickup && p == ins.pickup_pos) {
+                    next[q++] = problem.from[r];
+                }
+                if (ins.new_delivery && p == ins.delivery_pos) {
+                    next[q++] = problem.to[r];
+                }
+            }
+            route[k] = next;
+            length[k] = q;
+        }
+
+        if (served[k][r] <= EPS) {
+            operations[k][problem.from[r]]++;
+            operations[k][problem.to[r]]++;
+        }
+        served[k][r] += ins.amount;
+        unserved[r] = unserved[r] - ins.amount > EPS ? unserved[r] - ins.amount : 0;
+        dirty[k] = true;
+    }
+
+    /**
+     * Replaces the route of truck k by the given sequence of distinct hubs, starting at the
+     * truck location. Used to build a plan from routes found elsewhere, the parts of requests
+     * carried by the truck are then added with serve().
+     */
+    void setRoute(int k, int[] hubs) {
+        route[k] = Arrays.copyOf(hubs, Math.max(8, hubs.length));
+        length[k] = hubs.length;
+        dirty[k] = true;
+    }
+
+    /**
+     * Lets truck k carry the given amount of request r, both hubs of r must be on its route.
+     */
+    void serve(int k, int r, double amount) {
+        if (served[k][r] <= EPS) {
+            operations[k][problem.from[r]]++;
+            operations[k][problem.to[r]]++;
+        }
+        served[k][r] += amount;
+        unserved[r] = unserved[r] - amount > EPS ? unserved[r] - amount : 0;
+        dirty[k] = true;
+    }
+
+    /**
+     * Inserts all the unserved quantity of request r, possibly split over several trucks.
+     * Returns false if a part of the request could not be inserted.
+     */
+    boolean insert(int r) {
+        while (unserved[r] > EPS) {
+            Insertion ins = findInsertion(r, unserved[r]);
+            if (ins == null) {
+                return false;
+            }
+            apply(ins);
+        }
+        return true;
+    }
+
+    /**
+     * Removes the part of request r carried by truck k, and the hubs of the route where truck
+     * k has nothing left to do.
+     */
+    void remove(int k, int r) {
+        if (served[k][r] <= EPS) {
+            return;
+        }
+
+        unserved[r] += served[k][r];
+        served[k][r] = 0;
+        operations[k][problem.from[r]]--;
+        operations[k][problem.to[r]]--;
+        dirty[k] = true;
+
+        remove_idle_hub(k, problem.from[r]);
+        remove_idle_hub(k, problem.to[r]);
+    }
+
+    /**
+     * Removes from every route the hubs where the truck has nothing to do, except the truck location.
+     */
+    void removeIdleHubs() {
+        for (int k=0; k<problem.num_trucks; k++) {
+            for (int p=length[k]-1; p>0; p--) {
+                if (p < length[k]) {
+                    remove_idle_hub(k, route[k][p]);
+                }
+            }
+        }
+    }
+
+    private void remove_idle_hub(int k, int hub) {
+        if (operations[k][hub] > 0) {
+            return;
+        }
+
+        int p = indexOf(k, hub);
+        if (p <= 0) {
+            // the truck location always stays in the route
+            return;
+        }
+
+        int len = length[k];
+        int[] a = route[k];
+        if (p + 1 < len && problem.travel_time[a[p-1]][a[p+1]] < 0) {
+            return;
+        }
+
+        System.arraycopy(a, p + 1, a, p, len - p - 1);
+        length[k] = len - 1;
+        dirty[k] = true;
+
+        if (!isOnTime(k)) {
+            // travel times may not satisfy the triangle inequality, so keep the hub
+            System.arraycopy(a, p, a, p + 1, len - p - 1);
+            a[p] = hub;
+            length[k] = len;
+            dirty[k] = true;
+        }
+    }
+
+    int moves() {
+        int moves = 0;
+        for (int k=0; k<problem.num_trucks; k++) {
+            for (int p=1; p<length[k]; p++) {
+                if (problem.isMove(route[k][p-1], route[k][p])) {
+                    moves++;
+                }
+            }
+        }
+        return moves;
+    }
+
+    double cost() {
+        double cost = 0;
+        for (int k=0; k<problem.num_trucks; k++) {
+            for (int p=1; p<length[k]; p++) {
+                cost += problem.arcCost(route[k][p-1], route[k][p]);
+            }
+        }
+        return cost;
+    }
+
+    double unservedQuantity() {
+        double total = 0;
+        for (double q: unserved) {
+            total += q;
+        }
+        return total;
+    }
+
+    /**
+     * Converts the plan into the output of the solvers. As in the MILP with time constraints,
+     * consecutive visits of a hub and its logical copy are merged into one stop.
+     */
+    MappedSolution toMappedSolution() {
+        ArrayList<ArrayList<Integer>> routes = new ArrayList<>();
+        ArrayList<ArrayList<ArrayList<MappedRequest>>> route_pickup = new ArrayList<>();
+        ArrayList<ArrayList<ArrayList<MappedRequest>>> route_delivery = new ArrayList<>();
+
+        for (int k=0; k<problem.num_trucks; k++) {
+            ArrayList<Integer> route_k = new ArrayList<>();
+            ArrayList<ArrayList<MappedRequest>> pickup = new ArrayList<>();
+            ArrayList<ArrayList<MappedRequest>> delivery = new ArrayList<>();
+
+            if (length[k] > 1) {
+                ArrayList<ArrayList<MappedRequest>> pick_at = new ArrayList<>();
+                ArrayList<ArrayList<MappedRequest>> drop_at = new ArrayList<>();
+                for (int p=0; p<length[k]; p++) {
+                    pick_at.add(new ArrayList<>());
+                    drop_at.add(new ArrayList<>());
+                    position[route[k][p]] = p;
+                }
+                for (int r=0; r<problem.num_requests; r++) {
+                    if (served[k][r] > EPS) {
+                        MappedRequest op = new MappedRequest(problem.request_id[r], problem.from[r], problem.to[r], served[k][r]);
+                        pick_at.get(position[problem.from[r]]).add(op);
+                        drop_at.get(position[problem.to[r]]).add(op);
+                    }
+                }
+                for (int p=0; p<length[k]; p++) {
+                    position[route[k][p]] = -1;
+                }
+
+                String pre_hub = "";
+                for (int p=0; p<length[k]; p++) {
+                    int i = route[k][p];
+                    if (!problem.hub_id[i].equals(pre_hub)) {
+                        route_k.add(i);
+                        pickup.add(pick_at.get(p));
+                        delivery.add(drop_at.get(p));
+                    } else {
+                        pickup.get(pickup.size() - 1).addAll(pick_at.get(p));
+                        delivery.get(delivery.size() - 1).addAll(drop_at.get(p));
+                    }
+                    pre_hub = problem.hub_id[i];
+                }
+            }
+
+            routes.add(route_k);
+            route_pickup.add(pickup);
+            route_delivery.add(delivery);
+        }
+
+        ArrayList<MappedRequest> unserved_requests = new ArrayList<>();
+        for (int r=0; r<problem.num_requests; r++) {
+            if (unserved[r] > EPS) {
+                unserved_requests.add(new MappedRequest(problem.request_id[r], problem.from[r], problem.to[r], unserved[r]));
+            }
+        }
+
+        MappedSolution output = new MappedSolution();
+        output.routes = routes;
+        output.pickup = route_pickup;
+        output.delivery = route_delivery;
+        output.unserved = unserved_requests;
+        return output;
+    }
+
+    void display() {
+        for (int k=0; k<problem.num_trucks; k++) {
+            if (length[k] <= 1) {
+                System.out.println("Truck " + (k + 1) + ": NOT USED.");
+                continue;
+            }
+
+            evaluate(k);
+            System.out.print("Truck " + (k + 1) + ": ");
+            for (int p=0; p<length[k]; p++) {
+                double ratio = ((int) (10000 * load[k][p] / problem.capacity[k])) / 100.0;
+                System.out.print(" -> HUB " + problem.hub_id[route[k][p]] + ", load=" + ratio + "%");
+            }
+            System.out.println();
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package org.com.SplitPickupAndDelivery.solver;
+
+import java.util.Arrays;
+
+/**
+ * The RouteProblem class is a snapshot of the mapped instance in primitive arrays, used by the
+ * heuristic solvers. Times are in milliseconds relative to the earliest start working time of
+ * the trucks, as in the MILP with time constraints, and travel_time[i][j] < 0 if there is no
+ * direct path from hub i to hub j.
+ */
+class RouteProblem {
+
+    final int num_hubs;                 // number of (logical) hubs
+    final int num_trucks;
+    final int num_requests;
+
+    final double[][] travel_time;       // in milliseconds
+    final double base_time;
+    final double[] start_time;          // start_time[k] is the start working time of truck k
+    final double[] capacity;
+    final int[] location;
+    final boolean[][] forbidden;        // forbidden[k][i] is true if truck k must not visit hub i
+
+    final int[] from;                   // from[r] is the pickup hub of request r
+    final int[] to;                     // to[r] is the (logical) delivery hub of request r
+    final double[] quantity;
+    final double[] pickup_deadline;     // latest arrival time at the pickup hub of request r
+    final double[] delivery_deadline;   // latest arrival time at the delivery hub of request r
+    final String[] request_id;
+
+    final int[] logical_of;             // logical_of[i] is the logical delivery copy of hub i, -1 if there is none
+    final String[] hub_id;
+
+    RouteProblem(MappedData data) {
+        num_hubs = data.N;
+        num_trucks = data.K;
+        num_requests = data.requests.size();
+
+        travel_time = new double[num_hubs][num_hubs];
+        for (int i=0; i<num_hubs; i++) {
+            for (int j=0; j<num_hubs; j++) {
+                double time = data.travelTime(i, j);
+                travel_time[i][j] = i == j ? 0 : (time < 0 ? -1 : 1e3 * time);
+            }
+        }
+
+        double min_start = data.startWorkingTime.get(0);
+        for (double t: data.startWorkingTime) {
+            min_start = Math.min(t, min_start);
+        }
+        base_time = min_start;
+
+        start_time = new double[num_trucks];
+        capacity = new double[num_trucks];
+        location = new int[num_trucks];
+        forbidden = new boolean[num_trucks][num_hubs];
+        for (int k=0; k<num_trucks; k++) {
+            start_time[k] = data.startWorkingTime.get(k) - base_time;
+            capacity[k] = data.capacity.get(k);
+            location[k] = data.truck_location.get(k);
+
+            if (data.forbiddenPoints.get(k) != null) {
+                for (Integer p: data.forbiddenPoints.get(k)) {
+                    if (p != null) {
+                        forbidden[k][p] = true;
+                    }
+                }
+            }
+        }
+
+        from = new int[num_requests];
+        to = new int[num_requests];
+        quantity = new double[num_requests];
+        pickup_deadline = new double[num_requests];
+        delivery_deadline = new double[num_requests];
+        request_id = new String[num_requests];
+        for (int r=0; r<num_requests; r++) {
+            MappedRequest req = data.requests.get(r);
+            request_id[r] = req.id;
+            from[r] = req.from_hub;
+            to[r] = req.to_hub;
+            quantity[r] = req.quantity;
+            pickup_deadline[r] = req.pickupTime - base_time;
+            delivery_deadline[r] = req.deliveryTime - base_time;
+        }
+
+        logical_of = new int[num_hubs];
+        Arrays.fill(logical_of, -1);
+        for (int hub: data._mapPickup2Delivery.keySet()) {
+            logical_of[hub] = data._mapPickup2Delivery.get(hub);
+        }
+
+        hub_id = new String[num_hubs];
+        for (int i=0; i<num_hubs; i++) {
+            hub_id[i] = data._hubIndex2hubID.get(i);
+        }
+    }
+
+    /**
+     * Returns true if moving from hub i to hub j is an inter-hub movement, i.e. j is not the
+     * logical delivery copy of i. This is the quantity minimized by the MILP models.
+     */
+    boolean isMove(int i, int j) {
+        return logical_of[i] != j;
+    }
+
+    /**
+     * Cost of the arc i -> j: one per inter-hub movement, plus the travel time as a tie-breaker.
+     */
+    double arcCost(int i, int j) {
+        return (isMove(i, j) ? 1 : 0) + RoutePlan.TIME_WEIGHT * travel_time[i][j];
+    }
+}
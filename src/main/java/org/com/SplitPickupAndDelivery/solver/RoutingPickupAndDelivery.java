@@ -0,0 +1,439 @@
+package org.com.SplitPickupAndDelivery.solver;
+
+import com.google.ortools.Loader;
+import com.google.ortools.constraintsolver.Assignment;
+import com.google.ortools.constraintsolver.FirstSolutionStrategy;
+import com.google.ortools.constraintsolver.LocalSearchMetaheuristic;
+import com.google.ortools.constraintsolver.RoutingDimension;
+import com.google.ortools.constraintsolver.RoutingIndexManager;
+import com.google.ortools.constraintsolver.RoutingModel;
+import com.google.ortools.constraintsolver.RoutingSearchParameters;
+import com.google.ortools.constraintsolver.Solver;
+import com.google.ortools.constraintsolver.main;
+import com.google.protobuf.Duration;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.function.LongUnaryOperator;
+
+/**
+ * The RoutingPickupAndDelivery class solves the split pickup and delivery problem with time
+ * constraints with the vehicle routing library of OR-Tools. Every request is split into chunks
+ * of at most Parameters.ROUTING_CHUNK_FRACTION of the largest truck capacity, so that the model
+ * size follows the fleet and not its smallest truck, and every chunk becomes a pickup and delivery pair
+ * with a time dimension for the deadlines and a capacity dimension for the loads. Chunks may be
+ * left out at a large penalty, so the search always returns a solution, and the chunks of a
+ * request carried by the same truck are merged back into one split quantity per hub. The
+ * search is a guided local search that scales to hundreds of hubs.
+ */
+public class RoutingPickupAndDelivery implements PickupAndDeliverySolver {
+
+    private static final long MOVE_COST = 10000000;     // cost of one inter-hub movement, the travel time in seconds breaks ties
+
+    private final MappedData data;
+    private int N;                      // number of (logical) hubs
+    private int K;                      // number of trucks
+    private List<MappedRequest> requests;
+    private long[][] travel_time;       // in seconds, rounded up, -1 if there is no direct path
+    private long[] start_working_time;  // in seconds, rounded up
+    private double base_time;           // in milliseconds
+    private long horizon;
+    private long scale;                 // quantities are multiplied by scale before rounding
+    private long[] capacity;            // scaled capacities
+
+    // node v < K is the start of truck v, node K + v is its (free) end, then every chunk c
+    // has its pickup node 2K + 2c and its delivery node 2K + 2c + 1
+    private int num_nodes;
+    private int[] hub;                  // hub[v] is the hub of node v, -1 for the end nodes
+    private int[] chunk_request;        // chunk_request[c] is the request of chunk c
+    private long[] chunk_quantity;      // scaled quantity of chunk c
+
+    private RoutingIndexManager manager;
+    private RoutingModel routing;
+    private RoutingDimension time;
+
+    private long time_limit_ms;
+    private IncumbentHolder holder;
+    private SolveMetrics metrics = new SolveMetrics();
+    private volatile boolean interrupted;
+
+    public RoutingPickupAndDelivery(MappedData data) {
+        this.data = data;
+        time_limit_ms = 1000 * Parameters.TIME_LIMIT_S;
+
+        N = data.N;
+        K = data.K;
+        requests = data.requests;
+
+        // quantities are kept integral when they all are, otherwise they get two decimals
+        scale = 1;
+        for (MappedRequest req: requests) {
+            if (req.quantity != Math.rint(req.quantity)) {
+                scale = 100;
+            }
+        }
+        for (double cap: data.capacity) {
+            if (cap != Math.rint(cap)) {
+                scale = 100;
+            }
+        }
+        // the chunks are a fixed part of the largest truck, a smaller truck carries the chunks that fit in it
+        capacity = new long[K];
+        long max_capacity = 0;
+        for (int k=0; k<K; k++) {
+            capacity[k] = (long) Math.floor(scale * data.capacity.get(k) + 1e-9);
+            max_capacity = Math.max(capacity[k], max_capacity);
+        }
+        // without any truck in service, the requests are not split, they are all left unserved
+        long chunk_size = max_capacity > 0 ? Math.max(1, (long) Math.ceil(Parameters.ROUTING_CHUNK_FRACTION * max_capacity - 1e-9)) : Long.MAX_VALUE;
+
+        // rounding the travel times up and the deadlines down keeps every solution feasible
+        long max_travel_time = 0;
+        travel_time = new long[N][N];
+        for (int i=0; i<N; i++) {
+            for (int j=0; j<N; j++) {
+                double t = data.travelTime(i, j);
+                travel_time[i][j] = i == j ? 0 : (t < 0 ? -1 : (long) Math.ceil(t - 1e-9));
+                max_travel_time = Math.max(travel_time[i][j], max_travel_time);
+            }
+        }
+
+        base_time = data.startWorkingTime.get(0);
+        for (double t: data.startWorkingTime) {
+            base_time = Math.min(t, base_time);
+        }
+        horizon = 0;
+        start_working_time = new long[K];
+        for (int k=0; k<K; k++) {
+            start_working_time[k] = (long) Math.ceil((data.startWorkingTime.get(k) - base_time) / 1e3 - 1e-9);
+            horizon = Math.max(start_working_time[k], horizon);
+        }
+        for (MappedRequest req: requests) {
+            horizon = Math.max(seconds(req.deliveryTime), horizon);
+        }
+        horizon += max_travel_time;
+
+        // split every request into chunks of (nearly) equal size, at most chunk_size
+        ArrayList<Integer> request_of = new ArrayList<>();
+        ArrayList<Long> quantity_of = new ArrayList<>();
+        for (int r=0; r<requests.size(); r++) {
+            long q = Math.round(scale * requests.get(r).quantity);
+            long parts = q <= chunk_size ? 1 : (q + chunk_size - 1) / chunk_size;
+            for (long c=0; c<parts; c++) {
+                request_of.add(r);
+                quantity_of.add(q / parts + (c < q % parts ? 1 : 0));
+            }
+        }
+
+        int num_chunks = request_of.size();
+        chunk_request = new int[num_chunks];
+        chunk_quantity = new long[num_chunks];
+        num_nodes = 2 * K + 2 * num_chunks;
+        hub = new int[num_nodes];
+        for (int k=0; k<K; k++) {
+            hub[k] = data.truck_location.get(k);
+            hub[K + k] = -1;
+        }
+        for (int c=0; c<num_chunks; c++) {
+            chunk_request[c] = request_of.get(c);
+            chunk_quantity[c] = quantity_of.get(c);
+            hub[2 * K + 2 * c] = requests.get(chunk_request[c]).from_hub;
+            hub[2 * K + 2 * c + 1] = requests.get(chunk_request[c]).to_hub;
+        }
+    }
+
+    private long seconds(double t) {
+        return (long) Math.floor((t - base_time) / 1e3 + 1e-9);
+    }
+
+    private boolean sameHub(int i, int j) {
+        return data._hubIndex2hubID.get(i).equals(data._hubIndex2hubID.get(j));
+    }
+
+    /**
+     * Travel time in seconds between two nodes, -1 if there is no direct path. Any node can go
+     * to an end node, and two nodes of the same hub (or of a hub and its logical copy) are at
+     * no distance.
+     */
+    private long transit(int u, int v) {
+        if (hub[u] < 0 || hub[v] < 0 || hub[u] == hub[v]) {
+            return 0;
+        }
+        if (sameHub(hub[u], hub[v]) && travel_time[hub[u]][hub[v]] < 0) {
+            return 0;
+        }
+        return travel_time[hub[u]][hub[v]];
+    }
+
+    public void setTimeLimit(long time_limit_ms) {
+        this.time_limit_ms = time_limit_ms;
+    }
+
+    public void setIncumbentHolder(IncumbentHolder holder) {
+        this.holder = holder;
+    }
+
+    public void setMetrics(SolveMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    public void interrupt() {
+        interrupted = true;
+    }
+
+    public MappedSolution solve(boolean verbose) {
+
+        metrics.startSolver("Routing");
+        long build_start = System.currentTimeMillis();
+        Loader.loadNativeLibraries();
+        build_model();
+        metrics.addPhase("build", System.currentTimeMillis() - build_start);
+        metrics.num_variables = routing.nexts().length;
+        metrics.num_constraints = routing.solver().constraints();
+
+        RoutingSearchParameters search_parameters = main.defaultRoutingSearchParameters().toBuilder()
+                .setFirstSolutionStrategy(FirstSolutionStrategy.Value.LOCAL_CHEAPEST_INSERTION)
+                .setLocalSearchMetaheuristic(LocalSearchMetaheuristic.Value.GUIDED_LOCAL_SEARCH)
+                .setTimeLimit(Duration.newBuilder().setSeconds(time_limit_ms / 1000).setNanos((int) (time_limit_ms % 1000) * 1000000).build())
+                .setLogSearch(verbose)
+                .build();
+
+        // the search stops when the solver is interrupted, and every solution is published
+        routing.addSearchMonitor(routing.solver().makeCustomLimit(() -> interrupted));
+        if (holder != null) {
+            routing.addAtSolutionCallback(() -> holder.offer(extract(index -> routing.nextVar(index).value(), null), "Routing"));
+        }
+
+        if (!verbose) {
+            System.out.println("Routing solver is running...");
+        }
+        long solve_start = System.currentTimeMillis();
+        Assignment solution = routing.solveWithParameters(search_parameters);
+        metrics.addPhase("solve", System.currentTimeMillis() - solve_start);
+        metrics.status = status_name(routing.status());
+        metrics.nodes = routing.solver().branches();
+
+        if (solution == null) {
+            System.out.println("No feasible solution found");
+            return null;
+        }
+
+        System.out.println("A good solution found!");
+        long extract_start = System.currentTimeMillis();
+        MappedSolution result = extract(index -> solution.value(routing.nextVar(index)), index -> solution.min(time.cumulVar(index)));
+        metrics.addPhase("extract", System.currentTimeMillis() - extract_start);
+        metrics.objective = result.objective();
+        return result;
+    }
+
+    private static String status_name(int status) {
+        if (status == RoutingModel.ROUTING_SUCCESS) {
+            return "SUCCESS";
+        } else if (status == RoutingModel.ROUTING_FAIL) {
+            return "FAIL";
+        } else if (status == RoutingModel.ROUTING_FAIL_TIMEOUT) {
+            return "FAIL_TIMEOUT";
+        } else if (status == RoutingModel.ROUTING_INVALID) {
+            return "INVALID";
+        } else if (status == RoutingModel.ROUTING_INFEASIBLE) {
+            return "INFEASIBLE";
+        }
+        return "NOT_SOLVED";
+    }
+
+    private void build_model() {
+        int[] starts = new int[K];
+        int[] ends = new int[K];
+        for (int k=0; k<K; k++) {
+            starts[k] = k;
+            ends[k] = K + k;
+        }
+        manager = new RoutingIndexManager(num_nodes, K, starts, ends);
+        routing = new RoutingModel(manager);
+        Solver solver = routing.solver();
+
+        // transits are given as matrices, so that the search does not call back into Java for every
+        // arc it evaluates. The library reads them by node, it maps the routing indices itself
+        long[][] cost_matrix = new long[num_nodes][num_nodes];
+        long[][] time_matrix = new long[num_nodes][num_nodes];
+        long[] demand = new long[num_nodes];
+        for (int u=0; u<num_nodes; u++) {
+            if (u >= 2 * K) {
+                int c = (u - 2 * K) / 2;
+                demand[u] = (u - 2 * K) % 2 == 0 ? chunk_quantity[c] : -chunk_quantity[c];
+            }
+
+            for (int v=0; v<num_nodes; v++) {
+                long transit = transit(u, v);
+                time_matrix[u][v] = Math.max(0, transit);
+
+                // arc cost: one per inter-hub movement, moving to an end node is free
+                if (hub[u] >= 0 && hub[v] >= 0 && !sameHub(hub[u], hub[v])) {
+                    cost_matrix[u][v] = MOVE_COST + Math.max(0, transit);
+                }
+
+                // there is no arc between two hubs without a direct path, end nodes are always reachable
+                if (transit < 0) {
+                    routing.nextVar(manager.nodeToIndex(u)).removeValue(manager.nodeToIndex(v));
+                }
+            }
+        }
+        routing.setArcCostEvaluatorOfAllVehicles(routing.registerTransitMatrix(cost_matrix));
+
+        // time dimension, waiting is allowed and the cumul of a node is its arrival time
+        routing.addDimension(routing.registerTransitMatrix(time_matrix), horizon, horizon, false, "Time");
+        time = routing.getDimensionOrDie("Time");
+        for (int k=0; k<K; k++) {
+            time.cumulVar(routing.start(k)).setMin(start_working_time[k]);
+        }
+
+        // capacity dimension, a chunk is loaded at its pickup node and unloaded at its delivery node
+        routing.addDimensionWithVehicleCapacity(routing.registerUnaryTransitVector(demand), 0, capacity, true, "Capacity");
+
+        for (int c=0; c<chunk_request.length; c++) {
+            MappedRequest req = requests.get(chunk_request[c]);
+            long pickup_index = manager.nodeToIndex(2 * K + 2 * c);
+            long delivery_index = manager.nodeToIndex(2 * K + 2 * c + 1);
+
+            // the same truck picks up the chunk and delivers it later, in time
+            routing.addPickupAndDelivery(pickup_index, delivery_index);
+            solver.addConstraint(solver.makeEquality(routing.vehicleVar(pickup_index), routing.vehicleVar(delivery_index)));
+            solver.addConstraint(solver.makeLessOrEqual(time.cumulVar(pickup_index), time.cumulVar(delivery_index)));
+            if (seconds(req.pickupTime) < 0 || seconds(req.deliveryTime) < 0) {
+                // the deadline passed before the first truck starts working, the chunk is left unserved
+                routing.activeVar(pickup_index).setValue(0);
+                routing.activeVar(delivery_index).setValue(0);
+            } else {
+                time.cumulVar(pickup_index).setMax(seconds(req.pickupTime));
+                time.cumulVar(delivery_index).setMax(seconds(req.deliveryTime));
+            }
+
+            // forbidden points
+            for (int k=0; k<K; k++) {
+                if (data.forbiddenPoints.get(k) != null
+                        && (data.forbiddenPoints.get(k).contains(req.from_hub) || data.forbiddenPoints.get(k).contains(req.to_hub))) {
+                    routing.vehicleVar(pickup_index).removeValue(k);
+                    routing.vehicleVar(delivery_index).removeValue(k);
+                }
+            }
+
+            // a chunk may be left unserved at a large penalty, paid half at each of its nodes
+            long penalty = (long) (MOVE_COST * MappedSolution.UNSERVED_PENALTY * chunk_quantity[c] / scale / 2);
+            routing.addDisjunction(new long[]{pickup_index}, penalty);
+            routing.addDisjunction(new long[]{delivery_index}, penalty);
+        }
+
+        System.out.println("Routing model built successfully: " + chunk_request.length + " chunks.");
+    }
+
+    /**
+     * Builds the solution from the successor of every node. Consecutive nodes of the same hub
+     * are merged, as in the MILP models, and so are the chunks of a request at one stop.
+     * Arrival times are printed if the time of every node is given.
+     */
+    private MappedSolution extract(LongUnaryOperator next, LongUnaryOperator arrival) {
+        ArrayList<ArrayList<Integer>> routes = new ArrayList<>();
+        ArrayList<ArrayList<ArrayList<MappedRequest>>> route_pickup = new ArrayList<>();
+        ArrayList<ArrayList<ArrayList<MappedRequest>>> route_delivery = new ArrayList<>();
+        boolean print = arrival != null;
+
+        for (int k=0; k<K; k++) {
+            ArrayList<Integer> route_k = new ArrayList<>();
+            ArrayList<LinkedHashMap<Integer, Long>> pick_k = new ArrayList<>();
+            ArrayList<LinkedHashMap<Integer, Long>> drop_k = new ArrayList<>();
+
+            if (print) {
+                System.out.print("Truck " + (k + 1) + ": ");
+            }
+            long index = routing.start(k);
+            while (!routing.isEnd(index)) {
+                int v = manager.indexToNode(index);
+                if (route_k.isEmpty() || !sameHub(route_k.get(route_k.size() - 1), hub[v])) {
+                    route_k.add(hub[v]);
+                    pick_k.add(new LinkedHashMap<>());
+                    drop_k.add(new LinkedHashMap<>());
+                    if (print) {
+                        System.out.print(" -> HUB " + hub[v] + ", time=" + new Date(Math.round(1e3 * arrival.applyAsLong(index) + base_time)) + " ");
+                    }
+                }
+
+                if (v >= 2 * K) {
+                    int c = (v - 2 * K) / 2;
+                    LinkedHashMap<Integer, Long> ops = (v - 2 * K) % 2 == 0 ? pick_k.get(pick_k.size() - 1) : drop_k.get(drop_k.size() - 1);
+                    ops.merge(chunk_request[c], chunk_quantity[c], Long::sum);
+                }
+                index = next.applyAsLong(index);
+            }
+
+            ArrayList<ArrayList<MappedRequest>> pickup = new ArrayList<>();
+            ArrayList<ArrayList<MappedRequest>> delivery = new ArrayList<>();
+            if (route_k.size() > 1) {
+                if (print) {
+                    System.out.println();
+                }
+                for (int s=0; s<route_k.size(); s++) {
+                    if (print) {
+                        System.out.println("\tOperations at HUB " + data._hubIndex2hubID.get(route_k.get(s)) + ":");
+                    }
+
+                    ArrayList<MappedRequest> pickup_operations = new ArrayList<>();
+                    for (int r: pick_k.get(s).keySet()) {
+                        MappedRequest req = requests.get(r);
+                        double amount = pick_k.get(s).get(r) / (double) scale;
+                        if (print) {
+                            System.out.println("\t\tPick " + amount + " boxes to delivery to HUB " + data._hubIndex2hubID.get(req.to_hub));
+                        }
+                        pickup_operations.add(new MappedRequest(req.id, req.from_hub, req.to_hub, amount));
+                    }
+
+                    ArrayList<MappedRequest> drop_operations = new ArrayList<>();
+                    for (int r: drop_k.get(s).keySet()) {
+                        MappedRequest req = requests.get(r);
+                        double amount = drop_k.get(s).get(r) / (double) scale;
+                        if (print) {
+                            System.out.println("\t\tDrop " + amount + " boxes picked from HUB " + data._hubIndex2hubID.get(req.from_hub));
+                        }
+                        drop_operations.add(new MappedRequest(req.id, req.from_hub, req.to_hub, amount));
+                    }
+
+                    pickup.add(pickup_operations);
+                    delivery.add(drop_operations);
+                }
+            } else {
+                if (print) {
+                    System.out.println("NOT USED.");
+                }
+                route_k.clear();
+            }
+
+            routes.add(route_k);
+            route_pickup.add(pickup);
+            route_delivery.add(delivery);
+        }
+
+        // chunks whose pickup node is its own successor are not performed
+        LinkedHashMap<Integer, Long> unserved = new LinkedHashMap<>();
+        for (int c=0; c<chunk_request.length; c++) {
+            long pickup_index = manager.nodeToIndex(2 * K + 2 * c);
+            if (next.applyAsLong(pickup_index) == pickup_index) {
+                unserved.merge(chunk_request[c], chunk_quantity[c], Long::sum);
+            }
+        }
+
+        MappedSolution output = new MappedSolution();
+        output.routes = routes;
+        output.pickup = route_pickup;
+        output.delivery = route_delivery;
+        if (!unserved.isEmpty()) {
+            output.unserved = new ArrayList<>();
+            for (int r: unserved.keySet()) {
+                MappedRequest req = requests.get(r);
+                output.unserved.add(new MappedRequest(req.id, req.from_hub, req.to_hub, unserved.get(r) / (double) scale));
+            }
+        }
+
+        return output;
+    }
+}
@@ -0,0 +1,261 @@
+package org.com.SplitPickupAndDelivery.solver;
+
+import org.com.SplitPickupAndDelivery.models.TravelTimeMatrix;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Shortest paths between all pairs of physical hubs, so that two hubs without a direct row in the travel
+ * time sheet are joined through other hubs, and a direct path longer than a detour is replaced by the
+ * detour. Only transit hubs may be passed through, the hubs that no truck is forbidden to visit.
+ *
+ * Dense graphs are closed by a blocked Floyd-Warshall, whose blocks of one phase are relaxed in parallel.
+ * Sparse graphs, with fewer than n^2 / log2(n) arcs, run one Dijkstra per source, the sources being shared
+ * by the threads. Both record in pred[i][j] the hub before j on the shortest path from i, so the hubs passed
+ * through can be listed when the routes are exported, see transitHubs().
+ */
+public class ShortestPathClosure {
+
+    private static final int BLOCK = 64;        // side of the blocks of Floyd-Warshall, 3 blocks of doubles fit in L2
+
+    private final int n;
+    private final double[] time;                // row by row, +infinity if j cannot be reached from i
+    private final int[] pred;                   // row by row, -1 if j cannot be reached from i or j == i
+    private final boolean[] transit;
+
+    public int added_arcs;                      // pairs without direct path that are joined now
+    public int shortened_arcs;                  // direct paths replaced by a shorter detour
+
+    /**
+     * @param travel_time travel times between physical hubs, TravelTimeMatrix.MISSING if there is no direct path
+     * @param transit     transit[i] is true if hub i may be passed through
+     */
+    public ShortestPathClosure(TravelTimeMatrix travel_time, boolean[] transit, int num_threads) {
+        this(travel_time, transit, num_threads, null);
+    }
+
+    /**
+     * @param sparse true to run Dijkstra, false to run Floyd-Warshall, null to choose by the number of arcs
+     */
+    ShortestPathClosure(TravelTimeMatrix travel_time, boolean[] transit, int num_threads, Boolean sparse) {
+        n = travel_time.size();
+        this.transit = transit;
+        time = new double[n * n];
+        pred = new int[n * n];
+        Arrays.fill(time, Double.POSITIVE_INFINITY);
+        Arrays.fill(pred, -1);
+
+        long num_arcs = 0;
+        for (int i=0; i<n; i++) {
+            time[i * n + i] = 0;
+            for (int j=0; j<n; j++) {
+                if (i != j && travel_time.exists(i, j)) {
+                    time[i * n + j] = travel_time.get(i, j);
+                    pred[i * n + j] = i;
+                    num_arcs++;
+                }
+            }
+        }
+        double[] direct = time.clone();
+
+        long start = System.currentTimeMillis();
+        if (sparse == null) {
+            sparse = num_arcs * Math.max(1, 31 - Integer.numberOfLeadingZeros(n)) < (long) n * n;
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, num_threads));
+        try {
+            if (sparse) {
+                dijkstra(pool, Math.max(1, num_threads));
+            } else {
+                floydWarshall(pool);
+            }
+        } finally {
+            pool.shutdown();
+        }
+
+        for (int p=0; p<n*n; p++) {
+            if (time[p] < direct[p]) {
+                if (direct[p] == Double.POSITIVE_INFINITY) {
+                    added_arcs++;
+                } else {
+                    shortened_arcs++;
+                }
+            }
+        }
+        System.out.println("Shortest path closure (" + (sparse ? "Dijkstra" : "Floyd-Warshall") + ") of " + n + " hubs: "
+                + added_arcs + " arcs added, " + shortened_arcs + " shortened, " + (System.currentTimeMillis() - start) + " ms.");
+    }
+
+    /**
+     * The closed travel times, TravelTimeMatrix.MISSING where j still cannot be reached from i.
+     */
+    public TravelTimeMatrix toMatrix(boolean off_heap) {
+        TravelTimeMatrix matrix = new TravelTimeMatrix(n, off_heap, 0);
+        for (int i=0; i<n; i++) {
+            for (int j=0; j<n; j++) {
+                double t = time[i * n + j];
+                matrix.set(i, j, t == Double.POSITIVE_INFINITY ? TravelTimeMatrix.MISSING : t);
+            }
+        }
+        return matrix;
+    }
+
+    /**
+     * Returns the hubs passed through on the shortest path from physical hub i to hub j, in order, empty
+     * if the path is direct or does not exist.
+     */
+    public List<Integer> transitHubs(int i, int j) {
+        ArrayList<Integer> hubs = new ArrayList<>();
+        if (i == j || pred[i * n + j] < 0) {
+            return hubs;
+        }
+        for (int h=pred[i * n + j]; h!=i; h=pred[i * n + h]) {
+            hubs.add(h);
+        }
+        Collections.reverse(hubs);
+        return hubs;
+    }
+
+    private void floydWarshall(ExecutorService pool) {
+        int num_blocks = (n + BLOCK - 1) / BLOCK;
+        for (int kb=0; kb<num_blocks; kb++) {
+            final int b = kb;
+            relax(b, b, b);
+
+            // the row and the column of the pivot block only depend on the pivot block
+            ArrayList<Callable<Void>> tasks = new ArrayList<>();
+            for (int other=0; other<num_blocks; other++) {
+                if (other != b) {
+                    final int o = other;
+                    tasks.add(() -> { relax(b, o, b); relax(o, b, b); return null; });
+                }
+            }
+            run(pool, tasks);
+
+            // the other blocks only depend on the row and the column, one task per row of blocks
+            tasks.clear();
+            for (int ib=0; ib<num_blocks; ib++) {
+                if (ib != b) {
+                    final int row = ib;
+                    tasks.add(() -> {
+                        for (int jb=0; jb<num_blocks; jb++) {
+                            if (jb != b) {
+                                relax(row, jb, b);
+                            }
+                        }
+                        return null;
+                    });
+                }
+            }
+            run(pool, tasks);
+        }
+    }
+
+    /**
+     * Relaxes the paths from the hubs of block ib to the hubs of block jb through the hubs of block kb.
+     */
+    private void relax(int ib, int jb, int kb) {
+        int i_end = Math.min(n, (ib + 1) * BLOCK);
+        int j_end = Math.min(n, (jb + 1) * BLOCK);
+        int k_end = Math.min(n, (kb + 1) * BLOCK);
+        for (int k=kb*BLOCK; k<k_end; k++) {
+            if (!transit[k]) {
+                continue;
+            }
+            for (int i=ib*BLOCK; i<i_end; i++) {
+                double t_ik = time[i * n + k];
+                if (t_ik == Double.POSITIVE_INFINITY) {
+                    continue;
+                }
+                for (int j=jb*BLOCK; j<j_end; j++) {
+                    double t = t_ik + time[k * n + j];
+                    if (t < time[i * n + j]) {
+                        time[i * n + j] = t;
+                        pred[i * n + j] = pred[k * n + j];
+                    }
+                }
+            }
+        }
+    }
+
+    private void dijkstra(ExecutorService pool, int num_threads) {
+        // adjacency lists of the direct paths
+        int[][] successors = new int[n][];
+        for (int i=0; i<n; i++) {
+            int count = 0;
+            int[] row = new int[n];
+            for (int j=0; j<n; j++) {
+                if (pred[i * n + j] == i) {
+                    row[count++] = j;
+                }
+            }
+            successors[i] = Arrays.copyOf(row, count);
+        }
+        double[] direct = time.clone();
+
+        ArrayList<Callable<Void>> tasks = new ArrayList<>();
+        for (int t=0; t<num_threads; t++) {
+            final int first = t;
+            tasks.add(() -> {
+                for (int s=first; s<n; s+=num_threads) {
+                    dijkstra(s, successors, direct);
+                }
+                return null;
+            });
+        }
+        run(pool, tasks);
+    }
+
+    /**
+     * Shortest paths from source s, written in row s. Only the source and transit hubs are expanded.
+     */
+    private void dijkstra(int s, int[][] successors, double[] direct) {
+        int row = s * n;
+        Arrays.fill(time, row, row + n, Double.POSITIVE_INFINITY);
+        Arrays.fill(pred, row, row + n, -1);
+        time[row + s] = 0;
+
+        boolean[] done = new boolean[n];
+        PriorityQueue<double[]> queue = new PriorityQueue<>((a, b) -> Double.compare(a[0], b[0]));
+        queue.add(new double[] {0, s});
+        while (!queue.isEmpty()) {
+            double[] top = queue.poll();
+            int u = (int) top[1];
+            if (done[u] || top[0] > time[row + u]) {
+                continue;
+            }
+            done[u] = true;
+            if (u != s && !transit[u]) {
+                continue;
+            }
+            for (int v: successors[u]) {
+                double t = time[row + u] + direct[u * n + v];
+                if (t < time[row + v]) {
+                    time[row + v] = t;
+                    pred[row + v] = u;
+                    queue.add(new double[] {t, v});
+                }
+            }
+        }
+    }
+
+    private static void run(ExecutorService pool, List<Callable<Void>> tasks) {
+        try {
+            for (Future<Void> future: pool.invokeAll(tasks)) {
+                future.get();
+            }
+        } catch (InterruptedException | ExecutionException e) {
+            e.printStackTrace();
+            throw new RuntimeException(e);
+        }
+    }
+}
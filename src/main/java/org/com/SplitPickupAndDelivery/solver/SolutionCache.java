@@ -0,0 +1,463 @@
+package org.com.SplitPickupAndDelivery.solver;
+
+import org.com.SplitPickupAndDelivery.models.Truck;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Cache of the solutions of past instances, one file per instance in a directory, so that solving an instance
+ * that was solved to optimality before returns at once. An entry keeps the status of the solver and its time
+ * limit, get() only returns an OPTIMAL solution that serves every request. Any other entry, a time-limited
+ * incumbent or a fallback plan, only seeds the warm start of the next solve, see seedRoutes(). An instance is identified by a SHA-256 fingerprint of its mapped
+ * content: the hubs and travel times, the trucks and the requests, sorted so that the order of the rows does
+ * not matter. The IDs of the trucks and of the requests are left out: the solution refers to hub indices, and
+ * to the requests by their rank in that sorted order, which get() maps to the IDs of the instance. The indices
+ * of the logical copies follow the order of the requests, so the requests are hashed with their physical hubs
+ * and an entry keeps the copies it was solved with, which get() maps to the copies of the instance.
+ *
+ * The network fingerprint covers the hubs, the travel times between them and the trucks. When an instance is
+ * not answered by the cache, its own entry, or else the most recently used entry with the same network, gives
+ * the routes of its solution, which the solvers use to build their warm start, see
+ * PickupAndDeliverySolver.setSeedRoutes().
+ *
+ * The modification time of an entry is the time of its last use. When the entries take more than max_bytes,
+ * the least recently used ones are deleted. Entries are written to a temp file first and then renamed, so
+ * several threads or processes can share the directory.
+ *
+ * Entry layout, big-endian: MAGIC, VERSION, objective, status, time limit in ms, the number of physical hubs and the logical copies as
+ * (hub, copy), K, then for every truck its stops, each with its hub index, hub ID, pickups and drops as
+ * (rank of the request, from, to, quantity), and finally the unserved parts (-1 for null).
+ */
+public class SolutionCache {
+
+    private static final int MAGIC = 0x53504443;      // "SPDC"
+    private static final int VERSION = 3;             // 2: the parts of the requests keep the rank of their request, 3: status and time limit
+
+    public static final String OPTIMAL = "OPTIMAL";   // status of a solution proven optimal, see MPSolver.ResultStatus
+
+    public static final String EXTENSION = ".solution";
+
+    private final File directory;
+    private final long max_bytes;
+
+    public SolutionCache(String directory, long max_bytes) {
+        this.directory = new File(directory);
+        this.max_bytes = max_bytes;
+    }
+
+    /**
+     * Returns the cached solution of the instance if it is optimal and serves every request, null otherwise.
+     */
+    public MappedSolution get(MappedData data) {
+        File entry = entry(data);
+        if (!entry.isFile()) {
+            return null;
+        }
+        try {
+            Entry cached = read(entry, data);
+            if (!OPTIMAL.equals(cached.status) || (cached.solution.unserved != null && !cached.solution.unserved.isEmpty())) {
+                System.out.println("Cached solution is " + cached.status + " after " + cached.time_limit_ms / 1000 + " s, it only seeds the warm start.");
+                return null;
+            }
+            MappedSolution solution = remap(cached, data);
+            entry.setLastModified(System.currentTimeMillis());
+            return solution;
+        } catch (IOException e) {
+            System.out.println("Cannot load " + entry + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Returns the routes of the cached solution of the instance, or else of the most recently used solution of
+     * an instance with the same network and trucks, as hub IDs per truck, null if there is none.
+     */
+    public List<List<String>> seedRoutes(MappedData data) {
+        String prefix = networkFingerprint(data) + "-";
+        File[] files = directory.listFiles((dir, name) -> name.startsWith(prefix) && name.endsWith(EXTENSION));
+        if (files == null || files.length == 0) {
+            return null;
+        }
+        String own = entry(data).getName();
+        Arrays.sort(files, Comparator.<File, Boolean>comparing(f -> !f.getName().equals(own))
+                .thenComparing(Comparator.comparingLong(File::lastModified).reversed()));
+        for (File f: files) {
+            try {
+                List<List<String>> routes = read(f, null).hub_routes;
+                f.setLastModified(System.currentTimeMillis());
+                System.out.println("Seed routes from " + f.getName() + ".");
+                return routes;
+            } catch (IOException e) {
+                System.out.println("Cannot load " + f + ": " + e.getMessage());
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Stores the solution of the instance found with the given solver status and time limit, unless the cache
+     * already holds an optimal one or one at least as good while the new one is not optimal, then deletes the
+     * least recently used entries if the cache is too large.
+     */
+    public void put(MappedData data, MappedSolution solution, String status, long time_limit_ms) {
+        File entry = entry(data);
+        if (entry.isFile()) {
+            try {
+                Entry cached = read(entry, null);
+                if (OPTIMAL.equals(cached.status) || (!OPTIMAL.equals(status) && cached.objective <= solution.objective())) {
+                    entry.setLastModified(System.currentTimeMillis());
+                    return;
+                }
+            } catch (IOException e) {
+                // damaged entry, it is replaced below
+            }
+        }
+
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            System.out.println("Cannot create the cache directory " + directory);
+            return;
+        }
+        try {
+            write(data, solution, status, time_limit_ms, entry);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+        evict();
+    }
+
+    private void evict() {
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(EXTENSION));
+        if (files == null) {
+            return;
+        }
+        long total = 0;
+        for (File f: files) {
+            total += f.length();
+        }
+        Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+        for (int i=0; i<files.length && total > max_bytes; i++) {
+            long length = files[i].length();
+            if (files[i].delete()) {
+                total -= length;
+            }
+        }
+    }
+
+    private File entry(MappedData data) {
+        return new File(directory, networkFingerprint(data) + "-" + fingerprint(data) + EXTENSION);
+    }
+
+    private static class Entry {
+        double objective;
+        String status;
+        long time_limit_ms;
+        int num_physical;
+        Map<Integer, Integer> copy_of;      // copy_of[c] is the hub whose logical copy is c
+        MappedSolution solution;
+        List<List<String>> hub_routes;
+    }
+
+    /**
+     * Rewrites the hub indices of the cached solution for the logical copies of data.
+     */
+    private static MappedSolution remap(Entry entry, MappedData data) throws IOException {
+        int[] node = new int[entry.num_physical + entry.copy_of.size()];
+        for (int i=0; i<node.length; i++) {
+            Integer copy = i < entry.num_physical ? Integer.valueOf(i) : data._mapPickup2Delivery.get(entry.copy_of.get(i));
+            if (copy == null) {
+                throw new IOException("The logical copies of the entry do not match the instance");
+            }
+            node[i] = copy;
+        }
+
+        return entry.solution.withHubs(node);
+    }
+
+    private static void write(MappedData data, MappedSolution solution, String status, long time_limit_ms, File entry) throws IOException {
+        int[] order = canonicalOrder(data);
+        int[] rank = new int[order.length];
+        for (int i=0; i<order.length; i++) {
+            rank[order[i]] = i;
+        }
+
+        File tmp = File.createTempFile(entry.getName(), ".tmp", entry.getParentFile());
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeDouble(solution.objective());
+            InstanceSnapshot.writeString(out, status);
+            out.writeLong(time_limit_ms);
+
+            out.writeInt(data.input.hubs.size());
+            out.writeInt(data._mapPickup2Delivery.size());
+            for (Map.Entry<Integer, Integer> e: data._mapPickup2Delivery.entrySet()) {
+                out.writeInt(e.getKey());
+                out.writeInt(e.getValue());
+            }
+
+            out.writeInt(solution.routes.size());
+            for (int k=0; k<solution.routes.size(); k++) {
+                ArrayList<Integer> route = solution.routes.get(k);
+                out.writeInt(route.size());
+                for (int s=0; s<route.size(); s++) {
+                    out.writeInt(route.get(s));
+                    InstanceSnapshot.writeString(out, data._hubIndex2hubID.get(route.get(s)));
+                    writeRequests(out, solution.pickup.get(k).get(s), data, rank);
+                    writeRequests(out, solution.delivery.get(k).get(s), data, rank);
+                }
+            }
+            writeRequests(out, solution.unserved, data, rank);
+        }
+
+        if (!tmp.renameTo(entry)) {
+            // renameTo does not replace an existing file on every platform
+            if (!entry.delete() || !tmp.renameTo(entry)) {
+                tmp.delete();
+                throw new IOException("Cannot move " + tmp + " to " + entry);
+            }
+        }
+    }
+
+    /**
+     * Reads an entry, the parts of the requests get the IDs of the requests of data with the same rank, no
+     * ID if data is null.
+     */
+    private static Entry read(File file, MappedData data) throws IOException {
+        String[] ids = null;
+        if (data != null) {
+            int[] order = canonicalOrder(data);
+            ids = new String[order.length];
+            for (int i=0; i<order.length; i++) {
+                ids[i] = data.requests.get(order[i]).id;
+            }
+        }
+
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+        try {
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                throw new IOException(file + " is not a cached solution of this version");
+            }
+
+            Entry entry = new Entry();
+            entry.objective = buffer.getDouble();
+            entry.status = InstanceSnapshot.readString(buffer);
+            entry.time_limit_ms = buffer.getLong();
+            entry.num_physical = buffer.getInt();
+            entry.copy_of = new HashMap<>();
+            int num_logical = buffer.getInt();
+            for (int c=0; c<num_logical; c++) {
+                int hub = buffer.getInt();
+                entry.copy_of.put(buffer.getInt(), hub);
+            }
+            entry.solution = new MappedSolution();
+            entry.solution.routes = new ArrayList<>();
+            entry.solution.pickup = new ArrayList<>();
+            entry.solution.delivery = new ArrayList<>();
+            entry.hub_routes = new ArrayList<>();
+
+            int K = buffer.getInt();
+            for (int k=0; k<K; k++) {
+                int num_stops = buffer.getInt();
+                ArrayList<Integer> route = new ArrayList<>(num_stops);
+                ArrayList<String> hub_route = new ArrayList<>(num_stops);
+                ArrayList<ArrayList<MappedRequest>> pickup = new ArrayList<>(num_stops);
+                ArrayList<ArrayList<MappedRequest>> delivery = new ArrayList<>(num_stops);
+                for (int s=0; s<num_stops; s++) {
+                    route.add(buffer.getInt());
+                    hub_route.add(InstanceSnapshot.readString(buffer));
+                    pickup.add(readRequests(buffer, ids));
+                    delivery.add(readRequests(buffer, ids));
+                }
+                entry.solution.routes.add(route);
+                entry.solution.pickup.add(pickup);
+                entry.solution.delivery.add(delivery);
+                entry.hub_routes.add(hub_route);
+            }
+            entry.solution.unserved = readRequests(buffer, ids);
+            return entry;
+        } catch (RuntimeException e) {
+            // BufferUnderflowException and the like on a truncated file
+            throw new IOException(file + " is damaged", e);
+        }
+    }
+
+    private static void writeRequests(DataOutputStream out, List<MappedRequest> requests, MappedData data, int[] rank) throws IOException {
+        if (requests == null) {
+            out.writeInt(-1);
+            return;
+        }
+        out.writeInt(requests.size());
+        for (MappedRequest req: requests) {
+            Integer r = req.id == null ? null : data._requestID2RequestIndex.get(req.id);
+            out.writeInt(r == null ? -1 : rank[r]);
+            out.writeInt(req.from_hub);
+            out.writeInt(req.to_hub);
+            out.writeDouble(req.quantity);
+        }
+    }
+
+    private static ArrayList<MappedRequest> readRequests(ByteBuffer buffer, String[] ids) {
+        int size = buffer.getInt();
+        if (size < 0) {
+            return null;
+        }
+        ArrayList<MappedRequest> requests = new ArrayList<>(size);
+        for (int r=0; r<size; r++) {
+            int rank = buffer.getInt();
+            int from = buffer.getInt();
+            int to = buffer.getInt();
+            String id = ids != null && rank >= 0 && rank < ids.length ? ids[rank] : null;
+            requests.add(new MappedRequest(id, from, to, buffer.getDouble()));
+        }
+        return requests;
+    }
+
+    /**
+     * Fingerprint of the whole instance: the network fingerprint, the hubs that have a logical copy and the
+     * requests between physical hubs, sorted by pickup hub, delivery hub, deadlines and quantity.
+     */
+    public static String fingerprint(MappedData data) {
+        int[] physical = physicalHubs(data);
+
+        MessageDigest digest = sha256();
+        try (DataOutputStream out = new DataOutputStream(new DigestOutputStream(OutputStream.nullOutputStream(), digest))) {
+            writeNetwork(out, data);
+
+            out.writeInt(data._mapPickup2Delivery.size());
+            for (int hub: new TreeSet<>(data._mapPickup2Delivery.keySet())) {
+                out.writeInt(hub);
+            }
+
+            int[] order = canonicalOrder(data);
+            out.writeInt(order.length);
+            for (int r: order) {
+                MappedRequest req = data.requests.get(r);
+                out.writeInt(physical[req.from_hub]);
+                out.writeInt(physical[req.to_hub]);
+                out.writeLong(req.pickupTime);
+                out.writeLong(req.deliveryTime);
+                out.writeDouble(req.quantity);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            throw new RuntimeException(e);
+        }
+        return hex(digest.digest());
+    }
+
+    /**
+     * The indices of the requests sorted by physical pickup hub, physical delivery hub, deadlines and quantity.
+     * Equal requests keep their order, they can be exchanged in a solution.
+     */
+    private static int[] canonicalOrder(MappedData data) {
+        int[] physical = physicalHubs(data);
+        List<MappedRequest> requests = data.requests;
+        Integer[] order = new Integer[requests.size()];
+        for (int r=0; r<order.length; r++) {
+            order[r] = r;
+        }
+        Arrays.sort(order, Comparator.<Integer>comparingInt(r -> physical[requests.get(r).from_hub]).thenComparingInt(r -> physical[requests.get(r).to_hub])
+                .thenComparingLong(r -> requests.get(r).pickupTime).thenComparingLong(r -> requests.get(r).deliveryTime)
+                .thenComparingDouble(r -> requests.get(r).quantity));
+        int[] result = new int[order.length];
+        for (int r=0; r<order.length; r++) {
+            result[r] = order[r];
+        }
+        return result;
+    }
+
+    /**
+     * physical[i] is the physical hub of (logical) hub i.
+     */
+    private static int[] physicalHubs(MappedData data) {
+        int[] physical = new int[data.N];
+        for (int i=0; i<data.N; i++) {
+            physical[i] = i;
+        }
+        for (Map.Entry<Integer, Integer> e: data._mapPickup2Delivery.entrySet()) {
+            physical[e.getValue()] = e.getKey();
+        }
+        return physical;
+    }
+
+    /**
+     * Fingerprint of the hubs, the travel times between them and the trucks, which do not depend on
+     * the requests. Only its first 16 hex digits are used, in the names of the entries.
+     */
+    public static String networkFingerprint(MappedData data) {
+        MessageDigest digest = sha256();
+        try (DataOutputStream out = new DataOutputStream(new DigestOutputStream(OutputStream.nullOutputStream(), digest))) {
+            writeNetwork(out, data);
+        } catch (IOException e) {
+            e.printStackTrace();
+            throw new RuntimeException(e);
+        }
+        return hex(digest.digest()).substring(0, 16);
+    }
+
+    private static void writeNetwork(DataOutputStream out, MappedData data) throws IOException {
+        int num_physical = data.input.hubs.size();
+        out.writeInt(num_physical);
+        for (int i=0; i<num_physical; i++) {
+            InstanceSnapshot.writeString(out, data.input.hubs.get(i).getHubID());
+        }
+        for (int i=0; i<num_physical; i++) {
+            for (int j=0; j<num_physical; j++) {
+                out.writeDouble(data.travelTime(i, j));
+            }
+        }
+
+        out.writeInt(data.K);
+        for (int k=0; k<data.K; k++) {
+            Truck truck = data.input.trucks.get(k);
+            InstanceSnapshot.writeString(out, truck.getLocation());
+            out.writeLong(data.startWorkingTime.get(k));
+            out.writeDouble(data.capacity.get(k));
+            if (truck.getForbiddenPoints() == null) {
+                out.writeInt(-1);
+            } else {
+                List<String> forbidden = new ArrayList<>(truck.getForbiddenPoints());
+                forbidden.sort(Comparator.nullsFirst(Comparator.naturalOrder()));
+                out.writeInt(forbidden.size());
+                for (String point: forbidden) {
+                    InstanceSnapshot.writeString(out, point);
+                }
+            }
+        }
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            e.printStackTrace();
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static String hex(byte[] bytes) {
+        StringBuilder s = new StringBuilder();
+        for (byte b: bytes) {
+            s.append(String.format("%02x", b));
+        }
+        return s.toString();
+    }
+}
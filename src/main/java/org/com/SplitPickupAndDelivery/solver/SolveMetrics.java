@@ -0,0 +1,198 @@
+package org.com.SplitPickupAndDelivery.solver;
+
+import com.google.ortools.linearsolver.MPModelProto;
+import com.google.ortools.linearsolver.MPSolver;
+import com.google.ortools.sat.ConstraintProto;
+import com.google.ortools.sat.CpModelProto;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Measurements of one solve: the duration of each phase (read, map, cache, presolve, build, solve, extract,
+ * resolve, export), the size of the model and the statistics of the search. The callers time read, map, cache,
+ * presolve, resolve and export, the solvers time build, solve and extract and fill the rest. Counters that a
+ * solver does not know stay at -1 and the bound stays NaN.
+ *
+ * When one solve runs several solvers one after the other, e.g. the MILP and the routing fallback of
+ * Main.solve(), the phases add up and the model and search fields describe the last solver.
+ */
+public class SolveMetrics {
+
+    public static final String[] PHASES = {"read", "map", "cache", "presolve", "build", "solve", "extract", "resolve", "export"};
+
+    public String instance;             // label of the instance in the dumps, e.g. the name of the workbook
+    public String solver;
+    public String status;               // final status reported by the solver, e.g. OPTIMAL or FEASIBLE
+    public long num_variables = -1;
+    public long num_constraints = -1;
+    public long num_nonzeros = -1;      // nonzero coefficients of the constraints
+    public long iterations = -1;        // simplex iterations of SCIP, LP iterations of CP-SAT, ALNS iterations
+    public long nodes = -1;             // branch and bound nodes of SCIP, branches of CP-SAT and of the routing search
+    public double best_bound = Double.NaN;
+    public double objective = Double.NaN;
+
+    private final Map<String, Long> phase_ms = new LinkedHashMap<>();
+
+    public SolveMetrics() {
+    }
+
+    public SolveMetrics(String instance) {
+        this.instance = instance;
+    }
+
+    /**
+     * Adds the duration of a phase, a phase measured several times is summed.
+     */
+    public synchronized void addPhase(String phase, long ms) {
+        phase_ms.merge(phase, ms, Long::sum);
+    }
+
+    public synchronized long phase(String phase) {
+        return phase_ms.getOrDefault(phase, 0L);
+    }
+
+    public synchronized Map<String, Long> phases() {
+        return Collections.unmodifiableMap(new LinkedHashMap<>(phase_ms));
+    }
+
+    /**
+     * Called by a solver before it fills the metrics, forgets what the previous solver reported
+     * but keeps the phases.
+     */
+    public void startSolver(String solver) {
+        this.solver = solver;
+        status = null;
+        num_variables = -1;
+        num_constraints = -1;
+        num_nonzeros = -1;
+        iterations = -1;
+        nodes = -1;
+        best_bound = Double.NaN;
+        objective = Double.NaN;
+    }
+
+    public void setModelSize(MPSolver model) {
+        num_variables = model.numVariables();
+        num_constraints = model.numConstraints();
+        MPModelProto proto = model.exportModelToProto();
+        long nonzeros = 0;
+        for (int c=0; c<proto.getConstraintCount(); c++) {
+            nonzeros += proto.getConstraint(c).getVarIndexCount();
+        }
+        num_nonzeros = nonzeros;
+    }
+
+    /**
+     * The nonzeros of a CP-SAT model are the terms of its linear constraints plus the literals of its
+     * boolean and circuit constraints and of the enforcement conditions.
+     */
+    public void setModelSize(CpModelProto model) {
+        num_variables = model.getVariablesCount();
+        num_constraints = model.getConstraintsCount();
+        long nonzeros = 0;
+        for (ConstraintProto ct: model.getConstraintsList()) {
+            nonzeros += ct.getEnforcementLiteralCount();
+            switch (ct.getConstraintCase()) {
+                case LINEAR: nonzeros += ct.getLinear().getVarsCount(); break;
+                case BOOL_OR: nonzeros += ct.getBoolOr().getLiteralsCount(); break;
+                case BOOL_AND: nonzeros += ct.getBoolAnd().getLiteralsCount(); break;
+                case AT_MOST_ONE: nonzeros += ct.getAtMostOne().getLiteralsCount(); break;
+                case EXACTLY_ONE: nonzeros += ct.getExactlyOne().getLiteralsCount(); break;
+                case CIRCUIT: nonzeros += ct.getCircuit().getLiteralsCount(); break;
+                default: break;
+            }
+        }
+        num_nonzeros = nonzeros;
+    }
+
+    public String toJson() {
+        StringBuilder json = new StringBuilder("{");
+        json.append("\"instance\":").append(quote(instance));
+        json.append(",\"solver\":").append(quote(solver));
+        json.append(",\"status\":").append(quote(status));
+        json.append(",\"phases_ms\":{");
+        boolean first = true;
+        for (Map.Entry<String, Long> e: phases().entrySet()) {
+            json.append(first ? "" : ",").append(quote(e.getKey())).append(":").append(e.getValue());
+            first = false;
+        }
+        json.append("}");
+        json.append(",\"variables\":").append(num_variables);
+        json.append(",\"constraints\":").append(num_constraints);
+        json.append(",\"nonzeros\":").append(num_nonzeros);
+        json.append(",\"iterations\":").append(iterations);
+        json.append(",\"nodes\":").append(nodes);
+        json.append(",\"best_bound\":").append(number(best_bound));
+        json.append(",\"objective\":").append(number(objective));
+        return json.append("}").toString();
+    }
+
+    public String toPrometheus() {
+        return toPrometheus(Collections.singletonList(this));
+    }
+
+    /**
+     * Prometheus text exposition of several solves, labelled by instance. Counters that are unknown
+     * are left out.
+     */
+    public static String toPrometheus(List<SolveMetrics> all) {
+        StringBuilder text = new StringBuilder();
+        text.append("# HELP pdp_phase_seconds Duration of a phase of the solve.\n");
+        text.append("# TYPE pdp_phase_seconds gauge\n");
+        for (SolveMetrics m: all) {
+            for (Map.Entry<String, Long> e: m.phases().entrySet()) {
+                text.append("pdp_phase_seconds{").append(m.labels()).append(",phase=").append(quote(e.getKey())).append("} ")
+                        .append(e.getValue() / 1e3).append("\n");
+            }
+        }
+        gauge(text, all, "pdp_model_variables", "Number of variables of the model.", m -> (double) m.num_variables);
+        gauge(text, all, "pdp_model_constraints", "Number of constraints of the model.", m -> (double) m.num_constraints);
+        gauge(text, all, "pdp_model_nonzeros", "Number of nonzero coefficients of the constraints.", m -> (double) m.num_nonzeros);
+        gauge(text, all, "pdp_search_iterations", "Iterations of the search.", m -> (double) m.iterations);
+        gauge(text, all, "pdp_search_nodes", "Nodes or branches of the search.", m -> (double) m.nodes);
+        gauge(text, all, "pdp_best_bound", "Best lower bound on the number of moves.", m -> m.best_bound);
+        gauge(text, all, "pdp_objective", "Objective of the solution.", m -> m.objective);
+        text.append("# HELP pdp_solve_status Final status of the solver, always 1.\n");
+        text.append("# TYPE pdp_solve_status gauge\n");
+        for (SolveMetrics m: all) {
+            if (m.status != null) {
+                text.append("pdp_solve_status{").append(m.labels()).append(",status=").append(quote(m.status)).append("} 1\n");
+            }
+        }
+        return text.toString();
+    }
+
+    private interface Value {
+        double of(SolveMetrics m);
+    }
+
+    private static void gauge(StringBuilder text, List<SolveMetrics> all, String name, String help, Value value) {
+        text.append("# HELP ").append(name).append(" ").append(help).append("\n");
+        text.append("# TYPE ").append(name).append(" gauge\n");
+        for (SolveMetrics m: all) {
+            double v = value.of(m);
+            if (!Double.isNaN(v) && v != -1) {
+                text.append(name).append("{").append(m.labels()).append("} ").append(v).append("\n");
+            }
+        }
+    }
+
+    private String labels() {
+        return "instance=" + quote(instance == null ? "" : instance) + ",solver=" + quote(solver == null ? "" : solver);
+    }
+
+    private static String quote(String s) {
+        if (s == null) {
+            return "null";
+        }
+        return "\"" + s.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n") + "\"";
+    }
+
+    private static String number(double value) {
+        return Double.isNaN(value) || Double.isInfinite(value) ? "null" : String.format(Locale.ROOT, "%s", value);
+    }
+}
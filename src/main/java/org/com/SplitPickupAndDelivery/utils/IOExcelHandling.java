@@ -1,144 +1,36 @@
 package org.com.SplitPickupAndDelivery.utils;
 
-import org.apache.commons.math3.util.Pair;
 import org.apache.poi.ss.usermodel.Cell;
-import org.apache.poi.ss.usermodel.CellType;
 import org.apache.poi.ss.usermodel.Row;
-import org.apache.poi.xssf.usermodel.XSSFSheet;
-import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
 import org.com.SplitPickupAndDelivery.models.*;
 
 import java.io.*;
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.HashMap;
-import java.util.Iterator;
-import java.util.stream.Collectors;
 
 public class IOExcelHandling {
 
-    public static InputData readInputData(String filePath) {
-        try {
-            FileInputStream file = new FileInputStream(new File(filePath));
-            XSSFWorkbook workbook = new XSSFWorkbook(file);
-
-            InputData data = new InputData();
-
-            // read request info
-            ArrayList<Request> req_list = new ArrayList<>();
-            XSSFSheet request_sheet = workbook.getSheetAt(0);
-            Iterator<Row> rowIterator = request_sheet.iterator();
-            rowIterator.next(); // ignore the header row
-            while (rowIterator.hasNext())
-            {
-                Row row = rowIterator.next();
-                Request req = new Request();
-
-                req.setRequestID(row.getCell(0).getStringCellValue());
-                req.setPickupPoint(row.getCell(1).getStringCellValue());
-                req.setPickupDateTime(row.getCell(2).getStringCellValue());
-                req.setDeliveryPoint(row.getCell(3).getStringCellValue());
-                req.setDeliveryDateTime(row.getCell(4).getStringCellValue());
-
-                if (row.getCell(5).getCellType() == CellType.NUMERIC) {
-                    req.setDemand(row.getCell(2).getNumericCellValue());
-                } else {
-                    req.setDemand(Double.parseDouble(row.getCell(5).getStringCellValue()));
-                }
+    // rows of the solution kept in memory per sheet, the older ones are flushed to a temp file
+    private static final int EXPORT_ROW_WINDOW = 100;
 
-                req_list.add(req);
-            }
-            data.requests = req_list;
-
-            // read hubs info
-            ArrayList<Hub> hub_list = new ArrayList<Hub>();
-            XSSFSheet hub_sheet = workbook.getSheetAt(1);
-            rowIterator = hub_sheet.iterator();
-            rowIterator.next(); // ignore the header row
-            while (rowIterator.hasNext())
-            {
-                Row row = rowIterator.next();
-                Hub hub = new Hub();
-
-                hub.setHubID(row.getCell(0).getStringCellValue());
-                hub.setHubName(row.getCell(1).getStringCellValue());
-
-                hub_list.add(hub);
-            }
-            data.hubs = hub_list;
-
-            // read traveling time info
-            HashMap<Pair<String, String>, Long> travel_time = new HashMap<Pair<String, String>, Long>();
-            XSSFSheet distance_sheet = workbook.getSheetAt(2);
-            rowIterator = distance_sheet.iterator();
-            rowIterator.next(); // ignore the header row
-            while (rowIterator.hasNext())
-            {
-                Row row = rowIterator.next();
-
-                String src_hub = row.getCell(0).getStringCellValue();
-                String des_hub = row.getCell(1).getStringCellValue();
-
-                long time = -1;
-                if (row.getCell(2) == null) {
-                    // the path does not exist
-                    continue;
-                }
-
-                if (row.getCell(2).getCellType() == CellType.NUMERIC) {
-                    time = (long) row.getCell(2).getNumericCellValue();
-                } else {
-                    time = Long.parseLong(row.getCell(2).getStringCellValue());
-                }
-                travel_time.put(new Pair<>(src_hub, des_hub), time);
-            }
-            data.travel_time = travel_time;
-
-            // read truck info
-            ArrayList<Truck> truck_list = new ArrayList<Truck>();
-            XSSFSheet truck_sheet = workbook.getSheetAt(3);
-            rowIterator = truck_sheet.iterator();
-            rowIterator.next(); // ignore the header row
-            while (rowIterator.hasNext())
-            {
-                Row row = rowIterator.next();
-                Truck truck = new Truck();
-
-                truck.setTruckID(row.getCell(0).getStringCellValue());
-                truck.setLocation(row.getCell(1).getStringCellValue());
-                truck.setStartWorkingTime(row.getCell(2).getStringCellValue());
-
-                if (row.getCell(3).getCellType() == CellType.NUMERIC) {
-                    truck.setCapacity(row.getCell(3).getNumericCellValue());
-                } else {
-                    truck.setCapacity(Double.parseDouble(row.getCell(3).getStringCellValue()));
-                }
-
-                if (row.getCell(4) != null && row.getCell(4).getStringCellValue().length() > 0) {
-                    ArrayList<String> fp = new ArrayList<>();
-                    String[] arr_fb = row.getCell(4).getStringCellValue().replace(" ", "").split(",");
-                    fp.addAll(Arrays.stream(arr_fb).collect(Collectors.toList()));
-                    truck.setForbiddenPoints(fp);
-                }
-
-                truck_list.add(truck);
-            }
-            data.trucks = truck_list;
-
-            file.close();
-            return data;
-        } catch (IOException e) {
-            e.printStackTrace();
-            return null;
-        }
+    /**
+     * Reads the input workbook. The sheets are streamed, see StreamingExcelReader.
+     */
+    public static InputData readInputData(String filePath) {
+        return StreamingExcelReader.readInputData(filePath);
     }
 
+    /**
+     * Writes the solution with the SXSSF streaming workbook: only the last EXPORT_ROW_WINDOW rows of each sheet
+     * stay in memory, the others go to gzipped temp files that are deleted once the workbook is written.
+     */
     public static void exportSolution(String filePath, Solution output) {
-        XSSFWorkbook workbook = new XSSFWorkbook();
+        SXSSFWorkbook workbook = new SXSSFWorkbook(EXPORT_ROW_WINDOW);
+        workbook.setCompressTempFiles(true);
 
         // saver route info
-        XSSFSheet routes = workbook.createSheet("Routes");
-        XSSFSheet operations = workbook.createSheet("Solution details");
+        Sheet routes = workbook.createSheet("Routes");
+        Sheet operations = workbook.createSheet("Solution details");
 
         // header row of the route sheet
         int route_row = 0;
@@ -274,13 +166,12 @@ public class IOExcelHandling {
             }
         }
 
-        FileOutputStream fout = null;
-        try {
-            fout = new FileOutputStream(new File(filePath));
+        try (FileOutputStream fout = new FileOutputStream(new File(filePath))) {
             workbook.write(fout);
-            fout.close();
         } catch (IOException e) {
             throw new RuntimeException(e);
+        } finally {
+            workbook.dispose();
         }
     }
 
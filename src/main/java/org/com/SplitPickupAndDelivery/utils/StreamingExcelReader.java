@@ -0,0 +1,260 @@
+package org.com.SplitPickupAndDelivery.utils;
+
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.util.XMLHelper;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.com.SplitPickupAndDelivery.models.*;
+import org.com.SplitPickupAndDelivery.solver.Parameters;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+
+import javax.xml.parsers.ParserConfigurationException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Reads the input workbook with the SAX event API of POI instead of building the XSSFWorkbook DOM.
+ * Every sheet is scanned once, row by row, and each row is turned into a model object right away,
+ * so the memory used by the reader itself does not depend on the number of rows. The distance rows
+ * go straight into a TravelTimeMatrix indexed like the hubs.
+ *
+ * Only the raw cell values are read, the cell styles are ignored. Numeric cells are returned
+ * the way Java prints their double value, e.g. "1200.0", as the XSSFWorkbook reader did.
+ */
+public class StreamingExcelReader {
+
+    /**
+     * Receives the cells of one row, indexed by column. Missing cells are null.
+     */
+    private interface RowHandler {
+        void row(List<String> cells);
+    }
+
+    public static InputData readInputData(String filePath) {
+        try (OPCPackage pkg = OPCPackage.open(filePath, PackageAccess.READ)) {
+            XSSFReader reader = new XSSFReader(pkg);
+            ReadOnlySharedStringsTable shared_strings = new ReadOnlySharedStringsTable(pkg, false);
+            // shared strings are resolved once, so every occurrence of a hub ID is the same String
+            String[] strings = new String[shared_strings.getUniqueCount()];
+            for (int i=0; i<strings.length; i++) {
+                strings[i] = shared_strings.getItemAt(i).getString();
+            }
+
+            InputData data = new InputData();
+            data.requests = new ArrayList<>();
+            data.hubs = new ArrayList<>();
+            data.trucks = new ArrayList<>();
+            HashMap<String, Integer> hub_index = new HashMap<>();
+
+            RowHandler[] handlers = {
+                    cells -> data.requests.add(readRequest(cells)),
+                    cells -> data.hubs.add(readHub(cells)),
+                    cells -> readTravelTime(cells, hub_index, data.travel_time),
+                    cells -> data.trucks.add(readTruck(cells)),
+            };
+
+            Iterator<InputStream> sheets = reader.getSheetsData();
+            for (int s=0; s<handlers.length; s++) {
+                if (!sheets.hasNext()) {
+                    throw new IOException("The input workbook has " + s + " sheets, 4 are expected");
+                }
+                if (s == 2) {
+                    // the hubs are known, the matrix can be allocated
+                    for (int i=0; i<data.hubs.size(); i++) {
+                        hub_index.put(data.hubs.get(i).getHubID(), i);
+                    }
+                    data.travel_time = new TravelTimeMatrix(data.hubs.size(), Parameters.OFF_HEAP_TRAVEL_TIME);
+                }
+                try (InputStream sheet = sheets.next()) {
+                    parseSheet(sheet, strings, handlers[s]);
+                }
+            }
+
+            return data;
+        } catch (IOException | OpenXML4JException | SAXException | ParserConfigurationException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    private static Request readRequest(List<String> cells) {
+        Request req = new Request();
+        req.setRequestID(cell(cells, 0));
+        req.setPickupPoint(cell(cells, 1));
+        req.setPickupDateTime(cell(cells, 2));
+        req.setDeliveryPoint(cell(cells, 3));
+        req.setDeliveryDateTime(cell(cells, 4));
+        req.setDemand(Double.parseDouble(cell(cells, 5)));
+        return req;
+    }
+
+    private static Hub readHub(List<String> cells) {
+        Hub hub = new Hub();
+        hub.setHubID(cell(cells, 0));
+        hub.setHubName(cell(cells, 1));
+
+        // the coordinates are optional
+        if (cell(cells, 2) != null) {
+            hub.setHub_lat(cell(cells, 2));
+        }
+        if (cell(cells, 3) != null) {
+            hub.setHub_long(cell(cells, 3));
+        }
+        return hub;
+    }
+
+    private static void readTravelTime(List<String> cells, HashMap<String, Integer> hub_index, TravelTimeMatrix travel_time) {
+        if (cell(cells, 2) == null) {
+            // the path does not exist
+            return;
+        }
+        Integer from = hub_index.get(cell(cells, 0));
+        Integer to = hub_index.get(cell(cells, 1));
+        if (from == null || to == null) {
+            // path to a hub that is not in the hub sheet
+            return;
+        }
+        long time = (long) Double.parseDouble(cell(cells, 2));
+        travel_time.set(from, to, time);
+    }
+
+    private static Truck readTruck(List<String> cells) {
+        Truck truck = new Truck();
+        truck.setTruckID(cell(cells, 0));
+        truck.setLocation(cell(cells, 1));
+        truck.setStartWorkingTime(cell(cells, 2));
+        truck.setCapacity(Double.parseDouble(cell(cells, 3)));
+
+        String forbidden = cell(cells, 4);
+        if (forbidden != null && forbidden.length() > 0) {
+            ArrayList<String> fp = new ArrayList<>();
+            String[] arr_fb = forbidden.replace(" ", "").split(",");
+            fp.addAll(Arrays.stream(arr_fb).collect(Collectors.toList()));
+            truck.setForbiddenPoints(fp);
+        }
+        return truck;
+    }
+
+    private static String cell(List<String> cells, int col) {
+        return col < cells.size() ? cells.get(col) : null;
+    }
+
+    /**
+     * Streams the rows of one sheet, except the header row, to the handler.
+     */
+    private static void parseSheet(InputStream sheet, String[] strings, RowHandler handler)
+            throws IOException, SAXException, ParserConfigurationException {
+        XMLReader parser = XMLHelper.newXMLReader();
+        parser.setContentHandler(new SheetHandler(strings, handler));
+        parser.parse(new InputSource(sheet));
+    }
+
+    private static class SheetHandler extends DefaultHandler {
+        private final String[] strings;
+        private final RowHandler handler;
+
+        private final List<String> cells = new ArrayList<>();
+        private final StringBuilder text = new StringBuilder();
+        private boolean header = true;
+        private boolean in_value = false;
+        private int col;
+        private String type;
+
+        SheetHandler(String[] strings, RowHandler handler) {
+            this.strings = strings;
+            this.handler = handler;
+        }
+
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes attributes) {
+            switch (localName) {
+                case "row":
+                    cells.clear();
+                    col = -1;
+                    break;
+                case "c":
+                    String ref = attributes.getValue("r");
+                    col = ref != null ? columnIndex(ref) : col + 1;
+                    type = attributes.getValue("t");
+                    text.setLength(0);
+                    break;
+                case "v":
+                case "t":
+                    // <v> holds the value, <is><t> holds an inline string
+                    in_value = true;
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        @Override
+        public void characters(char[] ch, int start, int length) {
+            if (in_value) {
+                text.append(ch, start, length);
+            }
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String qName) {
+            switch (localName) {
+                case "v":
+                case "t":
+                    in_value = false;
+                    break;
+                case "c":
+                    // a cell without a value only carries a style, it is read as a missing cell
+                    String value = text.length() > 0 ? text.toString() : null;
+                    if (value == null) {
+                        break;
+                    }
+                    if ("s".equals(type)) {
+                        value = strings[Integer.parseInt(value)];
+                    } else if (type == null || "n".equals(type)) {
+                        value = String.valueOf(Double.parseDouble(value));
+                    } else if ("b".equals(type)) {
+                        value = value.equals("1") ? "TRUE" : "FALSE";
+                    }
+                    while (cells.size() < col) {
+                        cells.add(null);
+                    }
+                    cells.add(value);
+                    break;
+                case "row":
+                    if (header) {
+                        header = false;
+                    } else {
+                        handler.row(cells);
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        // "AB12" -> 27
+        private static int columnIndex(String ref) {
+            int index = 0;
+            for (int i=0; i<ref.length(); i++) {
+                char c = ref.charAt(i);
+                if (c < 'A' || c > 'Z') {
+                    break;
+                }
+                index = 26 * index + (c - 'A' + 1);
+            }
+            return index - 1;
+        }
+    }
+}
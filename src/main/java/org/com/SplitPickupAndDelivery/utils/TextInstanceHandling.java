@@ -0,0 +1,138 @@
+package org.com.SplitPickupAndDelivery.utils;
+
+import org.com.SplitPickupAndDelivery.models.*;
+import org.com.SplitPickupAndDelivery.solver.Parameters;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Random;
+
+/**
+ * Reads and generates instances in the plain text format of data/test_*.txt:
+ *
+ *      N K                 number of hubs and trucks
+ *      c_0 ... c_K-1       truck capacities
+ *      R                   number of requests
+ *      from to quantity    R lines, hubs numbered from 0
+ *
+ * The format has no times and no truck locations. Every arc exists with a travel time of 0, the requests
+ * can be served during a whole day and all trucks start at hub 0, so the timed models solve the same
+ * problem as MILPPickupAndDelivery.
+ */
+public class TextInstanceHandling {
+
+    public static final String START_TIME = "2022-12-01 00:00:00";
+    public static final String END_TIME = "2022-12-02 00:00:00";
+
+    public static InputData readInputData(String filePath) {
+        try (Reader reader = new BufferedReader(new FileReader(filePath), 1 << 16)) {
+            StreamTokenizer tokens = new StreamTokenizer(reader);
+
+            int num_hubs = nextInt(tokens);
+            int num_trucks = nextInt(tokens);
+            double[] capacity = new double[num_trucks];
+            for (int k=0; k<num_trucks; k++) {
+                capacity[k] = nextNumber(tokens);
+            }
+
+            int num_requests = nextInt(tokens);
+            int[] from = new int[num_requests];
+            int[] to = new int[num_requests];
+            double[] quantity = new double[num_requests];
+            int max_hub = -1;
+            for (int r=0; r<num_requests; r++) {
+                from[r] = nextInt(tokens);
+                to[r] = nextInt(tokens);
+                quantity[r] = nextNumber(tokens);
+                max_hub = Math.max(max_hub, Math.max(from[r], to[r]));
+            }
+            if (max_hub >= num_hubs) {
+                System.out.println(filePath + " declares " + num_hubs + " hubs but uses hub " + max_hub + ", reading " + (max_hub + 1) + " hubs.");
+                num_hubs = max_hub + 1;
+            }
+
+            InputData data = new InputData();
+            data.hubs = new ArrayList<>(num_hubs);
+            for (int i=0; i<num_hubs; i++) {
+                Hub hub = new Hub();
+                hub.setHubID(String.valueOf(i));
+                hub.setHubName(String.valueOf(i));
+                data.hubs.add(hub);
+            }
+
+            data.travel_time = new TravelTimeMatrix(num_hubs, Parameters.OFF_HEAP_TRAVEL_TIME, 0);
+
+            data.trucks = new ArrayList<>(num_trucks);
+            for (int k=0; k<num_trucks; k++) {
+                Truck truck = new Truck();
+                truck.setTruckID("T" + k);
+                truck.setLocation("0");
+                truck.setStartWorkingTime(START_TIME);
+                truck.setCapacity(capacity[k]);
+                data.trucks.add(truck);
+            }
+
+            data.requests = new ArrayList<>(num_requests);
+            for (int r=0; r<num_requests; r++) {
+                Request req = new Request();
+                req.setRequestID(String.valueOf(r));
+                req.setPickupPoint(String.valueOf(from[r]));
+                req.setPickupDateTime(START_TIME);
+                req.setDeliveryPoint(String.valueOf(to[r]));
+                req.setDeliveryDateTime(END_TIME);
+                req.setDemand(quantity[r]);
+                data.requests.add(req);
+            }
+
+            return data;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * Writes a random instance: num_requests distinct (from, to) pairs with quantities of 10 to 50 boxes,
+     * trucks of capacity 200. The same seed gives the same instance.
+     */
+    public static void generateInstance(String filePath, int num_hubs, int num_trucks, int num_requests, long seed) {
+        if (num_requests > (long) num_hubs * (num_hubs - 1)) {
+            throw new IllegalArgumentException(num_hubs + " hubs allow at most " + (long) num_hubs * (num_hubs - 1) + " requests");
+        }
+
+        Random rnd = new Random(seed);
+        try (PrintWriter writer = new PrintWriter(new BufferedWriter(new FileWriter(filePath), 1 << 16))) {
+            writer.println(num_hubs + " " + num_trucks);
+            StringBuilder capacities = new StringBuilder();
+            for (int k=0; k<num_trucks; k++) {
+                capacities.append(k > 0 ? " " : "").append(200);
+            }
+            writer.println(capacities);
+
+            writer.println(num_requests);
+            HashSet<Long> pairs = new HashSet<>();
+            while (pairs.size() < num_requests) {
+                int from = rnd.nextInt(num_hubs);
+                int to = rnd.nextInt(num_hubs);
+                if (from == to || !pairs.add((long) from * num_hubs + to)) {
+                    continue;
+                }
+                writer.println(from + " " + to + " " + 10 * (1 + rnd.nextInt(5)));
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static double nextNumber(StreamTokenizer tokens) throws IOException {
+        if (tokens.nextToken() != StreamTokenizer.TT_NUMBER) {
+            throw new IOException("Number expected at line " + tokens.lineno() + ", found " + tokens);
+        }
+        return tokens.nval;
+    }
+
+    private static int nextInt(StreamTokenizer tokens) throws IOException {
+        return (int) nextNumber(tokens);
+    }
+}
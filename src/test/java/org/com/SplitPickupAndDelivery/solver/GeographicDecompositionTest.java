@@ -0,0 +1,113 @@
+package org.com.SplitPickupAndDelivery.solver;
+
+import org.com.SplitPickupAndDelivery.models.*;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class GeographicDecompositionTest {
+
+    /**
+     * Two regions of three hubs, A and B share their hubs in the first region, C stays in the second and D goes
+     * from one to the other. The merge must credit A and B to their own IDs and the repair must add D.
+     */
+    @Test
+    public void requestsOnTheSameHubsAreMergedSeparately() {
+        InputData data = instance();
+        MappedData mapped_data = MappedData.parseInput(data);
+        GeographicDecomposition decomposition = new GeographicDecomposition(mapped_data, 2);
+        decomposition.setTimeLimit(2000);
+        MappedSolution solution = decomposition.solve(false);
+        assertEquals(0, solution.unservedQuantity(), 1e-6);
+
+        HashMap<String, Double> picked = new HashMap<>();
+        HashMap<String, Double> delivered = new HashMap<>();
+        for (Route route: mapped_data.resolveOutput(solution).routes) {
+            if (route != null) {
+                for (int s=0; s<route.path.size(); s++) {
+                    for (Request req: route.pickup.get(s)) {
+                        picked.merge(req.getRequestID(), req.getDemand(), Double::sum);
+                    }
+                    for (Request req: route.drop.get(s)) {
+                        delivered.merge(req.getRequestID(), req.getDemand(), Double::sum);
+                    }
+                }
+            }
+        }
+        for (Request req: data.requests) {
+            assertEquals(req.getDemand(), picked.getOrDefault(req.getRequestID(), 0.0), 1e-6, req.getRequestID());
+            assertEquals(req.getDemand(), delivered.getOrDefault(req.getRequestID(), 0.0), 1e-6, req.getRequestID());
+        }
+    }
+
+    /**
+     * Without time left after the regions, the request between them is reported unserved instead of being
+     * inserted past the time limit.
+     */
+    @Test
+    public void repairStopsAtTheTimeLimit() {
+        GeographicDecomposition decomposition = new GeographicDecomposition(MappedData.parseInput(instance()), 2);
+        decomposition.setTimeLimit(0);
+        MappedSolution solution = decomposition.solve(false);
+        assertNotNull(solution);
+        assertTrue(solution.unservedQuantity() >= 20 - 1e-6);
+    }
+
+    /**
+     * Two regions of three hubs, 10 minutes apart inside a region and one hour between regions.
+     */
+    private static InputData instance() {
+        InputData data = new InputData();
+        data.hubs = new ArrayList<>();
+        for (int i=0; i<6; i++) {
+            Hub hub = new Hub();
+            hub.setHubID("H" + i);
+            hub.setHubName("Hub " + i);
+            hub.setHub_lat(String.valueOf(i < 3 ? 10 + 0.01 * i : 50 + 0.01 * i));
+            hub.setHub_long("10");
+            data.hubs.add(hub);
+        }
+        data.travel_time = new TravelTimeMatrix(6, false);
+        for (int i=0; i<6; i++) {
+            for (int j=0; j<6; j++) {
+                if (i != j) {
+                    data.travel_time.set(i, j, (i < 3) == (j < 3) ? 600 : 3600);
+                }
+            }
+        }
+
+        data.trucks = new ArrayList<>();
+        data.trucks.add(truck("T0", "H0"));
+        data.trucks.add(truck("T1", "H3"));
+
+        data.requests = new ArrayList<>();
+        data.requests.add(request("A", "H1", "H2", 100));
+        data.requests.add(request("B", "H1", "H2", 30));
+        data.requests.add(request("C", "H4", "H5", 50));
+        data.requests.add(request("D", "H0", "H5", 20));
+        return data;
+    }
+
+    private static Truck truck(String id, String location) {
+        Truck truck = new Truck();
+        truck.setTruckID(id);
+        truck.setLocation(location);
+        truck.setStartWorkingTime("2022-12-01 08:00:00");
+        truck.setCapacity(1000);
+        return truck;
+    }
+
+    private static Request request(String id, String from, String to, double demand) {
+        Request req = new Request();
+        req.setRequestID(id);
+        req.setPickupPoint(from);
+        req.setDeliveryPoint(to);
+        req.setPickupDateTime("2022-12-01 12:00:00");
+        req.setDeliveryDateTime("2022-12-01 18:00:00");
+        req.setDemand(demand);
+        return req;
+    }
+}
@@ -0,0 +1,142 @@
+package org.com.SplitPickupAndDelivery.solver;
+
+import org.com.SplitPickupAndDelivery.models.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class InstanceSnapshotTest {
+
+    @TempDir
+    File directory;
+
+    /**
+     * A snapshot read back gives the instance that parseInput() built: hubs, trucks with their forbidden points,
+     * requests with their parsed times, logical copies and every travel time, missing arcs included.
+     */
+    @Test
+    public void readGivesTheParsedInstance() throws IOException {
+        MappedData parsed = MappedData.parseInput(instance());
+        String path = new File(directory, "instance" + InstanceSnapshot.EXTENSION).getPath();
+        InstanceSnapshot.write(parsed, path);
+        MappedData loaded = InstanceSnapshot.read(path);
+        assertFalse(parsed._mapPickup2Delivery.isEmpty());
+        assertTrue(parsed.travelTime(2, 3) < 0);
+
+        assertEquals(parsed.N, loaded.N);
+        assertEquals(parsed.K, loaded.K);
+        assertEquals(parsed.capacity, loaded.capacity);
+        assertEquals(parsed.truck_location, loaded.truck_location);
+        assertEquals(parsed.forbiddenPoints, loaded.forbiddenPoints);
+        assertEquals(parsed.startWorkingTime, loaded.startWorkingTime);
+        assertEquals(parsed._mapPickup2Delivery, loaded._mapPickup2Delivery);
+        assertEquals(parsed._hubID2HubIndex, loaded._hubID2HubIndex);
+        assertEquals(parsed._hubIndex2hubID, loaded._hubIndex2hubID);
+        assertEquals(parsed._truckID2TruckIndex, loaded._truckID2TruckIndex);
+        assertEquals(parsed._requestID2RequestIndex, loaded._requestID2RequestIndex);
+
+        assertEquals(parsed.requests.size(), loaded.requests.size());
+        for (int r=0; r<parsed.requests.size(); r++) {
+            MappedRequest expected = parsed.requests.get(r);
+            MappedRequest actual = loaded.requests.get(r);
+            assertEquals(expected.id, actual.id);
+            assertEquals(expected.from_hub, actual.from_hub);
+            assertEquals(expected.pickupTime, actual.pickupTime);
+            assertEquals(expected.to_hub, actual.to_hub);
+            assertEquals(expected.deliveryTime, actual.deliveryTime);
+            assertEquals(expected.quantity, actual.quantity, 0);
+
+            Request req = loaded.input.requests.get(r);
+            assertEquals(parsed.input.requests.get(r).getPickupDateTime(), req.getPickupDateTime());
+            assertEquals(parsed.input.requests.get(r).getDeliveryPoint(), req.getDeliveryPoint());
+        }
+        for (int i=0; i<parsed.input.hubs.size(); i++) {
+            assertEquals(parsed.input.hubs.get(i).getHubName(), loaded.input.hubs.get(i).getHubName());
+            assertEquals(parsed.input.hubs.get(i).getHub_lat(), loaded.input.hubs.get(i).getHub_lat());
+        }
+
+        for (int i=0; i<parsed.N; i++) {
+            for (int j=0; j<parsed.N; j++) {
+                assertEquals(parsed.travelTime(i, j), loaded.travelTime(i, j), 0, i + " -> " + j);
+            }
+        }
+    }
+
+    /**
+     * A truncated snapshot is reported as an IOException, so loadOrParse() reads the workbook again.
+     */
+    @Test
+    public void truncatedSnapshotIsRejected() throws IOException {
+        String path = new File(directory, "instance" + InstanceSnapshot.EXTENSION).getPath();
+        InstanceSnapshot.write(MappedData.parseInput(instance()), path);
+        try (RandomAccessFile file = new RandomAccessFile(path, "rw")) {
+            file.setLength(file.length() / 2);
+        }
+        assertThrows(IOException.class, () -> InstanceSnapshot.read(path));
+    }
+
+    /**
+     * H0 is a pickup point and a delivery point, so it gets a logical copy. H3 has no coordinates and no path
+     * from H2, and T1 must not visit H1.
+     */
+    private static InputData instance() {
+        InputData data = new InputData();
+        data.hubs = new ArrayList<>();
+        for (int i=0; i<4; i++) {
+            Hub hub = new Hub();
+            hub.setHubID("H" + i);
+            hub.setHubName("Hub " + i);
+            if (i < 3) {
+                hub.setHub_lat(String.valueOf(10.5 + i));
+                hub.setHub_long(String.valueOf(106.5 - i));
+            }
+            data.hubs.add(hub);
+        }
+        data.travel_time = new TravelTimeMatrix(4, false);
+        for (int i=0; i<4; i++) {
+            for (int j=0; j<4; j++) {
+                if (i != j && !(i == 2 && j == 3)) {
+                    data.travel_time.set(i, j, 300 * (i + 1) + 7 * j);
+                }
+            }
+        }
+
+        data.trucks = new ArrayList<>();
+        data.trucks.add(truck("T0", "H0", 1000, null));
+        data.trucks.add(truck("T1", "H2", 250.5, new ArrayList<>(Arrays.asList("H1"))));
+
+        data.requests = new ArrayList<>();
+        data.requests.add(request("A", "H1", "H0", 100, "2022-12-01 10:00:30", "2022-12-01 11:15:45"));
+        data.requests.add(request("B", "H0", "H3", 30.25, "2022-12-01 12:00:00", "2022-12-01 13:00:00"));
+        data.requests.add(request("C", "H1", "H0", 12, "2022-12-01 14:00:00", "2022-12-01 16:00:00"));
+        return data;
+    }
+
+    private static Truck truck(String id, String location, double capacity, ArrayList<String> forbidden) {
+        Truck truck = new Truck();
+        truck.setTruckID(id);
+        truck.setLocation(location);
+        truck.setStartWorkingTime("2022-12-01 08:00:00");
+        truck.setCapacity(capacity);
+        truck.setForbiddenPoints(forbidden);
+        return truck;
+    }
+
+    private static Request request(String id, String from, String to, double demand, String pickup, String delivery) {
+        Request req = new Request();
+        req.setRequestID(id);
+        req.setPickupPoint(from);
+        req.setDeliveryPoint(to);
+        req.setPickupDateTime(pickup);
+        req.setDeliveryDateTime(delivery);
+        req.setDemand(demand);
+        return req;
+    }
+}
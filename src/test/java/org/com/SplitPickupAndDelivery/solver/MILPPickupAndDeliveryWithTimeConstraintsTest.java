@@ -0,0 +1,160 @@
+package org.com.SplitPickupAndDelivery.solver;
+
+import org.com.SplitPickupAndDelivery.models.*;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * The live model patched by addRequest(), removeRequest(), setTruckCapacity() and setTravelTime() must solve
+ * to the same optimum as a model built from scratch on the changed instance.
+ */
+public class MILPPickupAndDeliveryWithTimeConstraintsTest {
+
+    private static final long TIME_LIMIT_MS = 60000;
+
+    @Test
+    public void patchedRequestsSolveLikeAColdBuild() {
+        InputData data = instance(5, 2, 4, 1);
+        MILPPickupAndDeliveryWithTimeConstraints live = solved(MappedData.parseInput(data));
+
+        // a second request between the same hubs as R0, and R1 is cancelled
+        Request added = data.requests.get(0).clone();
+        added.setRequestID("R5");
+        added.setDemand(120);
+        live.addRequest(added);
+        live.removeRequest("R1");
+        assertEquals(4, live.getData().requests.size());
+
+        assertSameOptimum(live);
+    }
+
+    @Test
+    public void patchedCapacitySolvesLikeAColdBuild() {
+        MILPPickupAndDeliveryWithTimeConstraints live = solved(MappedData.parseInput(instance(5, 3, 4, 2)));
+
+        live.setTruckCapacity(0, 0);
+        live.setTruckCapacity(1, 250);
+        assertSameOptimum(live);
+
+        live.setTruckCapacity(1, 1000);
+        assertSameOptimum(live);
+    }
+
+    /**
+     * The arcs used by the previous solution are removed or made slower, the trucks that used them must not be
+     * hinted with their old routes.
+     */
+    @Test
+    public void patchedTravelTimesSolveLikeAColdBuild() {
+        MILPPickupAndDeliveryWithTimeConstraints live = solved(MappedData.parseInput(instance(5, 2, 4, 3)));
+
+        int[] arc = usedArc(live);
+        assertNotNull(arc, "the first solution moves between two hubs");
+        live.setTravelTime(arc[0], arc[1], TravelTimeMatrix.MISSING);
+        assertSameOptimum(live);
+
+        arc = usedArc(live);
+        assertNotNull(arc, "the second solution moves between two hubs");
+        live.setTravelTime(arc[0], arc[1], 2 * live.getData().travelTime(arc[0], arc[1]));
+        assertSameOptimum(live);
+    }
+
+    private static MILPPickupAndDeliveryWithTimeConstraints solved(MappedData mapped_data) {
+        MILPPickupAndDeliveryWithTimeConstraints live = new MILPPickupAndDeliveryWithTimeConstraints(mapped_data);
+        live.setTimeLimit(TIME_LIMIT_MS);
+        assertNotNull(live.solve(false));
+        assertTrue(live.isOptimal());
+        return live;
+    }
+
+    private static void assertSameOptimum(MILPPickupAndDeliveryWithTimeConstraints live) {
+        MappedSolution patched = live.solve(false);
+        assertNotNull(patched);
+        assertTrue(live.isOptimal());
+
+        MILPPickupAndDeliveryWithTimeConstraints cold = new MILPPickupAndDeliveryWithTimeConstraints(live.getData());
+        cold.setTimeLimit(TIME_LIMIT_MS);
+        MappedSolution expected = cold.solve(false);
+        assertNotNull(expected);
+        assertTrue(cold.isOptimal());
+
+        assertEquals(expected.objective(), patched.objective(), 1e-6);
+    }
+
+    /**
+     * Returns the physical hubs of a move of the last solution of the live model, null if no truck moves.
+     */
+    private static int[] usedArc(MILPPickupAndDeliveryWithTimeConstraints live) {
+        MappedData data = live.getData();
+        int[] physical = new int[data.N];
+        for (int i=0; i<data.N; i++) {
+            physical[i] = i;
+        }
+        for (int hub: data._mapPickup2Delivery.keySet()) {
+            physical[data._mapPickup2Delivery.get(hub)] = hub;
+        }
+        for (ArrayList<Integer> route: live.extractSolution().routes) {
+            for (int s=1; s<route.size(); s++) {
+                int u = physical[route.get(s - 1)];
+                int v = physical[route.get(s)];
+                if (u != v) {
+                    return new int[] {u, v};
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Hubs on a line, 10 minutes apart, with every arc, trucks starting at 08:00 and requests between distinct
+     * hubs with deadlines late enough for detours.
+     */
+    private static InputData instance(int num_hubs, int num_trucks, int num_requests, long seed) {
+        Random random = new Random(seed);
+        InputData data = new InputData();
+        data.hubs = new ArrayList<>();
+        for (int i=0; i<num_hubs; i++) {
+            Hub hub = new Hub();
+            hub.setHubID("H" + i);
+            hub.setHubName("Hub " + i);
+            data.hubs.add(hub);
+        }
+        data.travel_time = new TravelTimeMatrix(num_hubs, false);
+        for (int i=0; i<num_hubs; i++) {
+            for (int j=0; j<num_hubs; j++) {
+                if (i != j) {
+                    data.travel_time.set(i, j, 600 * Math.abs(i - j));
+                }
+            }
+        }
+
+        data.trucks = new ArrayList<>();
+        for (int k=0; k<num_trucks; k++) {
+            Truck truck = new Truck();
+            truck.setTruckID("T" + k);
+            truck.setLocation("H" + random.nextInt(num_hubs));
+            truck.setStartWorkingTime("2022-12-01 08:00:00");
+            truck.setCapacity(500);
+            data.trucks.add(truck);
+        }
+
+        data.requests = new ArrayList<>();
+        for (int r=0; r<num_requests; r++) {
+            int from = random.nextInt(num_hubs);
+            int to = (from + 1 + random.nextInt(num_hubs - 1)) % num_hubs;
+            Request req = new Request();
+            req.setRequestID("R" + r);
+            req.setPickupPoint("H" + from);
+            req.setDeliveryPoint("H" + to);
+            req.setPickupDateTime("2022-12-01 12:00:00");
+            req.setDeliveryDateTime("2022-12-01 18:00:00");
+            req.setDemand(100 + random.nextInt(200));
+            data.requests.add(req);
+        }
+        return data;
+    }
+}
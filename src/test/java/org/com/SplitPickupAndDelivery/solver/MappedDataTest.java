@@ -0,0 +1,86 @@
+package org.com.SplitPickupAndDelivery.solver;
+
+import org.com.SplitPickupAndDelivery.models.*;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MappedDataTest {
+
+    /**
+     * Two requests between the same hubs are served separately, resolveOutput() must give every part the ID of
+     * its own request and not the ID of the last request between these hubs.
+     */
+    @Test
+    public void requestsOnTheSameHubsKeepTheirIds() {
+        InputData data = new InputData();
+        data.hubs = new ArrayList<>();
+        for (int i=0; i<3; i++) {
+            Hub hub = new Hub();
+            hub.setHubID("H" + i);
+            hub.setHubName("Hub " + i);
+            data.hubs.add(hub);
+        }
+        data.travel_time = new TravelTimeMatrix(3, false);
+        for (int i=0; i<3; i++) {
+            for (int j=0; j<3; j++) {
+                if (i != j) {
+                    data.travel_time.set(i, j, 600);
+                }
+            }
+        }
+
+        data.trucks = new ArrayList<>();
+        Truck truck = new Truck();
+        truck.setTruckID("T0");
+        truck.setLocation("H0");
+        truck.setStartWorkingTime("2022-12-01 08:00:00");
+        truck.setCapacity(1000);
+        data.trucks.add(truck);
+
+        data.requests = new ArrayList<>();
+        data.requests.add(request("A", 100, "2022-12-01 10:00:00", "2022-12-01 11:00:00"));
+        data.requests.add(request("B", 30, "2022-12-01 12:00:00", "2022-12-01 13:00:00"));
+
+        MappedData mapped_data = MappedData.parseInput(data);
+        PickupAndDeliverySolver[] solvers = {new InsertionHeuristic(mapped_data), new MILPPickupAndDeliveryWithTimeConstraints(mapped_data)};
+        for (PickupAndDeliverySolver solver: solvers) {
+            solver.setTimeLimit(10000);
+            Solution solution = mapped_data.resolveOutput(solver.solve(false));
+
+            HashMap<String, Double> picked = new HashMap<>();
+            HashMap<String, Double> delivered = new HashMap<>();
+            for (Route route: solution.routes) {
+                if (route != null) {
+                    for (int s=0; s<route.path.size(); s++) {
+                        for (Request req: route.pickup.get(s)) {
+                            picked.merge(req.getRequestID(), req.getDemand(), Double::sum);
+                        }
+                        for (Request req: route.drop.get(s)) {
+                            delivered.merge(req.getRequestID(), req.getDemand(), Double::sum);
+                        }
+                    }
+                }
+            }
+            String name = solver.getClass().getSimpleName();
+            assertEquals(100, picked.getOrDefault("A", 0.0), 1e-6, name);
+            assertEquals(30, picked.getOrDefault("B", 0.0), 1e-6, name);
+            assertEquals(100, delivered.getOrDefault("A", 0.0), 1e-6, name);
+            assertEquals(30, delivered.getOrDefault("B", 0.0), 1e-6, name);
+        }
+    }
+
+    private static Request request(String id, double demand, String pickup, String delivery) {
+        Request req = new Request();
+        req.setRequestID(id);
+        req.setPickupPoint("H1");
+        req.setDeliveryPoint("H2");
+        req.setPickupDateTime(pickup);
+        req.setDeliveryDateTime(delivery);
+        req.setDemand(demand);
+        return req;
+    }
+}
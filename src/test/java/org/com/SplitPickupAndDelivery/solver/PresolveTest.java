@@ -0,0 +1,191 @@
+package org.com.SplitPickupAndDelivery.solver;
+
+import org.com.SplitPickupAndDelivery.models.*;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * The presolved model must reach the optimum of the full model, and restore() must give a solution of the
+ * original instance.
+ */
+public class PresolveTest {
+
+    private static final long TIME_LIMIT_MS = 60000;
+
+    /**
+     * H1 is a detour between hubs that are all 10 minutes apart, it is removed and H2, H3 and the logical copies
+     * of H0 and H3 are renumbered. T1 starts too late to serve anything, so its arcs and its assignments are ruled out.
+     */
+    @Test
+    public void reducedInstanceSolvesLikeTheOriginal() {
+        InputData data = new InputData();
+        data.hubs = new ArrayList<>();
+        for (int i=0; i<4; i++) {
+            Hub hub = new Hub();
+            hub.setHubID("H" + i);
+            hub.setHubName("Hub " + i);
+            data.hubs.add(hub);
+        }
+        data.travel_time = new TravelTimeMatrix(4, false);
+        for (int i=0; i<4; i++) {
+            for (int j=0; j<4; j++) {
+                if (i != j) {
+                    data.travel_time.set(i, j, 600);
+                }
+            }
+        }
+
+        data.trucks = new ArrayList<>();
+        data.trucks.add(truck("T0", "H0", "2022-12-01 08:00:00"));
+        data.trucks.add(truck("T1", "H3", "2022-12-01 13:00:00"));
+
+        data.requests = new ArrayList<>();
+        data.requests.add(request("A", "H2", "H0", 100, "2022-12-01 10:00:00", "2022-12-01 11:00:00"));
+        data.requests.add(request("B", "H0", "H3", 30, "2022-12-01 12:00:00", "2022-12-01 13:00:00"));
+
+        MappedData mapped_data = MappedData.parseInput(data);
+        assertEquals(6, mapped_data.N);
+        int copy = mapped_data._mapPickup2Delivery.get(0);
+
+        Presolve presolve = new Presolve(mapped_data);
+        assertEquals(1, presolve.removed_hubs);
+        assertTrue(presolve.removed_arcs > 0);
+        assertTrue(presolve.removed_assignments > 0);
+        assertEquals(5, presolve.reduced().N);
+        assertFalse(presolve.canServe(1, 0));
+        assertFalse(presolve.canServe(1, 1));
+
+        MappedSolution full = solved(new MILPPickupAndDeliveryWithTimeConstraints(mapped_data));
+        MappedSolution restored = presolve.restore(solved(new MILPPickupAndDeliveryWithTimeConstraints(presolve)));
+        assertEquals(full.objective(), restored.objective(), 1e-6);
+        assertEquals(0, restored.unservedQuantity(), 1e-6);
+
+        // the restored routes use the hubs of the original instance, the delivery of A goes to the copy of H0
+        HashMap<String, MappedRequest> original = new HashMap<>();
+        for (MappedRequest req: mapped_data.requests) {
+            original.put(req.id, req);
+        }
+        boolean copy_visited = false;
+        for (int k=0; k<restored.routes.size(); k++) {
+            ArrayList<Integer> route = restored.routes.get(k);
+            for (int s=0; s<route.size(); s++) {
+                assertNotEquals(1, (int) route.get(s), "the removed hub is visited");
+                copy_visited |= route.get(s) == copy;
+                for (MappedRequest req: restored.pickup.get(k).get(s)) {
+                    assertEquals(original.get(req.id).from_hub, req.from_hub);
+                    assertEquals(original.get(req.id).to_hub, req.to_hub);
+                    assertEquals(req.from_hub, (int) route.get(s));
+                }
+                for (MappedRequest req: restored.delivery.get(k).get(s)) {
+                    assertEquals(original.get(req.id).from_hub, req.from_hub);
+                    assertEquals(original.get(req.id).to_hub, req.to_hub);
+                    assertEquals(req.to_hub, (int) route.get(s));
+                }
+            }
+        }
+        assertTrue(copy_visited);
+
+        HashMap<String, Double> delivered = new HashMap<>();
+        for (Route route: mapped_data.resolveOutput(restored).routes) {
+            if (route != null) {
+                for (int s=0; s<route.path.size(); s++) {
+                    assertNotEquals("H1", route.path.get(s).getHubID());
+                    for (Request req: route.drop.get(s)) {
+                        delivered.merge(req.getRequestID(), req.getDemand(), Double::sum);
+                    }
+                }
+            }
+        }
+        assertEquals(100, delivered.getOrDefault("A", 0.0), 1e-6);
+        assertEquals(30, delivered.getOrDefault("B", 0.0), 1e-6);
+    }
+
+    /**
+     * Small instances with hubs that nobody uses, tight deadlines and late trucks, with and without presolve.
+     */
+    @Test
+    public void presolveKeepsTheOptimum() {
+        for (long seed=1; seed<=3; seed++) {
+            MappedData mapped_data = MappedData.parseInput(instance(6, 2, 3, seed));
+            Presolve presolve = new Presolve(mapped_data);
+
+            MappedSolution full = solved(new MILPPickupAndDeliveryWithTimeConstraints(mapped_data));
+            MappedSolution restored = presolve.restore(solved(new MILPPickupAndDeliveryWithTimeConstraints(presolve)));
+            assertEquals(full.objective(), restored.objective(), 1e-6, "seed " + seed);
+        }
+    }
+
+    private static MappedSolution solved(MILPPickupAndDeliveryWithTimeConstraints solver) {
+        solver.setTimeLimit(TIME_LIMIT_MS);
+        MappedSolution solution = solver.solve(false);
+        assertNotNull(solution);
+        assertTrue(solver.isOptimal());
+        return solution;
+    }
+
+    /**
+     * Hubs on a line, 10 minutes apart, the first truck starting at 08:00 and the others up to 11:00, and
+     * requests between distinct hubs picked up at 10:00 or 11:00 and delivered 2 or 3 hours later.
+     */
+    private static InputData instance(int num_hubs, int num_trucks, int num_requests, long seed) {
+        Random random = new Random(seed);
+        InputData data = new InputData();
+        data.hubs = new ArrayList<>();
+        for (int i=0; i<num_hubs; i++) {
+            Hub hub = new Hub();
+            hub.setHubID("H" + i);
+            hub.setHubName("Hub " + i);
+            data.hubs.add(hub);
+        }
+        data.travel_time = new TravelTimeMatrix(num_hubs, false);
+        for (int i=0; i<num_hubs; i++) {
+            for (int j=0; j<num_hubs; j++) {
+                if (i != j) {
+                    data.travel_time.set(i, j, 600 * Math.abs(i - j));
+                }
+            }
+        }
+
+        data.trucks = new ArrayList<>();
+        for (int k=0; k<num_trucks; k++) {
+            int start = k == 0 ? 8 : 8 + random.nextInt(4);
+            data.trucks.add(truck("T" + k, "H" + random.nextInt(num_hubs), String.format("2022-12-01 %02d:00:00", start)));
+        }
+
+        data.requests = new ArrayList<>();
+        for (int r=0; r<num_requests; r++) {
+            int from = random.nextInt(num_hubs);
+            int to = (from + 1 + random.nextInt(num_hubs - 1)) % num_hubs;
+            int pickup = 10 + random.nextInt(2);
+            data.requests.add(request("R" + r, "H" + from, "H" + to, 100 + random.nextInt(200),
+                    String.format("2022-12-01 %02d:00:00", pickup),
+                    String.format("2022-12-01 %02d:00:00", pickup + 2 + random.nextInt(2))));
+        }
+        return data;
+    }
+
+    private static Truck truck(String id, String location, String start) {
+        Truck truck = new Truck();
+        truck.setTruckID(id);
+        truck.setLocation(location);
+        truck.setStartWorkingTime(start);
+        truck.setCapacity(500);
+        return truck;
+    }
+
+    private static Request request(String id, String from, String to, double demand, String pickup, String delivery) {
+        Request req = new Request();
+        req.setRequestID(id);
+        req.setPickupPoint(from);
+        req.setDeliveryPoint(to);
+        req.setPickupDateTime(pickup);
+        req.setDeliveryDateTime(delivery);
+        req.setDemand(demand);
+        return req;
+    }
+}
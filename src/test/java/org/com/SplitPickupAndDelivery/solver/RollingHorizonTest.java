@@ -0,0 +1,140 @@
+package org.com.SplitPickupAndDelivery.solver;
+
+import org.com.SplitPickupAndDelivery.models.*;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RollingHorizonTest {
+
+    /**
+     * One truck starting at 08:00, request R0 must be picked up at 07:00 and can never be served. The MILP of
+     * the windows must not be made infeasible by it: R1 and R2 are served by the MILP, R0 is reported unserved.
+     */
+    @Test
+    public void missedRequestDoesNotBreakLaterWindows() {
+        InputData data = network();
+        data.requests = new ArrayList<>();
+        data.requests.add(request("R0", "H0", "H1", "2022-12-01 07:00:00", "2022-12-01 07:30:00"));
+        data.requests.add(request("R1", "H1", "H2", "2022-12-01 10:00:00", "2022-12-01 11:00:00"));
+        data.requests.add(request("R2", "H2", "H0", "2022-12-01 14:00:00", "2022-12-01 15:00:00"));
+
+        int[] num_windows = new int[1];
+        int[] num_failed = new int[1];
+        RollingHorizon planner = new RollingHorizon(data);
+        planner.setTimeLimit(30000);
+        planner.setWindow(4 * 3600, 2 * 3600);
+        planner.setSolverFactory(mapped_data -> new PickupAndDeliverySolver() {
+            final MILPPickupAndDeliveryWithTimeConstraints milp = new MILPPickupAndDeliveryWithTimeConstraints(mapped_data);
+
+            public MappedSolution solve(boolean verbose) {
+                num_windows[0]++;
+                MappedSolution solution = milp.solve(verbose);
+                if (solution == null) {
+                    num_failed[0]++;
+                }
+                return solution;
+            }
+
+            public void setTimeLimit(long time_limit_ms) {
+                milp.setTimeLimit(time_limit_ms);
+            }
+        });
+        Solution solution = planner.solve(false);
+
+        assertTrue(num_windows[0] >= 2, "the requests R1 and R2 are solved in later windows");
+        assertEquals(0, num_failed[0], "every window is solved by the MILP");
+
+        assertEquals(1, solution.unservedRequests.size());
+        assertEquals("R0", solution.unservedRequests.get(0).getRequestID());
+
+        HashMap<String, Double> delivered = delivered(solution);
+        assertEquals(100, delivered.getOrDefault("R1", 0.0), 1e-6);
+        assertEquals(100, delivered.getOrDefault("R2", 0.0), 1e-6);
+        assertFalse(delivered.containsKey("R0"));
+    }
+
+    /**
+     * R1 and R2 go from H1 to H2 and fall in the same window. Each must be credited with its own delivery,
+     * otherwise the other one keeps its demand and is planned again in the next windows.
+     */
+    @Test
+    public void requestsOnTheSameHubsAreServedOnce() {
+        InputData data = network();
+        data.requests = new ArrayList<>();
+        data.requests.add(request("R1", "H1", "H2", "2022-12-01 10:00:00", "2022-12-01 11:00:00"));
+        Request second = request("R2", "H1", "H2", "2022-12-01 11:00:00", "2022-12-01 12:00:00");
+        second.setDemand(30);
+        data.requests.add(second);
+
+        RollingHorizon planner = new RollingHorizon(data);
+        planner.setTimeLimit(30000);
+        planner.setWindow(4 * 3600, 2 * 3600);
+        planner.setSolverFactory(MILPPickupAndDeliveryWithTimeConstraints::new);
+        Solution solution = planner.solve(false);
+
+        HashMap<String, Double> delivered = delivered(solution);
+        assertEquals(100, delivered.getOrDefault("R1", 0.0), 1e-6);
+        assertEquals(30, delivered.getOrDefault("R2", 0.0), 1e-6);
+        assertTrue(solution.unservedRequests.isEmpty());
+    }
+
+    /**
+     * Three hubs at 10 minutes from each other and one truck at H0 starting at 08:00, without requests.
+     */
+    private static InputData network() {
+        InputData data = new InputData();
+        data.hubs = new ArrayList<>();
+        for (int i=0; i<3; i++) {
+            Hub hub = new Hub();
+            hub.setHubID("H" + i);
+            hub.setHubName("Hub " + i);
+            data.hubs.add(hub);
+        }
+        data.travel_time = new TravelTimeMatrix(3, false);
+        for (int i=0; i<3; i++) {
+            for (int j=0; j<3; j++) {
+                if (i != j) {
+                    data.travel_time.set(i, j, 600);
+                }
+            }
+        }
+
+        data.trucks = new ArrayList<>();
+        Truck truck = new Truck();
+        truck.setTruckID("T0");
+        truck.setLocation("H0");
+        truck.setStartWorkingTime("2022-12-01 08:00:00");
+        truck.setCapacity(1000);
+        data.trucks.add(truck);
+        return data;
+    }
+
+    private static HashMap<String, Double> delivered(Solution solution) {
+        HashMap<String, Double> delivered = new HashMap<>();
+        for (Route route: solution.routes) {
+            if (route != null) {
+                for (ArrayList<Request> drop: route.drop) {
+                    for (Request req: drop) {
+                        delivered.merge(req.getRequestID(), req.getDemand(), Double::sum);
+                    }
+                }
+            }
+        }
+        return delivered;
+    }
+
+    private static Request request(String id, String from, String to, String pickup, String delivery) {
+        Request req = new Request();
+        req.setRequestID(id);
+        req.setPickupPoint(from);
+        req.setDeliveryPoint(to);
+        req.setPickupDateTime(pickup);
+        req.setDeliveryDateTime(delivery);
+        req.setDemand(100);
+        return req;
+    }
+}
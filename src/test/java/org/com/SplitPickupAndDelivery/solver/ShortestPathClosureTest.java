@@ -0,0 +1,102 @@
+package org.com.SplitPickupAndDelivery.solver;
+
+import org.com.SplitPickupAndDelivery.models.*;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ShortestPathClosureTest {
+
+    /**
+     * Floyd-Warshall and Dijkstra give the same closed times on a graph of several blocks with missing arcs and
+     * hubs that cannot be passed through, and every closed time is the length of a path of real arcs through
+     * transit hubs only.
+     */
+    @Test
+    public void floydWarshallAndDijkstraAgree() {
+        int n = 150;
+        Random random = new Random(7);
+        TravelTimeMatrix travel_time = new TravelTimeMatrix(n, false);
+        for (int i=0; i<n; i++) {
+            for (int j=0; j<n; j++) {
+                if (i != j && random.nextDouble() < 0.05) {
+                    travel_time.set(i, j, 60 + random.nextInt(3600));
+                }
+            }
+        }
+        boolean[] transit = new boolean[n];
+        for (int i=0; i<n; i++) {
+            transit[i] = random.nextDouble() < 0.8;
+        }
+
+        ShortestPathClosure floyd_warshall = new ShortestPathClosure(travel_time, transit, 4, false);
+        ShortestPathClosure dijkstra = new ShortestPathClosure(travel_time, transit, 4, true);
+        TravelTimeMatrix fw = floyd_warshall.toMatrix(false);
+        TravelTimeMatrix dj = dijkstra.toMatrix(false);
+        assertEquals(floyd_warshall.added_arcs, dijkstra.added_arcs);
+        assertEquals(floyd_warshall.shortened_arcs, dijkstra.shortened_arcs);
+        assertTrue(dijkstra.added_arcs > 0);
+
+        for (int i=0; i<n; i++) {
+            for (int j=0; j<n; j++) {
+                assertEquals(fw.get(i, j), dj.get(i, j), 1e-9, i + " -> " + j);
+                if (i == j || !dj.exists(i, j)) {
+                    continue;
+                }
+                for (ShortestPathClosure closure: new ShortestPathClosure[] {floyd_warshall, dijkstra}) {
+                    List<Integer> hops = new ArrayList<>();
+                    hops.add(i);
+                    for (int h: closure.transitHubs(i, j)) {
+                        assertTrue(transit[h], "hub " + h + " cannot be passed through");
+                        hops.add(h);
+                    }
+                    hops.add(j);
+
+                    double length = 0;
+                    for (int h=1; h<hops.size(); h++) {
+                        assertTrue(travel_time.exists(hops.get(h - 1), hops.get(h)), "no arc " + hops.get(h - 1) + " -> " + hops.get(h));
+                        length += travel_time.get(hops.get(h - 1), hops.get(h));
+                    }
+                    assertEquals(dj.get(i, j), length, 1e-9, i + " -> " + j);
+                }
+            }
+        }
+    }
+
+    /**
+     * The travel times of a closed instance cannot be changed, the detours through the arc would be wrong.
+     */
+    @Test
+    public void closedInstanceRejectsTravelTimeChanges() {
+        InputData data = new InputData();
+        data.hubs = new ArrayList<>();
+        for (int i=0; i<3; i++) {
+            Hub hub = new Hub();
+            hub.setHubID("H" + i);
+            hub.setHubName("Hub " + i);
+            data.hubs.add(hub);
+        }
+        data.travel_time = new TravelTimeMatrix(3, false);
+        data.travel_time.set(0, 1, 600);
+        data.travel_time.set(1, 2, 600);
+        data.travel_time.set(1, 0, 600);
+        data.travel_time.set(2, 1, 600);
+        data.trucks = new ArrayList<>();
+        Truck truck = new Truck();
+        truck.setTruckID("T0");
+        truck.setLocation("H0");
+        truck.setStartWorkingTime("2022-12-01 08:00:00");
+        truck.setCapacity(1000);
+        data.trucks.add(truck);
+        data.requests = new ArrayList<>();
+
+        MappedData closed = MappedData.parseInput(data).withShortestPaths();
+        assertEquals(1200, closed.travelTime(0, 2), 1e-9);
+        assertThrows(IllegalStateException.class, () -> closed.withTravelTime(0, 1, 60));
+        assertEquals(60, MappedData.parseInput(data).withTravelTime(0, 1, 60).travelTime(0, 1), 1e-9);
+    }
+}
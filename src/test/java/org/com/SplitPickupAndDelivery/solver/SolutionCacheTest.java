@@ -0,0 +1,112 @@
+package org.com.SplitPickupAndDelivery.solver;
+
+import org.com.SplitPickupAndDelivery.models.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SolutionCacheTest {
+
+    @TempDir
+    File directory;
+
+    /**
+     * A time-limited incumbent only seeds the warm start, an optimal solution is returned, also for the same
+     * requests given in another order, with the IDs of that instance.
+     */
+    @Test
+    public void onlyOptimalSolutionsAreReturned() {
+        InputData data = instance();
+        MappedData mapped_data = MappedData.parseInput(data);
+        MappedSolution solution = new InsertionHeuristic(mapped_data).solve(false);
+        SolutionCache cache = new SolutionCache(directory.getPath(), 1 << 20);
+
+        cache.put(mapped_data, solution, "FEASIBLE", 1000);
+        assertNull(cache.get(mapped_data));
+        assertNotNull(cache.seedRoutes(mapped_data));
+
+        cache.put(mapped_data, solution, SolutionCache.OPTIMAL, 60000);
+        assertNotNull(cache.get(mapped_data));
+
+        Collections.reverse(data.requests);
+        MappedData reversed = MappedData.parseInput(data);
+        MappedSolution cached = cache.get(reversed);
+        assertNotNull(cached);
+        HashMap<String, Double> delivered = new HashMap<>();
+        for (Route route: reversed.resolveOutput(cached).routes) {
+            if (route != null) {
+                for (ArrayList<Request> drop: route.drop) {
+                    for (Request req: drop) {
+                        delivered.merge(req.getRequestID(), req.getDemand(), Double::sum);
+                    }
+                }
+            }
+        }
+        assertEquals(100, delivered.getOrDefault("A", 0.0), 1e-6);
+        assertEquals(30, delivered.getOrDefault("B", 0.0), 1e-6);
+    }
+
+    /**
+     * A solution that leaves boxes unserved is never returned, even if the solver proved it optimal.
+     */
+    @Test
+    public void solutionsWithUnservedBoxesAreNotReturned() {
+        MappedData mapped_data = MappedData.parseInput(instance());
+        MappedSolution solution = new InsertionHeuristic(mapped_data).solve(false);
+        solution.unserved = new ArrayList<>();
+        solution.unserved.add(new MappedRequest("A", 1, 2, 10));
+        SolutionCache cache = new SolutionCache(directory.getPath(), 1 << 20);
+
+        cache.put(mapped_data, solution, SolutionCache.OPTIMAL, 60000);
+        assertNull(cache.get(mapped_data));
+    }
+
+    private static InputData instance() {
+        InputData data = new InputData();
+        data.hubs = new ArrayList<>();
+        for (int i=0; i<3; i++) {
+            Hub hub = new Hub();
+            hub.setHubID("H" + i);
+            hub.setHubName("Hub " + i);
+            data.hubs.add(hub);
+        }
+        data.travel_time = new TravelTimeMatrix(3, false);
+        for (int i=0; i<3; i++) {
+            for (int j=0; j<3; j++) {
+                if (i != j) {
+                    data.travel_time.set(i, j, 600);
+                }
+            }
+        }
+
+        data.trucks = new ArrayList<>();
+        Truck truck = new Truck();
+        truck.setTruckID("T0");
+        truck.setLocation("H0");
+        truck.setStartWorkingTime("2022-12-01 08:00:00");
+        truck.setCapacity(1000);
+        data.trucks.add(truck);
+
+        data.requests = new ArrayList<>();
+        data.requests.add(request("A", "H1", 100));
+        data.requests.add(request("B", "H0", 30));
+        return data;
+    }
+
+    private static Request request(String id, String from, double demand) {
+        Request req = new Request();
+        req.setRequestID(id);
+        req.setPickupPoint(from);
+        req.setDeliveryPoint("H2");
+        req.setPickupDateTime("2022-12-01 10:00:00");
+        req.setDeliveryDateTime("2022-12-01 11:00:00");
+        req.setDemand(demand);
+        return req;
+    }
+}